@@ -0,0 +1,27 @@
+package no.seapop.data.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks, always with the GC profiler enabled, so that the
+ * allocation rate is reported alongside throughput and latency.
+ * <p>
+ * Accepts the usual JMH command line options, e.g. a benchmark name pattern,
+ * or <code>-p scale=1</code> to run at a single scale.
+ *
+ * @author Paul-Inge Flakstad, Norwegian Polar Institute <flakstad at npolar.no>
+ */
+public class BenchmarkMain {
+
+    public static void main(String[] args) throws Exception {
+        Options options = new OptionsBuilder()
+                .parent(new CommandLineOptions(args))
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,83 @@
+package no.seapop.data.benchmarks;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import no.npolar.util.CmsAgent;
+import no.seapop.data.SpeciesDataCollection;
+import no.seapop.data.SpeciesDataLinkType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks for each of the
+ * {@link SpeciesDataCollection#toHtmlTableRows(no.npolar.util.CmsAgent) toHtmlTableRows}
+ * overloads.
+ *
+ * @author Paul-Inge Flakstad, Norwegian Polar Institute <flakstad at npolar.no>
+ */
+@State(Scope.Thread)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HtmlTableRowsBenchmark {
+
+    @Param({ "1", "10", "100" })
+    public int scale;
+
+    private CmsAgent cms;
+    private SpeciesDataCollection collection;
+    private List<String> excludedDataTypes;
+    private List<String> locationsInOrder;
+
+    @Setup
+    public void setUp() {
+        SyntheticDataset dataset = new SyntheticDataset(scale);
+        cms = dataset.getCmsAgent();
+        collection = new SpeciesDataCollection(SyntheticDataset.FOLDER, cms);
+        excludedDataTypes = Arrays.asList(SpeciesDataLinkType.TIMING);
+        // Every other location, in reverse order
+        List<String> locations = dataset.getLocations();
+        String[] selected = new String[locations.size() / 2];
+        for (int i = 0; i < selected.length; i++) {
+            selected[i] = locations.get(locations.size() - 1 - 2 * i);
+        }
+        locationsInOrder = Arrays.asList(selected);
+    }
+
+    @Benchmark
+    public String allTypes() {
+        return collection.toHtmlTableRows(cms);
+    }
+
+    @Benchmark
+    public String singleType() {
+        return collection.toHtmlTableRows(cms, SpeciesDataLinkType.DIET);
+    }
+
+    @Benchmark
+    public String singleTypeWithTotals() {
+        return collection.toHtmlTableRows(cms, SpeciesDataLinkType.DIET, SpeciesDataLinkType.TYPES_ORDER_DEFAULT);
+    }
+
+    @Benchmark
+    public String excludedTypes() {
+        return collection.toHtmlTableRows(cms, null, SpeciesDataLinkType.TYPES_ORDER_DEFAULT, excludedDataTypes);
+    }
+
+    @Benchmark
+    public String excludedTypesAndLocationsInOrder() {
+        return collection.toHtmlTableRows(cms, null, SpeciesDataLinkType.TYPES_ORDER_DEFAULT, excludedDataTypes, locationsInOrder);
+    }
+}
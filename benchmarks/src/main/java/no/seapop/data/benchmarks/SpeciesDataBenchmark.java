@@ -0,0 +1,95 @@
+package no.seapop.data.benchmarks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import no.seapop.data.SpeciesData;
+import no.seapop.data.SpeciesDataCollection;
+import no.seapop.data.SpeciesDataLink;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmarks for the per-species lookups in {@link SpeciesData}, and the
+ * locations lookup and queries in {@link SpeciesDataCollection}. Each
+ * benchmark covers all species in the collection.
+ *
+ * @author Paul-Inge Flakstad, Norwegian Polar Institute <flakstad at npolar.no>
+ */
+@State(Scope.Thread)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SpeciesDataBenchmark {
+
+    @Param({ "1", "10", "100" })
+    public int scale;
+
+    private SpeciesDataCollection collection;
+    private List<String> locations;
+
+    @Setup
+    public void setUp() {
+        SyntheticDataset dataset = new SyntheticDataset(scale);
+        collection = new SpeciesDataCollection(SyntheticDataset.FOLDER, dataset.getCmsAgent());
+        locations = dataset.getLocations();
+    }
+
+    /**
+     * {@link SpeciesData#getDataLinksByLocation(java.lang.String)}, for all
+     * species and all locations (as when rendering the table cell by cell).
+     */
+    @Benchmark
+    public void getDataLinksByLocation(Blackhole bh) {
+        List<SpeciesData> data = collection.get();
+        for (int l = 0; l < locations.size(); l++) {
+            String location = locations.get(l);
+            for (int s = 0; s < data.size(); s++) {
+                bh.consume(data.get(s).getDataLinksByLocation(location));
+            }
+        }
+    }
+
+    /**
+     * The same lookups as {@link #getDataLinksByLocation(org.openjdk.jmh.infra.Blackhole)}, 
+     * as one lazy query per location.
+     */
+    @Benchmark
+    public void queryDataLinksByLocation(Blackhole bh) {
+        for (int l = 0; l < locations.size(); l++) {
+            for (SpeciesDataLink dataLink : collection.query().locations(locations.get(l)).getDataLinks()) {
+                bh.consume(dataLink);
+            }
+        }
+    }
+
+    /**
+     * {@link SpeciesData#getLocations()}, for all species.
+     */
+    @Benchmark
+    public void getLocations(Blackhole bh) {
+        List<SpeciesData> data = collection.get();
+        for (int s = 0; s < data.size(); s++) {
+            bh.consume(data.get(s).getLocations());
+        }
+    }
+
+    /**
+     * {@link SpeciesDataCollection#getLocations()}.
+     */
+    @Benchmark
+    public List<String> getCollectionLocations() {
+        return collection.getLocations();
+    }
+}
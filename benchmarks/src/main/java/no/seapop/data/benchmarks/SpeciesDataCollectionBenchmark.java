@@ -0,0 +1,75 @@
+package no.seapop.data.benchmarks;
+
+import java.util.Collections;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import no.npolar.util.CmsAgent;
+import no.seapop.data.SpeciesData;
+import no.seapop.data.SpeciesDataCollection;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks for building and sorting a {@link SpeciesDataCollection}.
+ *
+ * @author Paul-Inge Flakstad, Norwegian Polar Institute <flakstad at npolar.no>
+ */
+@State(Scope.Thread)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SpeciesDataCollectionBenchmark {
+
+    @Param({ "1", "10", "100" })
+    public int scale;
+
+    private CmsAgent cms;
+    private SpeciesDataCollection collection;
+    private Random random;
+
+    @Setup
+    public void setUp() {
+        cms = new SyntheticDataset(scale).getCmsAgent();
+        collection = new SpeciesDataCollection(SyntheticDataset.FOLDER, cms);
+        random = new Random(42);
+    }
+
+    /**
+     * Restores an unsorted order before each sort. The list is shuffled
+     * directly, which is fine here, as sorting rebuilds everything derived
+     * from it.
+     */
+    @Setup(Level.Invocation)
+    public void shuffle() {
+        Collections.shuffle(collection.get(), random);
+    }
+
+    /**
+     * Reading all species files and building the collection (which includes
+     * sorting by group).
+     */
+    @Benchmark
+    public SpeciesDataCollection construct() {
+        return new SpeciesDataCollection(SyntheticDataset.FOLDER, cms);
+    }
+
+    /**
+     * Sorting by group (the default order), from a shuffled order.
+     */
+    @Benchmark
+    public SpeciesDataCollection sortByGroup() {
+        return collection.sort(SpeciesData.GROUP_NUMBER);
+    }
+}
@@ -0,0 +1,94 @@
+package no.seapop.data.benchmarks;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import no.npolar.util.CmsAgent;
+import no.seapop.data.SpeciesData;
+import no.seapop.data.SpeciesDataLinkType;
+
+/**
+ * Synthetic species data, served by a stub {@link CmsAgent}.
+ * <p>
+ * At scale 1 the dataset is roughly the size of the real one: 40 species,
+ * each with data links for about two thirds of 20 locations, and about half
+ * of the data types per location. Larger scales multiply the number of
+ * species (the number of locations and data types is fixed, as it is in the
+ * real tables).
+ * <p>
+ * The dataset is deterministic: the same scale always gives the same content.
+ *
+ * @author Paul-Inge Flakstad, Norwegian Polar Institute <flakstad at npolar.no>
+ */
+public class SyntheticDataset {
+
+    /** The folder holding the species data files. */
+    public static final String FOLDER = "/seapop/species-data/";
+    /** The number of species at scale 1. */
+    public static final int NUM_SPECIES = 40;
+    /** The number of locations. */
+    public static final int NUM_LOCATIONS = 20;
+    /** The locale. */
+    public static final Locale LOCALE = new Locale("no");
+
+    private final CmsAgent cms;
+    private final List<String> locations;
+
+    /**
+     * Creates a new dataset at the given scale.
+     *
+     * @param scale The scale, e.g. 1, 10 or 100.
+     */
+    public SyntheticDataset(int scale) {
+        Random random = new Random(20170419L + scale);
+        cms = new CmsAgent(LOCALE);
+        locations = new ArrayList<String>(NUM_LOCATIONS);
+        for (int l = 0; l < NUM_LOCATIONS; l++) {
+            locations.add("Location " + (char)('A' + l) + "øya");
+        }
+
+        for (int s = 0; s < NUM_SPECIES * scale; s++) {
+            CmsAgent.Content species = new CmsAgent.Content()
+                    .set("SpeciesName", "Species " + Integer.toString(random.nextInt(1000000), 36))
+                    .set("Pelagic", String.valueOf(random.nextBoolean()))
+                    .set("CoastalBound", String.valueOf(random.nextInt(4) == 0))
+                    .set("SurfaceBound", String.valueOf(random.nextBoolean()))
+                    .set("Diving", String.valueOf(random.nextBoolean()))
+                    .set("IceBound", String.valueOf(random.nextInt(8) == 0));
+            for (int l = 0; l < NUM_LOCATIONS; l++) {
+                if (random.nextInt(3) == 0) {
+                    continue;
+                }
+                CmsAgent.Content location = species.add("DataLinks").set("Location", locations.get(l));
+                for (int t = 0; t < SpeciesDataLinkType.TYPES_ORDER_DEFAULT.size(); t++) {
+                    if (random.nextBoolean()) {
+                        location.add("DataLink")
+                                .set("Type", SpeciesDataLinkType.TYPES_ORDER_DEFAULT.get(t))
+                                .set("URL", "http://seapop.no/data/" + s + "/" + l + "/" + t)
+                                .set("NumOfYears", random.nextInt(5) == 0 ? "" : String.valueOf(1 + random.nextInt(40)))
+                                .set("Comment", random.nextInt(5) == 0 ? "Comment " + random.nextInt(10) : "");
+                    }
+                }
+            }
+            cms.addContent(FOLDER + "species-" + s + ".xml", SpeciesData.RESOURCE_TYPE_NAME, species);
+        }
+
+        for (int t = 0; t < SpeciesDataLinkType.TYPES_ORDER_DEFAULT.size(); t++) {
+            String type = SpeciesDataLinkType.TYPES_ORDER_DEFAULT.get(t);
+            cms.addLabel("label.seapop-species-data.category." + type.toLowerCase(), type + " (label)");
+        }
+        cms.addLabel("label.seapop-species-data.year", "years");
+    }
+
+    /**
+     * @return The stub CmsAgent serving this dataset.
+     */
+    public CmsAgent getCmsAgent() { return cms; }
+
+    /**
+     * @return All locations in this dataset, in order.
+     */
+    public List<String> getLocations() { return Collections.unmodifiableList(locations); }
+}
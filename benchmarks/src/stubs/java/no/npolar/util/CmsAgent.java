@@ -0,0 +1,278 @@
+package no.npolar.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import org.opencms.file.CmsObject;
+import org.opencms.file.CmsRequestContext;
+import org.opencms.file.CmsResource;
+import org.opencms.jsp.I_CmsXmlContentContainer;
+import org.opencms.main.OpenCms;
+import org.opencms.xml.content.CmsXmlContent;
+import org.opencms.xml.types.I_CmsXmlContentValue;
+
+/**
+ * Stub of the CmsAgent, for use outside OpenCms.
+ * <p>
+ * Serves canned XML content, registered by
+ * {@link #addContent(java.lang.String, java.lang.String, no.npolar.util.CmsAgent.Content)},
+ * through the content tags ({@link #contentload(java.lang.String, java.lang.String, java.util.Locale, boolean)},
+ * {@link #contentloop(org.opencms.jsp.I_CmsXmlContentContainer, java.lang.String)}
+ * and {@link #contentshow(org.opencms.jsp.I_CmsXmlContentContainer, java.lang.String)}),
+ * and as (stub) XML content, and canned labels, registered by
+ * {@link #addLabel(java.lang.String, java.lang.String)}.
+ */
+public class CmsAgent {
+
+    private final CmsObject cmso;
+    private final Map<String, Content> contents = new ConcurrentHashMap<String, Content>();
+    private final Map<String, String> labels = new ConcurrentHashMap<String, String>();
+
+    /**
+     * A canned XML content element: string values and nested elements, by
+     * element name.
+     */
+    public static class Content {
+        private final Map<String, String> values = new HashMap<String, String>();
+        private final Map<String, List<Content>> children = new HashMap<String, List<Content>>();
+
+        /**
+         * Sets the value of the given (simple) element.
+         *
+         * @return This instance.
+         */
+        public Content set(String element, String value) {
+            values.put(element, value);
+            return this;
+        }
+
+        /**
+         * Adds a new nested element with the given name.
+         *
+         * @return The new nested element.
+         */
+        public Content add(String element) {
+            List<Content> list = children.get(element);
+            if (list == null) {
+                list = new ArrayList<Content>();
+                children.put(element, list);
+            }
+            Content child = new Content();
+            list.add(child);
+            return child;
+        }
+
+        String get(String element) {
+            return values.get(element);
+        }
+
+        List<Content> getAll(String element) {
+            List<Content> list = children.get(element);
+            return list == null ? Collections.<Content>emptyList() : list;
+        }
+    }
+
+    /**
+     * Container iterating over a list of canned content elements.
+     */
+    private static class Container implements I_CmsXmlContentContainer {
+        private final List<Content> elements;
+        private int position = -1;
+
+        Container(List<Content> elements) {
+            this.elements = elements;
+        }
+
+        @Override
+        public boolean hasMoreResources() {
+            return ++position < elements.size();
+        }
+
+        Content current() {
+            return elements.get(position);
+        }
+    }
+
+    /**
+     * Canned content, as XML content. Resolves paths like
+     * <code>DataLinks[2]/DataLink[1]/URL</code> (indexes are 1-based, and
+     * default to 1). The locale is ignored.
+     */
+    private static class ContentXml extends CmsXmlContent {
+        private final Content root;
+        private final Locale locale;
+
+        ContentXml(Content root, Locale locale) {
+            this.root = root;
+            this.locale = locale;
+        }
+
+        private static String name(String step) {
+            int bracket = step.indexOf('[');
+            return bracket < 0 ? step : step.substring(0, bracket);
+        }
+
+        private static int index(String step) {
+            int bracket = step.indexOf('[');
+            return bracket < 0 ? 0 : Integer.parseInt(step.substring(bracket + 1, step.length() - 1)) - 1;
+        }
+
+        /**
+         * @return The element holding the last step of the given path, or <code>null</code> if there is no such element.
+         */
+        private Content parent(String[] steps) {
+            Content c = root;
+            for (int i = 0; i < steps.length - 1 && c != null; i++) {
+                List<Content> children = c.getAll(name(steps[i]));
+                int index = index(steps[i]);
+                c = index < children.size() ? children.get(index) : null;
+            }
+            return c;
+        }
+
+        @Override
+        public I_CmsXmlContentValue getValue(String path, Locale locale) {
+            String[] steps = path.split("/");
+            Content parent = parent(steps);
+            if (parent == null) {
+                return null;
+            }
+            String last = steps[steps.length - 1];
+            int index = index(last);
+            String value = parent.get(name(last));
+            if (value != null) {
+                return index == 0 ? new Value(path, value, 0) : null;
+            }
+            return index < parent.getAll(name(last)).size() ? new Value(path, null, index) : null;
+        }
+
+        @Override
+        public I_CmsXmlContentValue getValue(String path, Locale locale, int index) {
+            return getValue(path + "[" + (index + 1) + "]", locale);
+        }
+
+        @Override
+        public List<I_CmsXmlContentValue> getValues(String path, Locale locale) {
+            List<I_CmsXmlContentValue> values = new ArrayList<I_CmsXmlContentValue>();
+            int count = getIndexCount(path, locale);
+            for (int i = 0; i < count; i++) {
+                values.add(getValue(path, locale, i));
+            }
+            return values;
+        }
+
+        @Override
+        public int getIndexCount(String path, Locale locale) {
+            String[] steps = path.split("/");
+            Content parent = parent(steps);
+            if (parent == null) {
+                return 0;
+            }
+            String name = name(steps[steps.length - 1]);
+            return parent.get(name) != null ? 1 : parent.getAll(name).size();
+        }
+
+        @Override
+        public boolean hasLocale(Locale locale) { return true; }
+
+        @Override
+        public List<Locale> getLocales() { return Collections.singletonList(locale); }
+    }
+
+    /**
+     * A single (stub) XML content value.
+     */
+    private static class Value implements I_CmsXmlContentValue {
+        private final String path;
+        private final String value;
+        private final int index;
+
+        Value(String path, String value, int index) {
+            this.path = path;
+            this.value = value;
+            this.index = index;
+        }
+
+        @Override
+        public String getStringValue(CmsObject cms) { return value == null ? "" : value; }
+
+        @Override
+        public String getPath() { return path; }
+
+        @Override
+        public int getIndex() { return index; }
+    }
+
+    /**
+     * Creates a new agent, for the online project and the given locale.
+     *
+     * @param locale The request locale.
+     */
+    public CmsAgent(Locale locale) {
+        cmso = new CmsObject(locale);
+    }
+
+    /**
+     * Registers the given content as a file of the given resource type.
+     *
+     * @param path The file path.
+     * @param resourceTypeName The resource type name.
+     * @param content The content.
+     */
+    public void addContent(String path, String resourceTypeName, Content content) {
+        int typeId;
+        try {
+            typeId = OpenCms.getResourceManager().getResourceType(resourceTypeName).getTypeId();
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+        contents.put(path, content);
+        cmso.addResource(new CmsResource(path, typeId, System.currentTimeMillis()));
+        cmso.addXmlContent(path, new ContentXml(content, cmso.getRequestContext().getLocale()));
+    }
+
+    /**
+     * Registers the given label.
+     *
+     * @param key The label key.
+     * @param label The label.
+     */
+    public void addLabel(String key, String label) {
+        labels.put(key, label);
+    }
+
+    public CmsObject getCmsObject() { return cmso; }
+
+    public CmsRequestContext getRequestContext() { return cmso.getRequestContext(); }
+
+    public I_CmsXmlContentContainer contentload(String collectorName, String param, Locale locale, boolean editable) throws Exception {
+        Content content = contents.get(param);
+        return new Container(content == null ? Collections.<Content>emptyList() : Collections.singletonList(content));
+    }
+
+    public I_CmsXmlContentContainer contentloop(I_CmsXmlContentContainer container, String element) {
+        return new Container(((Container)container).current().getAll(element));
+    }
+
+    public String contentshow(I_CmsXmlContentContainer container, String element) {
+        String value = ((Container)container).current().get(element);
+        return value == null ? "" : value;
+    }
+
+    public String label(String key) {
+        String label = labels.get(key);
+        return label == null ? "??? " + key + " ???" : label;
+    }
+
+    public String labelUnicode(String key) {
+        return label(key);
+    }
+
+    public static boolean elementExists(String elementValue) {
+        return elementValue != null && !elementValue.trim().isEmpty();
+    }
+}
@@ -0,0 +1,9 @@
+package org.opencms.db;
+
+/**
+ * Stub of the OpenCms default users, for use outside OpenCms.
+ */
+public class CmsDefaultUsers {
+
+    public String getUserGuest() { return "Guest"; }
+}
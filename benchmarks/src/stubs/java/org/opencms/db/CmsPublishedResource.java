@@ -0,0 +1,21 @@
+package org.opencms.db;
+
+import org.opencms.util.CmsUUID;
+
+/**
+ * Stub of the OpenCms publish history entry, for use outside OpenCms.
+ */
+public class CmsPublishedResource {
+
+    private final CmsUUID structureId;
+    private final String rootPath;
+
+    public CmsPublishedResource(CmsUUID structureId, String rootPath) {
+        this.structureId = structureId;
+        this.rootPath = rootPath;
+    }
+
+    public CmsUUID getStructureId() { return structureId; }
+
+    public String getRootPath() { return rootPath; }
+}
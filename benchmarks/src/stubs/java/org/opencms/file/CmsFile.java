@@ -0,0 +1,11 @@
+package org.opencms.file;
+
+/**
+ * Stub of the OpenCms file, for use outside OpenCms.
+ */
+public class CmsFile extends CmsResource {
+
+    public CmsFile(CmsResource resource) {
+        super(resource.getStructureId(), resource.getRootPath(), resource.getTypeId(), resource.getDateLastModified());
+    }
+}
@@ -0,0 +1,109 @@
+package org.opencms.file;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import org.opencms.db.CmsPublishedResource;
+import org.opencms.main.CmsException;
+import org.opencms.util.CmsUUID;
+import org.opencms.xml.content.CmsXmlContent;
+
+/**
+ * Stub of the OpenCms CmsObject, for use outside OpenCms. Serves a fixed set
+ * of resources, registered by {@link #addResource(CmsResource)}, and their
+ * XML content, if registered by {@link #addXmlContent(java.lang.String, org.opencms.xml.content.CmsXmlContent)}.
+ * The publish history is shared, see {@link #addPublishHistory(org.opencms.util.CmsUUID, java.util.List)}.
+ */
+public class CmsObject {
+
+    private static final Map<CmsUUID, List<CmsPublishedResource>> PUBLISH_HISTORY = new ConcurrentHashMap<CmsUUID, List<CmsPublishedResource>>();
+
+    private final CmsRequestContext requestContext;
+    private final Map<String, CmsResource> resources;
+    private final Map<String, CmsXmlContent> xmlContents;
+
+    public CmsObject(Locale locale) {
+        this(new CmsRequestContext(locale, true), new ConcurrentHashMap<String, CmsResource>(), new ConcurrentHashMap<String, CmsXmlContent>());
+    }
+
+    private CmsObject(CmsRequestContext requestContext, Map<String, CmsResource> resources, Map<String, CmsXmlContent> xmlContents) {
+        this.requestContext = requestContext;
+        this.resources = resources;
+        this.xmlContents = xmlContents;
+    }
+
+    /**
+     * @return A copy of this instance, serving the same resources.
+     */
+    public CmsObject copy() {
+        return new CmsObject(requestContext, resources, xmlContents);
+    }
+
+    public void addResource(CmsResource resource) {
+        resources.put(resource.getRootPath(), resource);
+    }
+
+    public void addXmlContent(String rootPath, CmsXmlContent content) {
+        xmlContents.put(rootPath, content);
+    }
+
+    /**
+     * @return The XML content of the resource with the given root path, or <code>null</code> if none was registered.
+     */
+    public CmsXmlContent getXmlContent(String rootPath) {
+        return xmlContents.get(rootPath);
+    }
+
+    public CmsRequestContext getRequestContext() { return requestContext; }
+
+    public String getSitePath(CmsResource resource) { return resource.getRootPath(); }
+
+    public List<CmsResource> readResources(String resourcename, CmsResourceFilter filter, boolean readTree) throws CmsException {
+        List<CmsResource> result = new ArrayList<CmsResource>();
+        Iterator<CmsResource> iResources = resources.values().iterator();
+        while (iResources.hasNext()) {
+            CmsResource resource = iResources.next();
+            String path = resource.getRootPath();
+            if (path.startsWith(resourcename)
+                    && (readTree || path.indexOf('/', resourcename.length()) < 0)
+                    && (filter.getType() < 0 || filter.getType() == resource.getTypeId())) {
+                result.add(resource);
+            }
+        }
+        return result;
+    }
+
+    public CmsResource readResource(String resourcename) throws CmsException {
+        CmsResource resource = resources.get(resourcename);
+        if (resource == null) {
+            throw new CmsException("Resource not found: " + resourcename);
+        }
+        return resource;
+    }
+
+    public CmsFile readFile(CmsResource resource) throws CmsException {
+        return new CmsFile(readResource(resource.getRootPath()));
+    }
+
+    public CmsFile readFile(String resourcename) throws CmsException {
+        return new CmsFile(readResource(resourcename));
+    }
+
+    /**
+     * Registers a publish job, shared by all instances.
+     */
+    public static void addPublishHistory(CmsUUID publishHistoryId, List<CmsPublishedResource> published) {
+        PUBLISH_HISTORY.put(publishHistoryId, published);
+    }
+
+    public List<CmsPublishedResource> readPublishedResources(CmsUUID publishHistoryId) throws CmsException {
+        List<CmsPublishedResource> published = PUBLISH_HISTORY.get(publishHistoryId);
+        if (published == null) {
+            throw new CmsException("No publish history: " + publishHistoryId);
+        }
+        return published;
+    }
+}
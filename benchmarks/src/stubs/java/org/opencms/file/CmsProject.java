@@ -0,0 +1,24 @@
+package org.opencms.file;
+
+import org.opencms.util.CmsUUID;
+
+/**
+ * Stub of the OpenCms project, for use outside OpenCms. There is one online
+ * and one offline project.
+ */
+public class CmsProject {
+
+    public static final CmsUUID ONLINE_PROJECT_ID = new CmsUUID();
+
+    private static final CmsUUID OFFLINE_PROJECT_ID = new CmsUUID();
+
+    private final boolean online;
+
+    public CmsProject(boolean online) {
+        this.online = online;
+    }
+
+    public boolean isOnlineProject() { return online; }
+
+    public CmsUUID getUuid() { return online ? ONLINE_PROJECT_ID : OFFLINE_PROJECT_ID; }
+}
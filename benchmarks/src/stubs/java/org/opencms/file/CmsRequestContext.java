@@ -0,0 +1,28 @@
+package org.opencms.file;
+
+import java.util.Locale;
+
+/**
+ * Stub of the OpenCms request context, for use outside OpenCms. The site root
+ * is always "" (the root site), and the user is always the guest user.
+ */
+public class CmsRequestContext {
+
+    private final Locale locale;
+    private final CmsProject project;
+
+    public CmsRequestContext(Locale locale, boolean online) {
+        this.locale = locale;
+        this.project = new CmsProject(online);
+    }
+
+    public Locale getLocale() { return locale; }
+
+    public CmsProject getCurrentProject() { return project; }
+
+    public CmsUser getCurrentUser() { return CmsUser.GUEST; }
+
+    public String getSiteRoot() { return ""; }
+
+    public String addSiteRoot(String resourcename) { return resourcename; }
+}
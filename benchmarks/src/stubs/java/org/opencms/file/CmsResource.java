@@ -0,0 +1,43 @@
+package org.opencms.file;
+
+import org.opencms.util.CmsUUID;
+
+/**
+ * Stub of the OpenCms resource, for use outside OpenCms.
+ */
+public class CmsResource {
+
+    private final CmsUUID structureId;
+    private final String rootPath;
+    private final int typeId;
+    private final long dateLastModified;
+
+    public CmsResource(String rootPath, int typeId, long dateLastModified) {
+        this(new CmsUUID(), rootPath, typeId, dateLastModified);
+    }
+
+    public CmsResource(CmsUUID structureId, String rootPath, int typeId, long dateLastModified) {
+        this.structureId = structureId;
+        this.rootPath = rootPath;
+        this.typeId = typeId;
+        this.dateLastModified = dateLastModified;
+    }
+
+    public CmsUUID getStructureId() { return structureId; }
+
+    public String getRootPath() { return rootPath; }
+
+    public int getTypeId() { return typeId; }
+
+    public long getDateLastModified() { return dateLastModified; }
+
+    @Override
+    public boolean equals(Object obj) {
+        return obj instanceof CmsResource && ((CmsResource)obj).rootPath.equals(rootPath);
+    }
+
+    @Override
+    public int hashCode() {
+        return rootPath.hashCode();
+    }
+}
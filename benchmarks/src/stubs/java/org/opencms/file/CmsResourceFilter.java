@@ -0,0 +1,22 @@
+package org.opencms.file;
+
+/**
+ * Stub of the OpenCms resource filter, for use outside OpenCms. Only the type
+ * requirement is kept.
+ */
+public final class CmsResourceFilter {
+
+    public static final CmsResourceFilter DEFAULT_FILES = new CmsResourceFilter(-1);
+
+    private final int requiredType;
+
+    private CmsResourceFilter(int requiredType) {
+        this.requiredType = requiredType;
+    }
+
+    public CmsResourceFilter addRequireType(int type) {
+        return new CmsResourceFilter(type);
+    }
+
+    public int getType() { return requiredType; }
+}
@@ -0,0 +1,18 @@
+package org.opencms.file;
+
+import org.opencms.util.CmsUUID;
+
+/**
+ * Stub of the OpenCms user, for use outside OpenCms. Only the guest user
+ * exists.
+ */
+public class CmsUser {
+
+    static final CmsUser GUEST = new CmsUser();
+
+    private final CmsUUID id = new CmsUUID();
+
+    private CmsUser() {}
+
+    public CmsUUID getId() { return id; }
+}
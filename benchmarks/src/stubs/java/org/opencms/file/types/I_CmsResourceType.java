@@ -0,0 +1,9 @@
+package org.opencms.file.types;
+
+/**
+ * Stub of the OpenCms resource type interface, for use outside OpenCms.
+ */
+public interface I_CmsResourceType {
+
+    int getTypeId();
+}
@@ -0,0 +1,45 @@
+package org.opencms.i18n;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import org.opencms.file.CmsObject;
+
+/**
+ * Stub of the OpenCms locale manager, for use outside OpenCms. The default
+ * locale is English, for every resource.
+ */
+public class CmsLocaleManager {
+
+    private static final List<Locale> DEFAULT_LOCALES = Collections.singletonList(Locale.ENGLISH);
+
+    public List<Locale> getDefaultLocales(CmsObject cms, String resourceName) { return DEFAULT_LOCALES; }
+
+    /**
+     * @return The requested locale if available, otherwise the first available locale with the same language, otherwise the first available default locale, otherwise <code>null</code>.
+     */
+    public Locale getBestMatchingLocale(Locale requestedLocale, List<Locale> defaults, List<Locale> available) {
+        if (available == null || available.isEmpty()) {
+            return null;
+        }
+        if (available.contains(requestedLocale)) {
+            return requestedLocale;
+        }
+        Iterator<Locale> iAvailable = available.iterator();
+        while (iAvailable.hasNext()) {
+            Locale locale = iAvailable.next();
+            if (requestedLocale != null && locale.getLanguage().equals(requestedLocale.getLanguage())) {
+                return locale;
+            }
+        }
+        Iterator<Locale> iDefaults = defaults.iterator();
+        while (iDefaults.hasNext()) {
+            Locale locale = iDefaults.next();
+            if (available.contains(locale)) {
+                return locale;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,16 @@
+package org.opencms.jsp;
+
+/**
+ * Stub of the OpenCms XML content container (the result of a content load or
+ * content loop), for use outside OpenCms.
+ */
+public interface I_CmsXmlContentContainer {
+
+    /**
+     * Moves to the next resource (or element), if any.
+     *
+     * @return <code>true</code> if there was a next resource.
+     * @throws Exception Never thrown by the stubs.
+     */
+    boolean hasMoreResources() throws Exception;
+}
@@ -0,0 +1,13 @@
+package org.opencms.loader;
+
+import org.opencms.main.CmsException;
+
+/**
+ * Stub of the OpenCms loader exception, for use outside OpenCms.
+ */
+public class CmsLoaderException extends CmsException {
+
+    public CmsLoaderException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,27 @@
+package org.opencms.loader;
+
+import java.util.HashMap;
+import java.util.Map;
+import org.opencms.file.types.I_CmsResourceType;
+
+/**
+ * Stub of the OpenCms resource manager, for use outside OpenCms. Any type name
+ * is accepted, and assigned a type ID on first request.
+ */
+public class CmsResourceManager {
+
+    private final Map<String, I_CmsResourceType> types = new HashMap<String, I_CmsResourceType>();
+
+    public synchronized I_CmsResourceType getResourceType(String typeName) throws CmsLoaderException {
+        I_CmsResourceType type = types.get(typeName);
+        if (type == null) {
+            final int typeId = 1000 + types.size();
+            type = new I_CmsResourceType() {
+                @Override
+                public int getTypeId() { return typeId; }
+            };
+            types.put(typeName, type);
+        }
+        return type;
+    }
+}
@@ -0,0 +1,22 @@
+package org.opencms.main;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Stub of the OpenCms event, for use outside OpenCms.
+ */
+public class CmsEvent {
+
+    private final int type;
+    private final Map<String, Object> data;
+
+    public CmsEvent(int type, Map<String, Object> data) {
+        this.type = type;
+        this.data = data == null ? Collections.<String, Object>emptyMap() : data;
+    }
+
+    public int getType() { return type; }
+
+    public Map<String, Object> getData() { return data; }
+}
@@ -0,0 +1,11 @@
+package org.opencms.main;
+
+/**
+ * Stub of the OpenCms base exception, for use outside OpenCms.
+ */
+public class CmsException extends Exception {
+
+    public CmsException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,25 @@
+package org.opencms.main;
+
+/**
+ * Stub of the OpenCms event listener interface, for use outside OpenCms. The
+ * constants have the same values as in OpenCms.
+ */
+public interface I_CmsEventListener {
+
+    int EVENT_PUBLISH_PROJECT = 2;
+    int EVENT_CLEAR_CACHES = 5;
+    int EVENT_RESOURCE_MODIFIED = 11;
+    int EVENT_RESOURCE_CREATED = 12;
+    int EVENT_RESOURCE_DELETED = 13;
+    int EVENT_RESOURCES_MODIFIED = 14;
+    int EVENT_RESOURCE_MOVED = 15;
+    int EVENT_RESOURCE_AND_PROPERTIES_MODIFIED = 16;
+    int EVENT_CLEAR_ONLINE_CACHES = 17;
+    int EVENT_CLEAR_OFFLINE_CACHES = 18;
+
+    String KEY_RESOURCE = "resource";
+    String KEY_RESOURCES = "resources";
+    String KEY_PUBLISHID = "publishHistoryId";
+
+    void cmsEvent(CmsEvent event);
+}
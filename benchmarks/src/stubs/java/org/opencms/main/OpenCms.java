@@ -0,0 +1,37 @@
+package org.opencms.main;
+
+import java.util.Locale;
+import org.opencms.db.CmsDefaultUsers;
+import org.opencms.file.CmsObject;
+import org.opencms.i18n.CmsLocaleManager;
+import org.opencms.loader.CmsResourceManager;
+
+/**
+ * Stub of the OpenCms singleton, for use outside OpenCms. Event listeners are
+ * accepted, but no events are ever fired.
+ */
+public final class OpenCms {
+
+    private static final CmsResourceManager RESOURCE_MANAGER = new CmsResourceManager();
+    private static final CmsDefaultUsers DEFAULT_USERS = new CmsDefaultUsers();
+    private static final CmsLocaleManager LOCALE_MANAGER = new CmsLocaleManager();
+
+    private OpenCms() {}
+
+    public static CmsResourceManager getResourceManager() { return RESOURCE_MANAGER; }
+
+    public static void addCmsEventListener(I_CmsEventListener listener, int[] eventTypes) {}
+
+    public static void removeCmsEventListener(I_CmsEventListener listener) {}
+
+    public static CmsDefaultUsers getDefaultUsers() { return DEFAULT_USERS; }
+
+    public static CmsLocaleManager getLocaleManager() { return LOCALE_MANAGER; }
+
+    public static CmsObject initCmsObject(CmsObject cms) throws CmsException { return cms.copy(); }
+
+    /**
+     * @return A new CmsObject, serving no resources.
+     */
+    public static CmsObject initCmsObject(String user) throws CmsException { return new CmsObject(Locale.ENGLISH); }
+}
@@ -0,0 +1,37 @@
+package org.opencms.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Stub of the OpenCms UUID, for use outside OpenCms. Each new instance is
+ * unique within the current process.
+ */
+public final class CmsUUID {
+
+    private static final AtomicLong NEXT = new AtomicLong(1);
+
+    private final long value;
+
+    public CmsUUID() {
+        value = NEXT.getAndIncrement();
+    }
+
+    public CmsUUID(String uuid) {
+        value = Long.parseLong(uuid);
+    }
+
+    public String getStringValue() { return Long.toString(value); }
+
+    @Override
+    public boolean equals(Object obj) {
+        return obj instanceof CmsUUID && ((CmsUUID)obj).value == value;
+    }
+
+    @Override
+    public int hashCode() {
+        return (int)(value ^ (value >>> 32));
+    }
+
+    @Override
+    public String toString() { return getStringValue(); }
+}
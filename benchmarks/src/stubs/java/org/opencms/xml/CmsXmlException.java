@@ -0,0 +1,13 @@
+package org.opencms.xml;
+
+import org.opencms.main.CmsException;
+
+/**
+ * Stub of the OpenCms XML exception, for use outside OpenCms.
+ */
+public class CmsXmlException extends CmsException {
+
+    public CmsXmlException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,24 @@
+package org.opencms.xml.content;
+
+import java.util.List;
+import java.util.Locale;
+import org.opencms.xml.types.I_CmsXmlContentValue;
+
+/**
+ * Stub of the OpenCms XML content, for use outside OpenCms. Implemented by the
+ * stub CmsAgent, see {@link CmsXmlContentFactory}.
+ */
+public abstract class CmsXmlContent {
+
+    public abstract I_CmsXmlContentValue getValue(String path, Locale locale);
+
+    public abstract I_CmsXmlContentValue getValue(String path, Locale locale, int index);
+
+    public abstract List<I_CmsXmlContentValue> getValues(String path, Locale locale);
+
+    public abstract int getIndexCount(String path, Locale locale);
+
+    public abstract boolean hasLocale(Locale locale);
+
+    public abstract List<Locale> getLocales();
+}
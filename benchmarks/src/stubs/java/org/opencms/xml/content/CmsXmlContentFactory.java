@@ -0,0 +1,23 @@
+package org.opencms.xml.content;
+
+import org.opencms.file.CmsFile;
+import org.opencms.file.CmsObject;
+import org.opencms.xml.CmsXmlException;
+
+/**
+ * Stub of the OpenCms XML content factory, for use outside OpenCms. Only
+ * content registered by {@link CmsObject#addXmlContent(java.lang.String, org.opencms.xml.content.CmsXmlContent)}
+ * (e.g. by the stub CmsAgent) can be unmarshalled.
+ */
+public final class CmsXmlContentFactory {
+
+    private CmsXmlContentFactory() {}
+
+    public static CmsXmlContent unmarshal(CmsObject cms, CmsFile file) throws CmsXmlException {
+        CmsXmlContent content = cms.getXmlContent(file.getRootPath());
+        if (content == null) {
+            throw new CmsXmlException("No XML content registered for " + file.getRootPath());
+        }
+        return content;
+    }
+}
@@ -0,0 +1,15 @@
+package org.opencms.xml.types;
+
+import org.opencms.file.CmsObject;
+
+/**
+ * Stub of the OpenCms XML content value interface, for use outside OpenCms.
+ */
+public interface I_CmsXmlContentValue {
+
+    String getStringValue(CmsObject cms);
+
+    String getPath();
+
+    int getIndex();
+}
@@ -0,0 +1,194 @@
+package no.seapop.data;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests the rebuild state machine of {@link SpeciesDataCollectionHolder}:
+ * coalescing of triggers, partial loads and errors escaping a rebuild.
+ *
+ * @author Paul-Inge Flakstad, Norwegian Polar Institute <flakstad at npolar.no>
+ */
+public class SpeciesDataCollectionHolderTest {
+
+    private static final long TIMEOUT_SECONDS = 10;
+
+    private SpeciesDataCollectionHolder holder = null;
+
+    /**
+     * Fake source, whose loads can be held until released, and which can be
+     * told to fail the next load (partially, or with an error).
+     */
+    private static class FakeSource implements SpeciesDataSource {
+        final AtomicInteger loads = new AtomicInteger();
+        /** Released whenever a load starts. */
+        final Semaphore started = new Semaphore(0);
+        /** Acquired by each load before it completes. */
+        final Semaphore gate = new Semaphore(Integer.MAX_VALUE);
+        volatile boolean failNextFile = false;
+        volatile Error errorNext = null;
+        volatile SpeciesDataLoadReport report = null;
+
+        @Override
+        public List<SpeciesData> load() throws IOException {
+            int n = loads.incrementAndGet();
+            started.release();
+            gate.acquireUninterruptibly();
+            Error error = errorNext;
+            if (error != null) {
+                errorNext = null;
+                throw error;
+            }
+            SpeciesDataLoadReport r = new SpeciesDataLoadReport("fake");
+            List<SpeciesData> entries = new ArrayList<SpeciesData>();
+            SpeciesData entry = new SpeciesData("/species/" + n + ".xml", "Species " + n, SpeciesData.HABITAT_PELAGIC);
+            r.addFile(entry, 0);
+            entries.add(entry);
+            if (failNextFile) {
+                failNextFile = false;
+                r.addFailedFile("/species/broken.xml", 0, new IOException("Unreadable"));
+            }
+            report = r;
+            return entries;
+        }
+
+        @Override
+        public SpeciesDataLoadReport getLoadReport() { return report; }
+    }
+
+    @After
+    public void tearDown() {
+        if (holder != null) {
+            holder.shutdown();
+        }
+    }
+
+    /**
+     * Waits until the holder has no rebuild running.
+     */
+    private static void awaitIdle(SpeciesDataCollectionHolder holder) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(TIMEOUT_SECONDS);
+        while (holder.isRefreshing()) {
+            assertTrue("Rebuild did not complete", System.nanoTime() < deadline);
+            Thread.sleep(5);
+        }
+    }
+
+    @Test
+    public void triggersDuringRebuildCoalesceIntoOneFollowUp() throws Exception {
+        FakeSource source = new FakeSource();
+        source.gate.drainPermits();
+        holder = new SpeciesDataCollectionHolder(source);
+
+        assertTrue(holder.refresh()); // IDLE -> RUNNING
+        assertTrue(source.started.tryAcquire(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        for (int i = 0; i < 5; i++) {
+            assertFalse(holder.refresh()); // RUNNING -> RUNNING_PENDING, then no effect
+        }
+        assertTrue(holder.isRefreshing());
+
+        source.gate.release(Integer.MAX_VALUE / 2);
+        awaitIdle(holder);
+
+        assertEquals(2, source.loads.get()); // The first rebuild, plus exactly one follow-up
+        assertEquals(2, holder.getRefreshCount());
+        assertEquals(6, holder.getTriggerCount());
+        assertEquals("Species 2", holder.get().get().get(0).getName());
+    }
+
+    @Test
+    public void concurrentTriggersStartOneRebuild() throws Exception {
+        final FakeSource source = new FakeSource();
+        source.gate.drainPermits();
+        holder = new SpeciesDataCollectionHolder(source);
+
+        final CountDownLatch go = new CountDownLatch(1);
+        final AtomicInteger started = new AtomicInteger();
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int t = 0; t < 8; t++) {
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        go.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    if (holder.refresh()) {
+                        started.incrementAndGet();
+                    }
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        go.countDown();
+        for (int t = 0; t < threads.size(); t++) {
+            threads.get(t).join();
+        }
+        assertEquals(1, started.get());
+
+        source.gate.release(Integer.MAX_VALUE / 2);
+        awaitIdle(holder);
+        assertTrue(source.loads.get() <= 2);
+    }
+
+    @Test
+    public void partialLoadKeepsPreviousCollection() throws Exception {
+        FakeSource source = new FakeSource();
+        holder = new SpeciesDataCollectionHolder(source);
+        SpeciesDataCollection first = holder.get();
+        awaitIdle(holder); // get() returns as soon as the collection is swapped in
+        assertNull(holder.getLastFailure());
+
+        source.failNextFile = true;
+        assertTrue(holder.refresh());
+        awaitIdle(holder);
+
+        assertSame(first, holder.get());
+        assertNotNull(holder.getLastFailure());
+        assertEquals(1, holder.getFailureCount());
+
+        assertTrue(holder.refresh());
+        awaitIdle(holder);
+        assertNotSame(first, holder.get());
+        assertNull(holder.getLastFailure());
+    }
+
+    @Test
+    public void partialFirstLoadIsServed() throws Exception {
+        FakeSource source = new FakeSource();
+        source.failNextFile = true;
+        holder = new SpeciesDataCollectionHolder(source);
+
+        assertEquals(1, holder.get().size());
+        assertNotNull(holder.getLastFailure());
+    }
+
+    @Test
+    public void errorDuringRebuildDoesNotStickInRunningState() throws Exception {
+        FakeSource source = new FakeSource();
+        holder = new SpeciesDataCollectionHolder(source);
+        SpeciesDataCollection first = holder.get();
+        awaitIdle(holder); // get() returns as soon as the collection is swapped in
+
+        source.errorNext = new NoClassDefFoundError("Redeployed");
+        assertTrue(holder.refresh());
+        awaitIdle(holder);
+        assertTrue(holder.getLastFailure() instanceof NoClassDefFoundError);
+        assertSame(first, holder.get());
+
+        assertTrue(holder.refresh()); // Not stuck in RUNNING
+        awaitIdle(holder);
+        assertNotSame(first, holder.get());
+        assertNull(holder.getLastFailure());
+    }
+}
@@ -0,0 +1,407 @@
+package no.seapop.data;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import no.npolar.util.CmsAgent;
+
+/**
+ * Immutable snapshot of a {@link SpeciesDataCollection}, with precomputed
+ * orderings.
+ * <p>
+ * Unlike {@link SpeciesDataCollection#sort(java.util.Comparator)}, which
+ * re-orders the shared list of entries in place, {@link #sort(java.util.Comparator)}
+ * here returns a {@link View}: a read-only, reordered view of the same
+ * entries. Orderings are stored as int permutation arrays (view position to
+ * base position), and are computed once, when the snapshot is created, for
+ * {@link SpeciesData#GROUP_NUMBER}, {@link SpeciesData#NAME} and any other
+ * registered comparator. The index, counts and coverage statistics are built
+ * once per snapshot, on first use; each view re-orders them by its
+ * permutation (without reading the data links again), and keeps them along
+ * with its rendered fragments.
+ * <p>
+ * Apart from what is built once, on first use, nothing in a snapshot changes
+ * after it has been created, so one instance can be shared by all request
+ * threads, without locks once it is in use. Note that the entries
+ * themselves are shared with the collection the snapshot was created from,
+ * and must not be modified.
+ *
+ * @author Paul-Inge Flakstad, Norwegian Polar Institute <flakstad at npolar.no>
+ */
+public final class ImmutableSpeciesDataCollection {
+
+    /** The data entries, in base order (the order of the collection this snapshot was created from). */
+    private final SpeciesData[] entries;
+    /** All data entries, by VFS URI. */
+    private final Map<String, SpeciesData> entriesByUri;
+    /** All locations, in order of appearance. */
+    private final List<String> locations;
+    /** All bird species names. */
+    private final List<String> names;
+    /** The view in base order. */
+    private final View unsorted;
+    /** The precomputed views, by comparator. */
+    private final Map<Comparator<SpeciesData>, View> views;
+    /** Views created on demand for comparators that were not registered, by comparator. */
+    private final ConcurrentMap<Comparator<SpeciesData>, View> unregisteredViews = new ConcurrentHashMap<Comparator<SpeciesData>, View>();
+
+    /** The maximum number of views kept for comparators that were not registered. */
+    private static final int MAX_UNREGISTERED_VIEWS = 16;
+
+    /**
+     * Read-only, reordered view of the entries in a snapshot.
+     * <p>
+     * Positions (species indexes) used by this view's methods are positions in
+     * this view's order, as in {@link #get()}.
+     */
+    public static final class View {
+        /** The snapshot. */
+        private final ImmutableSpeciesDataCollection snapshot;
+        /** The comparator that defines the order of this view, or <code>null</code> for base order. */
+        private final Comparator<SpeciesData> comparator;
+        /** The permutation: base positions, by view position. */
+        private final int[] permutation;
+        /** The entries, in view order. */
+        private final List<SpeciesData> list;
+        /** Collection holding the entries in view order (for index, counts and rendering), created on demand (guarded by this view). */
+        private volatile SpeciesDataCollection collection = null;
+
+        private View(ImmutableSpeciesDataCollection snapshot, Comparator<SpeciesData> comparator, int[] permutation) {
+            this.snapshot = snapshot;
+            this.comparator = comparator;
+            this.permutation = permutation;
+            this.list = new AbstractList<SpeciesData>() {
+                @Override
+                public SpeciesData get(int position) {
+                    return View.this.snapshot.entries[View.this.permutation[position]];
+                }
+                @Override
+                public int size() {
+                    return View.this.permutation.length;
+                }
+            };
+        }
+
+        /**
+         * Gets the collection holding the entries in this view's order,
+         * creating it if necessary.
+         * <p>
+         * The collection in base order is built from the entries, once per
+         * snapshot. Any other view's collection is a re-ordered copy of that
+         * one. Either way, it is created only once: concurrent first calls
+         * wait for the one doing it. The collection is never exposed, and so
+         * never modified.
+         */
+        private SpeciesDataCollection getCollection() {
+            SpeciesDataCollection c = collection;
+            if (c == null) {
+                synchronized (this) {
+                    c = collection;
+                    if (c == null) {
+                        c = this == snapshot.unsorted
+                                ? new SpeciesDataCollection(list, snapshot.locations)
+                                : new SpeciesDataCollection(snapshot.unsorted.getCollection(), permutation);
+                        collection = c;
+                    }
+                }
+            }
+            return c;
+        }
+
+        /**
+         * @return The comparator that defines the order of this view, or <code>null</code> if it is in base order.
+         */
+        public Comparator<SpeciesData> getComparator() { return comparator; }
+
+        /**
+         * Gets the data entries, in this view's order, as a read-only list
+         * (no copy is made).
+         *
+         * @return The data entries, in this view's order.
+         */
+        public List<SpeciesData> get() { return list; }
+
+        /**
+         * Gets the position in base order of the entry at the given position
+         * in this view.
+         *
+         * @param position The position in this view.
+         * @return The position in base order.
+         */
+        public int getBasePosition(int position) { return permutation[position]; }
+
+        /**
+         * @return The number of data entries.
+         */
+        public int size() { return permutation.length; }
+
+        /**
+         * Creates a new, unfiltered query over the species and data links,
+         * in this view's order.
+         *
+         * @return A new, unfiltered query.
+         * @see SpeciesDataCollection#query()
+         */
+        public SpeciesDataQuery query() { return getCollection().query(); }
+
+        /**
+         * @see SpeciesDataCollection#getDataLinks(java.lang.String, int)
+         */
+        public List<SpeciesDataLink> getDataLinks(String location, int position) {
+            return getCollection().getDataLinks(location, position);
+        }
+
+        /**
+         * @see SpeciesDataCollection#getDataLinks(java.lang.String, int, java.lang.String)
+         */
+        public List<SpeciesDataLink> getDataLinks(String location, int position, String dataType) {
+            return getCollection().getDataLinks(location, position, dataType);
+        }
+
+        /**
+         * @see SpeciesDataCollection#getCountBySpecies(int, java.lang.String)
+         */
+        public int getCountBySpecies(int position, String dataType) {
+            return getCollection().getCountBySpecies(position, dataType);
+        }
+
+        /**
+         * @see SpeciesDataCollection#getCoverage()
+         */
+        public SpeciesDataCoverage getCoverage() { return getCollection().getCoverage(); }
+
+        /**
+         * @see SpeciesDataCollection#toHtmlTableRows(no.npolar.util.CmsAgent, java.lang.String, java.util.List, java.util.List, java.util.List)
+         */
+        public String toHtmlTableRows(CmsAgent cms, String dataType, List<String> dataTypeTotals, List<String> excludedDataTypes, List<String> locationsInOrder) {
+            return getCollection().toHtmlTableRows(cms, dataType, dataTypeTotals, excludedDataTypes, locationsInOrder);
+        }
+
+        /**
+         * @see SpeciesDataCollection#toHtmlTableRowsBytes(no.npolar.util.CmsAgent, java.lang.String, java.util.List, java.util.List, java.util.List, boolean)
+         */
+        public byte[] toHtmlTableRowsBytes(CmsAgent cms, String dataType, List<String> dataTypeTotals, List<String> excludedDataTypes, List<String> locationsInOrder, boolean gzipped) {
+            return getCollection().toHtmlTableRowsBytes(cms, dataType, dataTypeTotals, excludedDataTypes, locationsInOrder, gzipped);
+        }
+
+        /**
+         * @see SpeciesDataCollection#writeHtmlTableRows(java.io.OutputStream, boolean, no.npolar.util.CmsAgent, java.lang.String, java.util.List, java.util.List, java.util.List)
+         */
+        public void writeHtmlTableRows(OutputStream out, boolean gzipped, CmsAgent cms, String dataType, List<String> dataTypeTotals, List<String> excludedDataTypes, List<String> locationsInOrder) throws IOException {
+            getCollection().writeHtmlTableRows(out, gzipped, cms, dataType, dataTypeTotals, excludedDataTypes, locationsInOrder);
+        }
+
+        /**
+         * @see SpeciesDataCollection#writeHtmlTableRows(java.lang.Appendable, no.npolar.util.CmsAgent, java.lang.String, java.util.List, java.util.List, java.util.List)
+         */
+        public void writeHtmlTableRows(Appendable out, CmsAgent cms, String dataType, List<String> dataTypeTotals, List<String> excludedDataTypes, List<String> locationsInOrder) throws IOException {
+            getCollection().writeHtmlTableRows(out, cms, dataType, dataTypeTotals, excludedDataTypes, locationsInOrder);
+        }
+    }
+
+    /**
+     * Creates a new snapshot of the given collection, with precomputed
+     * orderings by group and by name.
+     *
+     * @param collection The collection. Must not be modified while the snapshot is created.
+     * @see #ImmutableSpeciesDataCollection(no.seapop.data.SpeciesDataCollection, java.util.List)
+     */
+    public ImmutableSpeciesDataCollection(SpeciesDataCollection collection) {
+        this(collection, null);
+    }
+
+    /**
+     * Creates a new snapshot of the given collection, with precomputed
+     * orderings by group, by name, and by each of the given comparators.
+     * <p>
+     * The base order is the current order of the given collection.
+     *
+     * @param collection The collection. Must not be modified while the snapshot is created.
+     * @param comparators Additional comparators to precompute orderings for. Can be <code>null</code>.
+     */
+    public ImmutableSpeciesDataCollection(SpeciesDataCollection collection, List<Comparator<SpeciesData>> comparators) {
+        List<SpeciesData> data = collection.get();
+        entries = data.toArray(new SpeciesData[data.size()]);
+        Map<String, SpeciesData> byUri = new HashMap<String, SpeciesData>(entries.length * 2);
+        for (int i = 0; i < entries.length; i++) {
+            byUri.put(entries[i].getVfsUri(), entries[i]);
+        }
+        entriesByUri = Collections.unmodifiableMap(byUri);
+        locations = Collections.unmodifiableList(new ArrayList<String>(collection.getLocations()));
+        names = Collections.unmodifiableList(new ArrayList<String>(collection.getNames()));
+
+        int[] identity = new int[entries.length];
+        for (int i = 0; i < identity.length; i++) {
+            identity[i] = i;
+        }
+        unsorted = new View(this, null, identity);
+
+        List<Comparator<SpeciesData>> registered = new ArrayList<Comparator<SpeciesData>>();
+        registered.add(SpeciesData.GROUP_NUMBER);
+        registered.add(SpeciesData.NAME);
+        if (comparators != null) {
+            registered.addAll(comparators);
+        }
+        Map<Comparator<SpeciesData>, View> precomputed = new HashMap<Comparator<SpeciesData>, View>();
+        Iterator<Comparator<SpeciesData>> iComparators = registered.iterator();
+        while (iComparators.hasNext()) {
+            Comparator<SpeciesData> comp = iComparators.next();
+            if (!precomputed.containsKey(comp)) {
+                precomputed.put(comp, new View(this, comp, permutation(entries, comp)));
+            }
+        }
+        views = Collections.unmodifiableMap(precomputed);
+    }
+
+    /**
+     * Computes the permutation that sorts the given entries using the given
+     * comparator. The sort is stable: equal entries keep their base order.
+     *
+     * @param entries The entries, in base order.
+     * @param comp The comparator.
+     * @return The permutation: base positions, by sorted position.
+     */
+    private static int[] permutation(SpeciesData[] entries, Comparator<SpeciesData> comp) {
+        int[] perm = new int[entries.length];
+        for (int i = 0; i < perm.length; i++) {
+            perm[i] = i;
+        }
+        // Bottom-up merge sort, on positions
+        int[] tmp = new int[perm.length];
+        for (int width = 1; width < perm.length; width *= 2) {
+            for (int low = 0; low < perm.length; low += 2 * width) {
+                int mid = Math.min(low + width, perm.length);
+                int high = Math.min(low + 2 * width, perm.length);
+                int left = low;
+                int right = mid;
+                for (int k = low; k < high; k++) {
+                    if (left < mid && (right >= high || comp.compare(entries[perm[left]], entries[perm[right]]) <= 0)) {
+                        tmp[k] = perm[left++];
+                    } else {
+                        tmp[k] = perm[right++];
+                    }
+                }
+            }
+            int[] swap = perm;
+            perm = tmp;
+            tmp = swap;
+        }
+        return perm;
+    }
+
+    /**
+     * Gets a view of the entries, sorted using the given comparator.
+     * <p>
+     * For a registered comparator, the precomputed view is returned (at no
+     * cost). For any other comparator, a view is created on first use, by
+     * sorting an array of positions, and then kept for later calls with the
+     * same (equal) comparator. At most {@value #MAX_UNREGISTERED_VIEWS} such
+     * views are kept; beyond that, each call creates a new view. Either way,
+     * this snapshot's entries are not changed.
+     *
+     * @param comp The comparator.
+     * @return A view of the entries, sorted using the given comparator.
+     */
+    public View sort(Comparator<SpeciesData> comp) {
+        View view = views.get(comp);
+        if (view == null) {
+            view = unregisteredViews.get(comp);
+        }
+        if (view == null) {
+            view = new View(this, comp, permutation(entries, comp));
+            if (unregisteredViews.size() < MAX_UNREGISTERED_VIEWS) {
+                View existing = unregisteredViews.putIfAbsent(comp, view);
+                if (existing != null) {
+                    view = existing;
+                }
+            }
+        }
+        return view;
+    }
+
+    /**
+     * Gets a view of the entries, sorted by group.
+     *
+     * @return A view of the entries, sorted by group.
+     * @see SpeciesData#GROUP_NUMBER
+     */
+    public View byGroup() { return views.get(SpeciesData.GROUP_NUMBER); }
+
+    /**
+     * Gets a view of the entries, sorted by name.
+     *
+     * @return A view of the entries, sorted by name.
+     * @see SpeciesData#NAME
+     */
+    public View byName() { return views.get(SpeciesData.NAME); }
+
+    /**
+     * Gets a view of the entries, in base order (the order of the collection
+     * this snapshot was created from).
+     *
+     * @return A view of the entries, in base order.
+     */
+    public View unsorted() { return unsorted; }
+
+    /**
+     * @return <code>true</code> if an ordering was precomputed for the given comparator.
+     */
+    public boolean isRegistered(Comparator<SpeciesData> comp) { return views.containsKey(comp); }
+
+    /**
+     * Gets the data entry with the given VFS URI.
+     *
+     * @param vfsUri The VFS URI.
+     * @return The data entry with the given VFS URI, or <code>null</code> if none.
+     */
+    public SpeciesData getEntry(String vfsUri) { return entriesByUri.get(vfsUri); }
+
+    /**
+     * @return All locations, in order of appearance.
+     */
+    public List<String> getLocations() { return locations; }
+
+    /**
+     * @return All bird species names.
+     */
+    public List<String> getNames() { return names; }
+
+    /**
+     * @see SpeciesDataCollection#getCount(java.lang.String, java.lang.String)
+     */
+    public int getCount(String location, String dataType) { return unsorted.getCollection().getCount(location, dataType); }
+
+    /**
+     * @see SpeciesDataCollection#getCountByLocation(java.lang.String)
+     */
+    public int getCountByLocation(String location) { return unsorted.getCollection().getCountByLocation(location); }
+
+    /**
+     * @see SpeciesDataCollection#getCountByType(java.lang.String)
+     */
+    public int getCountByType(String dataType) { return unsorted.getCollection().getCountByType(dataType); }
+
+    /**
+     * @see SpeciesDataCollection#getTotals(java.lang.String, java.util.List)
+     */
+    public int[] getTotals(String location, List<String> dataTypes) { return unsorted.getCollection().getTotals(location, dataTypes); }
+
+    /**
+     * @return The total number of data links.
+     */
+    public int getCount() { return unsorted.getCollection().getCount(); }
+
+    /**
+     * @return The number of data entries.
+     */
+    public int size() { return entries.length; }
+}
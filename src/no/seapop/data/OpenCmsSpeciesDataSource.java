@@ -0,0 +1,338 @@
+package no.seapop.data;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import no.npolar.util.CmsAgent;
+import org.opencms.file.CmsObject;
+import org.opencms.file.CmsResource;
+import org.opencms.file.CmsResourceFilter;
+import org.opencms.main.CmsException;
+import org.opencms.main.OpenCms;
+import org.opencms.util.CmsUUID;
+
+/**
+ * Species data source that reads the <code>seapop_species_data</code> files 
+ * in an OpenCms folder, optionally in parallel.
+ * 
+ * @author Paul-Inge Flakstad, Norwegian Polar Institute <flakstad at npolar.no>
+ */
+public class OpenCmsSpeciesDataSource implements SpeciesDataSource {
+    /** The folder to read data files from. */
+    private String folder = null;
+    /** Initialized CmsAgent, or <code>null</code> if reading via {@link #cmso}. */
+    private CmsAgent cms = null;
+    /** Initialized CmsObject, used only if there is no CmsAgent. */
+    private CmsObject cmso = null;
+    /** The locale to read, used only if there is no CmsAgent. */
+    private Locale locale = null;
+    /** Resource(s) to ignore. */
+    private List<CmsResource> excluded = null;
+    /** The maximum number of threads to use for loading. */
+    private int parallelism = 1;
+    /** If <code>true</code>, data links are loaded on first access. */
+    private boolean lazyDataLinks = false;
+    /** If <code>true</code>, only names and habitat flags are loaded. */
+    private boolean headersOnly = false;
+    /** The report on the most recent load. */
+    private volatile SpeciesDataLoadReport loadReport = null;
+    
+    /**
+     * Creates a new source for the given folder, reading the data files 
+     * sequentially, in the current thread.
+     * 
+     * @param folder The folder to read <code>seapop_species_data</code> data files from.
+     * @param cms Initialized CmsAgent.
+     * @param excluded Resource(s) to ignore. Can be <code>null</code>.
+     */
+    public OpenCmsSpeciesDataSource(String folder, CmsAgent cms, List<CmsResource> excluded) {
+        this(folder, cms, excluded, 1);
+    }
+    
+    /**
+     * Creates a new source for the given folder.
+     * <p>
+     * When loading in parallel, the data files are read by a bounded pool of 
+     * worker threads, each using its own copy of the current CmsObject. The 
+     * entries are returned in the order the data files were read, as when 
+     * loading sequentially.
+     * 
+     * @param folder The folder to read <code>seapop_species_data</code> data files from.
+     * @param cms Initialized CmsAgent.
+     * @param excluded Resource(s) to ignore. Can be <code>null</code>.
+     * @param parallelism The maximum number of threads to use for loading. If 1 or less, data files are loaded sequentially, in the current thread.
+     * @see SpeciesDataCollection#getDefaultParallelism() 
+     */
+    public OpenCmsSpeciesDataSource(String folder, CmsAgent cms, List<CmsResource> excluded, int parallelism) {
+        this.folder = folder;
+        this.cms = cms;
+        this.excluded = excluded;
+        this.parallelism = parallelism;
+    }
+    
+    /**
+     * Creates a new source for the given folder, that reads the data files 
+     * using only a CmsObject, independent of any request.
+     * <p>
+     * Such a source can be used outside the request thread, e.g. to 
+     * (re)load collections in the background. It uses its own copy of the 
+     * given CmsObject, and must not be used by more than one thread at a 
+     * time.
+     * 
+     * @param folder The folder to read <code>seapop_species_data</code> data files from.
+     * @param cmso Initialized CmsObject, will be copied.
+     * @param locale The locale to read.
+     * @param excluded Resource(s) to ignore. Can be <code>null</code>.
+     * @param parallelism The maximum number of threads to use for loading. If 1 or less, data files are loaded sequentially, in the current thread.
+     * @throws CmsException If copying the given CmsObject fails.
+     * @see SpeciesDataCollectionHolder
+     */
+    public OpenCmsSpeciesDataSource(String folder, CmsObject cmso, Locale locale, List<CmsResource> excluded, int parallelism) throws CmsException {
+        this.folder = folder;
+        this.cmso = OpenCms.initCmsObject(cmso);
+        this.locale = locale;
+        this.excluded = excluded;
+        this.parallelism = parallelism;
+    }
+    
+    /**
+     * Sets whether the data entries should be loaded with lazy data links: 
+     * only names and habitat flags are read when loading, and the data links 
+     * of each entry are read on first access.
+     * <p>
+     * The lazy entries keep only their file resource, and share a copy of 
+     * the CmsObject (made for each load), until their data links are loaded. 
+     * Loading them reads and unmarshals the file a second time, so lazy 
+     * entries use less memory, at the cost of a second read for each entry 
+     * whose data links are accessed. Building a 
+     * {@link SpeciesDataCollection} loads all data links, so this is useful 
+     * only when the loaded entries are used directly, and only some of them 
+     * need their data links. When only names, habitat flags or the group 
+     * order are needed, use {@link #setHeadersOnly(boolean)} instead, which 
+     * reads each file once.
+     * 
+     * @param lazyDataLinks If <code>true</code>, data links are loaded on first access.
+     * @return This instance.
+     * @see SpeciesData#SpeciesData(org.opencms.file.CmsResource, org.opencms.file.CmsObject, java.util.Locale, boolean) 
+     */
+    public OpenCmsSpeciesDataSource setLazyDataLinks(boolean lazyDataLinks) {
+        this.lazyDataLinks = lazyDataLinks;
+        return this;
+    }
+    
+    /**
+     * Sets whether only the names and habitat flags should be loaded, and no 
+     * data links at all.
+     * <p>
+     * Use this when only names, habitat flags or the group order are needed, 
+     * e.g. for legends or species pickers. The entries hold nothing else (no 
+     * resource, no CmsObject). A {@link SpeciesDataCollection} 
+     * can be built from this source as usual, for its names, group order or 
+     * habitat queries; it just has no data links or locations. Overrides 
+     * {@link #setLazyDataLinks(boolean)}.
+     * 
+     * @param headersOnly If <code>true</code>, only names and habitat flags are loaded.
+     * @return This instance.
+     * @see SpeciesData#isHeaderOnly() 
+     */
+    public OpenCmsSpeciesDataSource setHeadersOnly(boolean headersOnly) {
+        this.headersOnly = headersOnly;
+        return this;
+    }
+    
+    /**
+     * @see SpeciesDataSource#load() 
+     */
+    @Override
+    public List<SpeciesData> load() throws IOException {
+        List<SpeciesData> entries = new ArrayList<SpeciesData>();
+        SpeciesDataLoadReport report = new SpeciesDataLoadReport(folder);
+        loadReport = report;
+        long start = System.nanoTime();
+        try {
+            CmsObject cmso = cms != null ? cms.getCmsObject() : this.cmso;
+            Locale locale = cms != null ? cms.getRequestContext().getLocale() : this.locale;
+            List<CmsResource> ocmsDataFiles = readDataFiles(folder, cmso, excluded);
+            int readMode = headersOnly ? SpeciesData.READ_HEADER : (lazyDataLinks ? SpeciesData.READ_LAZY : SpeciesData.READ_ALL);
+            CmsObject linksCmso = readMode == SpeciesData.READ_LAZY ? OpenCms.initCmsObject(cmso) : null;
+            if (parallelism > 1 && ocmsDataFiles.size() > 1) {
+                long[] loadTimes = new long[ocmsDataFiles.size()];
+                Throwable[] failures = new Throwable[ocmsDataFiles.size()];
+                SpeciesData[] speciesDataEntries = loadParallel(ocmsDataFiles, cmso, locale, readMode, linksCmso, parallelism, loadTimes, failures);
+                for (int i = 0; i < speciesDataEntries.length; i++) {
+                    if (speciesDataEntries[i] != null) {
+                        entries.add(speciesDataEntries[i]);
+                        report.addFile(speciesDataEntries[i], loadTimes[i]);
+                    } else {
+                        report.addFailedFile(cmso.getSitePath(ocmsDataFiles.get(i)), loadTimes[i], failures[i]);
+                    }
+                }
+            } else {
+                Iterator<CmsResource> iOcmsDataFiles = ocmsDataFiles.iterator();
+                while (iOcmsDataFiles.hasNext()) {
+                    long fileStart = System.nanoTime();
+                    CmsResource ocmsDataFile = iOcmsDataFiles.next();
+                    SpeciesData entry = new SpeciesData(ocmsDataFile, cmso, locale, readMode, linksCmso);
+                    report.addFile(entry, System.nanoTime() - fileStart);
+                    entries.add(entry);
+                }
+            }
+        } catch (CmsException e) {
+            report.setFailure(e);
+            throw new IOException("Unable to read species data files in '" + folder + "'.", e);
+        } catch (InterruptedException e) {
+            report.setFailure(e);
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while reading species data files in '" + folder + "'.", e);
+        } finally {
+            report.setLoadTime(System.nanoTime() - start);
+        }
+        return entries;
+    }
+    
+    /**
+     * Loads all data entries from this source, in several locales, reading
+     * each data file only once.
+     * <p>
+     * The locale-independent parts of each entry (habitat flags, locations,
+     * URLs, number of years) are read in the first locale only, and shared by
+     * all locales; see {@link SpeciesDataLocales}. Data files are read
+     * sequentially, in the current thread.
+     * 
+     * @param locales The locales to read. The first one is the core locale.
+     * @return The data entries from this source, in the given locales.
+     * @throws IOException If the source itself cannot be read.
+     * @throws IllegalArgumentException If no locales are given.
+     */
+    public SpeciesDataLocales loadLocales(List<Locale> locales) throws IOException {
+        if (locales == null || locales.isEmpty()) {
+            throw new IllegalArgumentException("At least one locale is required.");
+        }
+        SpeciesDataLoadReport report = new SpeciesDataLoadReport(folder + " " + locales);
+        loadReport = report;
+        long start = System.nanoTime();
+        try {
+            CmsObject cmso = cms != null ? cms.getCmsObject() : this.cmso;
+            return SpeciesDataLocales.load(readDataFiles(folder, cmso, excluded), cmso, locales, report);
+        } catch (CmsException e) {
+            report.setFailure(e);
+            throw new IOException("Unable to read species data files in '" + folder + "'.", e);
+        } finally {
+            report.setLoadTime(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * @see SpeciesDataSource#getLoadReport() 
+     */
+    @Override
+    public SpeciesDataLoadReport getLoadReport() { return loadReport; }
+    
+    /**
+     * Reads the <code>seapop_species_data</code> data files in the given 
+     * folder, ignoring any excluded resources.
+     * 
+     * @param folder The folder to read <code>seapop_species_data</code> data files from.
+     * @param cmso Initialized CmsObject.
+     * @param excluded Resource(s) to ignore, matched by structure ID. Can be <code>null</code>.
+     * @return The data files in the given folder, minus any excluded resources.
+     * @throws CmsException If reading the folder fails.
+     */
+    static List<CmsResource> readDataFiles(String folder, CmsObject cmso, List<CmsResource> excluded) throws CmsException {
+        CmsResourceFilter dataFilesFilter = CmsResourceFilter.DEFAULT_FILES.addRequireType(OpenCms.getResourceManager().getResourceType(SpeciesData.RESOURCE_TYPE_NAME).getTypeId());
+        List<CmsResource> resources = cmso.readResources(folder, dataFilesFilter, false);
+        if (excluded == null || excluded.isEmpty()) {
+            return new ArrayList<CmsResource>(resources);
+        }
+        Set<CmsUUID> excludedIds = new HashSet<CmsUUID>(excluded.size() * 2);
+        Iterator<CmsResource> iExcluded = excluded.iterator();
+        while (iExcluded.hasNext()) {
+            excludedIds.add(iExcluded.next().getStructureId());
+        }
+        List<CmsResource> dataFiles = new ArrayList<CmsResource>(resources.size());
+        Iterator<CmsResource> iResources = resources.iterator();
+        while (iResources.hasNext()) {
+            CmsResource resource = iResources.next();
+            if (!excludedIds.contains(resource.getStructureId())) {
+                dataFiles.add(resource);
+            }
+        }
+        return dataFiles;
+    }
+    
+    /**
+     * Loads the given data files using a bounded pool of worker threads.
+     * <p>
+     * Each worker thread uses its own copy of the given CmsObject.
+     * 
+     * @param dataFiles The data files to load.
+     * @param cmso Initialized CmsObject, will be copied (once per worker thread).
+     * @param locale The locale to read.
+     * @param readMode The read mode, see {@link SpeciesData#READ_ALL}, {@link SpeciesData#READ_LAZY} and {@link SpeciesData#READ_HEADER}.
+     * @param linksCmso The CmsObject to read data links with on first access. Used only in {@link SpeciesData#READ_LAZY} mode.
+     * @param parallelism The maximum number of worker threads.
+     * @param loadTimes Array to store the time spent loading each data file in, in nanoseconds.
+     * @param failures Array to store the reason why a data file could not be loaded in (if it could not be loaded at all).
+     * @return The loaded data entries, in the same order as the given data files. Entries that could not be loaded are <code>null</code>.
+     * @throws InterruptedException If interrupted while waiting for the worker threads.
+     */
+    private static SpeciesData[] loadParallel(final List<CmsResource> dataFiles, final CmsObject cmso, final Locale locale, final int readMode, final CmsObject linksCmso, int parallelism, 
+            final long[] loadTimes, final Throwable[] failures) throws InterruptedException {
+        final SpeciesData[] loaded = new SpeciesData[dataFiles.size()];
+        final AtomicInteger next = new AtomicInteger(0);
+        int numThreads = Math.min(parallelism, dataFiles.size());
+        
+        ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+        try {
+            List<Future<Void>> workers = new ArrayList<Future<Void>>(numThreads);
+            for (int t = 0; t < numThreads; t++) {
+                workers.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        CmsObject threadCmso = OpenCms.initCmsObject(cmso);
+                        int i;
+                        while ((i = next.getAndIncrement()) < loaded.length) {
+                            long start = System.nanoTime();
+                            try {
+                                loaded[i] = new SpeciesData(dataFiles.get(i), threadCmso, locale, readMode, linksCmso);
+                            } catch (RuntimeException e) {
+                                failures[i] = e; // Skip this file, go on with the next
+                            } finally {
+                                loadTimes[i] = System.nanoTime() - start;
+                            }
+                        }
+                        return null;
+                    }
+                }));
+            }
+            Throwable workerFailure = null;
+            Iterator<Future<Void>> iWorkers = workers.iterator();
+            while (iWorkers.hasNext()) {
+                try {
+                    iWorkers.next().get();
+                } catch (ExecutionException ee) {
+                    // A failed worker leaves its entries null (=> ignored), the other workers will pick up the remaining files
+                    workerFailure = ee.getCause();
+                }
+            }
+            for (int i = 0; i < loaded.length; i++) {
+                if (loaded[i] == null && failures[i] == null) {
+                    failures[i] = workerFailure;
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        return loaded;
+    }
+}
@@ -1,11 +1,20 @@
 package no.seapop.data;
 
 import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Locale;
 import no.npolar.util.CmsAgent;
-import org.opencms.jsp.I_CmsXmlContentContainer;
+import org.opencms.file.CmsObject;
+import org.opencms.file.CmsResource;
+import org.opencms.i18n.CmsLocaleManager;
+import org.opencms.main.OpenCms;
+import org.opencms.xml.content.CmsXmlContent;
+import org.opencms.xml.content.CmsXmlContentFactory;
+import org.opencms.xml.types.I_CmsXmlContentValue;
 
 /**
  * Container class: Holds all data about a single species, including a list of 
@@ -25,37 +34,120 @@ public class SpeciesData {
      */
     private String uri = null;    
     //private String speciesFileUri = null;
-    private boolean isPelagic = false;
-    private boolean isSurfaceBound = false;
-    private boolean isDiving = false;
-    private boolean isCoastalBound = false;
-    private boolean isIceBound = false;
+    
+    /**
+     * The habitat flags, as a bitmask of <code>HABITAT_*</code> values.
+     */
+    private int habitat = 0;
     
     /**
      * The data links.
      */
     private List<SpeciesDataLink> dataLinks = null;
     
+    /**
+     * The error that prevented this instance from being loaded completely, if 
+     * any.
+     */
+    private Throwable loadError = null;
+    
+    /**
+     * Warnings about data that was ignored while loading (e.g. data links 
+     * with an unknown type), or <code>null</code> if none.
+     */
+    private List<String> warnings = null;
+    
+    /**
+     * Loads the data links on first access, if this instance was created 
+     * with lazy data links; <code>null</code> once the data links are loaded.
+     */
+    private volatile LinkLoader linkLoader = null;
+    
+    /**
+     * Flag indicating whether this instance was created with the name and 
+     * habitat flags only, and no data links.
+     */
+    private boolean headerOnly = false;
+    
+    /** Read mode: read the name, habitat flags and data links. */
+    static final int READ_ALL = 0;
+    /** Read mode: read the name and habitat flags now, and the data links on first access. */
+    static final int READ_LAZY = 1;
+    /** Read mode: read the name and habitat flags only. */
+    static final int READ_HEADER = 2;
+    
     /**
      * The resource type name for species data files.
      */
     public static final String RESOURCE_TYPE_NAME = "seapop_species_data";
     
+    /** Habitat flag: pelagic. */
+    public static final int HABITAT_PELAGIC = 1;
+    /** Habitat flag: coastal bound. */
+    public static final int HABITAT_COASTAL_BOUND = 1 << 1;
+    /** Habitat flag: surface bound. */
+    public static final int HABITAT_SURFACE_BOUND = 1 << 2;
+    /** Habitat flag: diving. */
+    public static final int HABITAT_DIVING = 1 << 3;
+    /** Habitat flag: ice bound. */
+    public static final int HABITAT_ICE_BOUND = 1 << 4;
+    /** The number of habitat flags. */
+    public static final int NUM_HABITAT_FLAGS = 5;
+    
+    /** The group numbers, by habitat bitmask (computed once, for every possible bitmask). */
+    private static final int[] GROUP_NUMBERS = new int[1 << NUM_HABITAT_FLAGS];
+    static {
+        for (int i = 0; i < GROUP_NUMBERS.length; i++) {
+            GROUP_NUMBERS[i] = computeGroupNumber(i);
+        }
+    }
+    
     /**
      * Compares by group number first, and second (for identical group numbers) by name.
      */
     public static final Comparator<SpeciesData> GROUP_NUMBER = new Comparator<SpeciesData>() {
         @Override
         public int compare(SpeciesData o1, SpeciesData o2) {
-            int diff = Integer.valueOf(o1.getGroupNumber()).compareTo(Integer.valueOf(o2.getGroupNumber()));
+            int diff = o1.getGroupNumber() - o2.getGroupNumber(); // Small values, can't overflow
             if (diff == 0) 
                 return o1.getName().compareTo(o2.getName()); // Same group, compare by name
             return diff;
         }
     };
+
+    /**
+     * Compares by name.
+     */
+    public static final Comparator<SpeciesData> NAME = new Comparator<SpeciesData>() {
+        @Override
+        public int compare(SpeciesData o1, SpeciesData o2) {
+            return o1.getName().compareTo(o2.getName());
+        }
+    };
+
+    /**
+     * What is needed to read the data links of a lazily loaded instance: the 
+     * species file resource, the CmsObject to read it with, and the locale 
+     * resolved when the instance was created.
+     */
+    private static final class LinkLoader {
+        final CmsResource resource;
+        final CmsObject cmso;
+        final Locale locale;
+        
+        LinkLoader(CmsResource resource, CmsObject cmso, Locale locale) {
+            this.resource = resource;
+            this.cmso = cmso;
+            this.locale = locale;
+        }
+    }
     
     /**
      * Creates a new instance by reading the given species file URI.
+     * <p>
+     * The file is read and unmarshalled once, in the current request's 
+     * locale, or the best matching locale if the file does not have that 
+     * locale, see {@link #SpeciesData(org.opencms.file.CmsResource, org.opencms.file.CmsObject, java.util.Locale)}.
      * 
      * @param speciesFileUri The species file URI.
      * @param cms An initialized CmsAgent.
@@ -64,46 +156,310 @@ public class SpeciesData {
         this.uri = speciesFileUri;
         this.dataLinks = new ArrayList<SpeciesDataLink>();
         try {
-            I_CmsXmlContentContainer container = cms.contentload("singleFile", uri, cms.getRequestContext().getLocale(), false);
-            while (container.hasMoreResources()) {
-                this.name = cms.contentshow(container, "SpeciesName");
-                this.isPelagic = Boolean.valueOf(cms.contentshow(container, "Pelagic")).booleanValue();
-                this.isCoastalBound = Boolean.valueOf(cms.contentshow(container, "CoastalBound")).booleanValue();
-                this.isSurfaceBound = Boolean.valueOf(cms.contentshow(container, "SurfaceBound")).booleanValue();
-                this.isDiving = Boolean.valueOf(cms.contentshow(container, "Diving")).booleanValue();
-                this.isIceBound = Boolean.valueOf(cms.contentshow(container, "IceBound")).booleanValue();
-                
-                try {
-                    I_CmsXmlContentContainer locationContainer = cms.contentloop(container, "DataLinks");
-                    while (locationContainer.hasMoreResources()) {
-                        String location = cms.contentshow(locationContainer, "Location");
-                        I_CmsXmlContentContainer dataLinksContainer = cms.contentloop(locationContainer, "DataLink");
-                        while (dataLinksContainer.hasMoreResources()) {
-                            String dataLinkType = cms.contentshow(dataLinksContainer, "Type");
-                            String dataLinkURL = cms.contentshow(dataLinksContainer, "URL");
-                            String dataLinkNumYears = cms.contentshow(dataLinksContainer, "NumOfYears");
-                            String dataLinkComment = cms.contentshow(dataLinksContainer, "Comment");
-                            this.addDataLink(location, dataLinkType, dataLinkURL, dataLinkNumYears, CmsAgent.elementExists(dataLinkComment) ? dataLinkComment : null);
-                        }
-                    }
-                } catch (Exception ee) {
-                    
+            CmsObject cmso = cms.getCmsObject();
+            CmsXmlContent xml = CmsXmlContentFactory.unmarshal(cmso, cmso.readFile(speciesFileUri));
+            read(xml, cmso, resolveLocale(xml, cmso, speciesFileUri, cms.getRequestContext().getLocale()));
+        } catch (Exception e) {
+            this.loadError = e;
+        }
+    }
+    
+    /**
+     * Creates a new instance by reading the given species file resource 
+     * directly, without going through the JSP content tags.
+     * <p>
+     * This constructor needs only a CmsObject, and can therefore be used 
+     * outside the request thread, e.g. when loading files in parallel (in 
+     * which case each thread should use its own CmsObject copy).
+     * <p>
+     * If the file does not have the given locale, the best matching locale 
+     * is read instead, see {@link #resolveLocale(org.opencms.xml.content.CmsXmlContent, org.opencms.file.CmsObject, java.lang.String, java.util.Locale)}.
+     * 
+     * @param speciesFileResource The species file resource.
+     * @param cmso An initialized CmsObject.
+     * @param locale The locale to read.
+     */
+    public SpeciesData(CmsResource speciesFileResource, CmsObject cmso, Locale locale) {
+        this(speciesFileResource, cmso, locale, READ_ALL, null);
+    }
+    
+    /**
+     * Creates a new instance by reading the given species file resource 
+     * directly, optionally with lazy data links.
+     * <p>
+     * With lazy data links, only the name and habitat flags are read now. 
+     * The file is read and unmarshalled again on first access to 
+     * {@link #getDataLinks()}, {@link #getLocations()} or 
+     * {@link #getDataLinksByLocation(java.lang.String)}, and the data links 
+     * are read then. This trades a second read of the file, for those 
+     * instances whose data links are accessed, for not keeping the 
+     * unmarshalled content in memory, which is useful when only some of the 
+     * instances will need their data links. (If none will, see 
+     * {@link OpenCmsSpeciesDataSource#setHeadersOnly(boolean)}, which avoids 
+     * the second read altogether.)
+     * <p>
+     * Note that the resource and the given CmsObject are kept until the data 
+     * links are loaded (adding this instance to a 
+     * {@link SpeciesDataCollection} loads them), and the CmsObject is then 
+     * used by whichever thread first accesses them. It should therefore not 
+     * be the request's own CmsObject, but a copy made with 
+     * {@link org.opencms.main.OpenCms#initCmsObject(org.opencms.file.CmsObject)}, 
+     * and may be shared by any number of instances.
+     * 
+     * @param speciesFileResource The species file resource.
+     * @param cmso An initialized CmsObject.
+     * @param locale The locale to read.
+     * @param lazy If <code>true</code>, the data links are read on first access.
+     * @see #isDataLinksLoaded() 
+     */
+    public SpeciesData(CmsResource speciesFileResource, CmsObject cmso, Locale locale, boolean lazy) {
+        this(speciesFileResource, cmso, locale, lazy ? READ_LAZY : READ_ALL, cmso);
+    }
+    
+    /**
+     * Creates a new instance by reading the given species file resource 
+     * directly, in the given read mode.
+     * 
+     * @param speciesFileResource The species file resource.
+     * @param cmso An initialized CmsObject, used to read the file.
+     * @param locale The locale to read.
+     * @param readMode The read mode: {@link #READ_ALL}, {@link #READ_LAZY} or {@link #READ_HEADER}.
+     * @param linksCmso The CmsObject to read the data links with on first access. Used only in {@link #READ_LAZY} mode.
+     * @see #SpeciesData(org.opencms.file.CmsResource, org.opencms.file.CmsObject, java.util.Locale, boolean) 
+     */
+    SpeciesData(CmsResource speciesFileResource, CmsObject cmso, Locale locale, int readMode, CmsObject linksCmso) {
+        this.uri = cmso.getSitePath(speciesFileResource);
+        this.dataLinks = new ArrayList<SpeciesDataLink>();
+        this.headerOnly = readMode == READ_HEADER;
+        try {
+            CmsXmlContent xml = CmsXmlContentFactory.unmarshal(cmso, cmso.readFile(speciesFileResource));
+            Locale resolvedLocale = resolveLocale(xml, cmso, this.uri, locale);
+            if (readMode == READ_ALL) {
+                read(xml, cmso, resolvedLocale);
+            } else {
+                readHeader(xml, cmso, resolvedLocale);
+                if (readMode == READ_LAZY) {
+                    this.linkLoader = new LinkLoader(speciesFileResource, linksCmso, resolvedLocale);
                 }
             }
         } catch (Exception e) {
-            
+            this.loadError = e;
+        }
+    }
+    
+    /**
+     * Creates a new instance from the given, already unmarshalled, species 
+     * file.
+     * <p>
+     * If the file does not have the given locale, the best matching locale 
+     * is read instead, see {@link #resolveLocale(org.opencms.xml.content.CmsXmlContent, org.opencms.file.CmsObject, java.lang.String, java.util.Locale)}.
+     * 
+     * @param uri The URI to the species file in the OpenCms virtual file system.
+     * @param xml The species file content.
+     * @param cmso An initialized CmsObject.
+     * @param locale The locale to read.
+     * @see SpeciesDataLocales
+     */
+    SpeciesData(String uri, CmsXmlContent xml, CmsObject cmso, Locale locale) {
+        this.uri = uri;
+        this.dataLinks = new ArrayList<SpeciesDataLink>();
+        try {
+            read(xml, cmso, resolveLocale(xml, cmso, uri, locale));
+        } catch (Exception e) {
+            this.loadError = e;
+        }
+    }
+    
+    /**
+     * Creates a new locale view of the given (core) instance: an instance 
+     * with the given name and comments, sharing everything else with the core 
+     * instance.
+     * <p>
+     * The data links of the new instance are the core instance's data links, 
+     * except where the given comment differs, in which case a copy with the 
+     * given comment is used.
+     * 
+     * @param core The core instance.
+     * @param name The species name.
+     * @param comments The comments, one per data link of the core instance. Can be <code>null</code> (= no comments).
+     * @see SpeciesDataLink#withComment(java.lang.String) 
+     */
+    SpeciesData(SpeciesData core, String name, String[] comments) {
+        this.uri = core.uri;
+        this.name = name;
+        this.habitat = core.habitat;
+        List<SpeciesDataLink> coreLinks = core.getDataLinks();
+        this.loadError = core.loadError;
+        this.warnings = core.warnings == null ? null : new ArrayList<String>(core.warnings);
+        this.dataLinks = new ArrayList<SpeciesDataLink>(coreLinks.size());
+        for (int i = 0; i < coreLinks.size(); i++) {
+            this.dataLinks.add(coreLinks.get(i).withComment(comments == null ? null : comments[i]));
+        }
+    }
+    
+    /**
+     * Resolves the locale to read from the given species file content, the 
+     * same way the content load tag does: the requested locale if the file 
+     * has it, otherwise the best match among the file's locales, given the 
+     * default locales for the file.
+     * 
+     * @param xml The species file content.
+     * @param cmso An initialized CmsObject.
+     * @param uri The URI to the species file.
+     * @param requestedLocale The requested locale.
+     * @return The locale to read.
+     * @throws IllegalStateException If the file has no matching locale.
+     */
+    static Locale resolveLocale(CmsXmlContent xml, CmsObject cmso, String uri, Locale requestedLocale) {
+        if (xml.hasLocale(requestedLocale)) {
+            return requestedLocale;
+        }
+        CmsLocaleManager localeManager = OpenCms.getLocaleManager();
+        Locale locale = localeManager.getBestMatchingLocale(requestedLocale, localeManager.getDefaultLocales(cmso, uri), xml.getLocales());
+        if (locale == null || !xml.hasLocale(locale)) {
+            throw new IllegalStateException("No locale matching '" + requestedLocale + "' in '" + uri + "', only " + xml.getLocales() + ".");
+        }
+        return locale;
+    }
+    
+    /**
+     * Reads the name, habitat flags and data links in the given locale from 
+     * the given species file content.
+     * <p>
+     * An error while reading the data links is stored as the load error, 
+     * leaving this instance partially loaded.
+     */
+    private void read(CmsXmlContent xml, CmsObject cmso, Locale locale) {
+        readHeader(xml, cmso, locale);
+        readDataLinks(xml, cmso, locale);
+    }
+    
+    /**
+     * Reads the name and habitat flags in the given locale from the given 
+     * species file content.
+     */
+    private void readHeader(CmsXmlContent xml, CmsObject cmso, Locale locale) {
+        this.name = getStringValue(xml, SpeciesDataXmlPaths.SPECIES_NAME, locale, cmso);
+        this.habitat = readHabitat(xml, cmso, locale);
+    }
+    
+    /**
+     * Reads the habitat flags in the given locale from the given species file 
+     * content.
+     * 
+     * @return The habitat flags, as a bitmask of <code>HABITAT_*</code> values.
+     */
+    static int readHabitat(CmsXmlContent xml, CmsObject cmso, Locale locale) {
+        return habitat(
+                Boolean.valueOf(getStringValue(xml, SpeciesDataXmlPaths.PELAGIC, locale, cmso)).booleanValue(),
+                Boolean.valueOf(getStringValue(xml, SpeciesDataXmlPaths.COASTAL_BOUND, locale, cmso)).booleanValue(),
+                Boolean.valueOf(getStringValue(xml, SpeciesDataXmlPaths.SURFACE_BOUND, locale, cmso)).booleanValue(),
+                Boolean.valueOf(getStringValue(xml, SpeciesDataXmlPaths.DIVING, locale, cmso)).booleanValue(),
+                Boolean.valueOf(getStringValue(xml, SpeciesDataXmlPaths.ICE_BOUND, locale, cmso)).booleanValue());
+    }
+    
+    /**
+     * Reads the data links in the given locale from the given species file 
+     * content.
+     * <p>
+     * An error is stored as the load error, leaving this instance partially 
+     * loaded.
+     */
+    private void readDataLinks(CmsXmlContent xml, CmsObject cmso, Locale locale) {
+        try {
+            int numLocations = xml.getIndexCount(SpeciesDataXmlPaths.DATA_LINKS, locale);
+            for (int i = 0; i < numLocations; i++) {
+                SpeciesDataXmlPaths.LocationPaths locationPaths = SpeciesDataXmlPaths.getLocation(i);
+                String location = getStringValue(xml, locationPaths.location, locale, cmso);
+                int numDataLinks = xml.getIndexCount(locationPaths.dataLink, locale);
+                for (int j = 0; j < numDataLinks; j++) {
+                    SpeciesDataXmlPaths.DataLinkPaths dataLinkPaths = locationPaths.getDataLink(j);
+                    String dataLinkType = getStringValue(xml, dataLinkPaths.type, locale, cmso);
+                    String dataLinkURL = getStringValue(xml, dataLinkPaths.url, locale, cmso);
+                    String dataLinkNumYears = getStringValue(xml, dataLinkPaths.numYears, locale, cmso);
+                    String dataLinkComment = getStringValue(xml, dataLinkPaths.comment, locale, cmso);
+                    this.appendDataLink(location, dataLinkType, dataLinkURL, dataLinkNumYears, CmsAgent.elementExists(dataLinkComment) ? dataLinkComment : null);
+                }
+            }
+        } catch (Exception ee) {
+            this.loadError = ee; // Partially loaded
+        }
+    }
+    
+    /**
+     * Creates a new instance from the given values, without any data links.
+     * 
+     * @param uri The URI to the species file in the OpenCms virtual file system.
+     * @param name The species name.
+     * @param isPelagic The "pelagic" habitat flag.
+     * @param isCoastalBound The "coastal bound" habitat flag.
+     * @param isSurfaceBound The "surface bound" habitat flag.
+     * @param isDiving The "diving" habitat flag.
+     * @param isIceBound The "ice bound" habitat flag.
+     * @see #addDataLink(java.lang.String, java.lang.String, java.lang.String, java.lang.String, java.lang.String) 
+     */
+    SpeciesData(String uri, String name, boolean isPelagic, boolean isCoastalBound, boolean isSurfaceBound, boolean isDiving, boolean isIceBound) {
+        this(uri, name, habitat(isPelagic, isCoastalBound, isSurfaceBound, isDiving, isIceBound));
+    }
+    
+    /**
+     * Creates a new instance from the given values, without any data links.
+     * 
+     * @param uri The URI to the species file in the OpenCms virtual file system.
+     * @param name The species name.
+     * @param habitat The habitat flags, as a bitmask of <code>HABITAT_*</code> values.
+     * @see #addDataLink(java.lang.String, java.lang.String, java.lang.String, java.lang.String, java.lang.String) 
+     */
+    SpeciesData(String uri, String name, int habitat) {
+        this.uri = uri;
+        this.name = name;
+        this.habitat = habitat & (GROUP_NUMBERS.length - 1);
+        this.dataLinks = new ArrayList<SpeciesDataLink>();
+    }
+    
+    /**
+     * Packs the given habitat flags into a bitmask.
+     * 
+     * @return The habitat flags, as a bitmask of <code>HABITAT_*</code> values.
+     */
+    static int habitat(boolean isPelagic, boolean isCoastalBound, boolean isSurfaceBound, boolean isDiving, boolean isIceBound) {
+        return (isPelagic ? HABITAT_PELAGIC : 0)
+                | (isCoastalBound ? HABITAT_COASTAL_BOUND : 0)
+                | (isSurfaceBound ? HABITAT_SURFACE_BOUND : 0)
+                | (isDiving ? HABITAT_DIVING : 0)
+                | (isIceBound ? HABITAT_ICE_BOUND : 0);
+    }
+    
+    /**
+     * Gets the string value of the element at the given path.
+     * 
+     * @return The string value of the element at the given path, or an empty string if there is no such element.
+     */
+    static String getStringValue(CmsXmlContent xml, String path, Locale locale, CmsObject cmso) {
+        I_CmsXmlContentValue value = xml.getValue(path, locale);
+        if (value == null) {
+            return "";
         }
+        return value.getStringValue(cmso);
     }
     
-    public boolean isPelagic() { return isPelagic; }
+    public boolean isPelagic() { return (habitat & HABITAT_PELAGIC) != 0; }
     
-    public boolean isCoastalBound() { return isCoastalBound; }
+    public boolean isCoastalBound() { return (habitat & HABITAT_COASTAL_BOUND) != 0; }
     
-    public boolean isSurfaceBound() { return isSurfaceBound; }
+    public boolean isSurfaceBound() { return (habitat & HABITAT_SURFACE_BOUND) != 0; }
     
-    public boolean isDiving() { return isDiving; }
+    public boolean isDiving() { return (habitat & HABITAT_DIVING) != 0; }
     
-    public boolean isIceBound() { return isIceBound; }
+    public boolean isIceBound() { return (habitat & HABITAT_ICE_BOUND) != 0; }
+    
+    /**
+     * Gets the habitat flags, as a bitmask.
+     * 
+     * @return The habitat flags, as a bitmask of <code>HABITAT_*</code> values.
+     * @see #HABITAT_PELAGIC
+     */
+    public int getHabitat() { return habitat; }
     
     /**
      * Gets the URI to the species file in the OpenCms virtual file system.
@@ -131,30 +487,47 @@ public class SpeciesData {
      * @return The group number.
      */
     public int getGroupNumber() {
+        return GROUP_NUMBERS[habitat];
+    }
+    
+    /**
+     * Computes the group number for the given habitat flags.
+     * 
+     * @param habitat The habitat flags, as a bitmask of <code>HABITAT_*</code> values.
+     * @return The group number.
+     * @see #getGroupNumber() 
+     */
+    private static int computeGroupNumber(int habitat) {
+        boolean isPelagic = (habitat & HABITAT_PELAGIC) != 0;
+        boolean isCoastalBound = (habitat & HABITAT_COASTAL_BOUND) != 0;
+        boolean isSurfaceBound = (habitat & HABITAT_SURFACE_BOUND) != 0;
+        boolean isDiving = (habitat & HABITAT_DIVING) != 0;
+        boolean isIceBound = (habitat & HABITAT_ICE_BOUND) != 0;
+        
         int i = -1;
-        if (isPelagic()) {
-            if (isDiving()) { 
+        if (isPelagic) {
+            if (isDiving) { 
                 i = 0; 
-                if (isSurfaceBound()) {
+                if (isSurfaceBound) {
                     i = 1;
                 }
-            } else if (isSurfaceBound()) { 
+            } else if (isSurfaceBound) { 
                 i = 2;
             } 
             
-            if (isIceBound()) {
+            if (isIceBound) {
                 i = 3;
             }
-            if (isCoastalBound()) {
+            if (isCoastalBound) {
                 i = 4;
             }
         } else {
-            if (isSurfaceBound()) {
+            if (isSurfaceBound) {
                 i = 5; 
-                if (isDiving()) {
+                if (isDiving) {
                     i = 6;
                 }
-            } else if (isDiving()) {
+            } else if (isDiving) {
                 i = 7;
             }
         }
@@ -164,7 +537,10 @@ public class SpeciesData {
     
     /**
      * Adds a single data link to the list of data links.
-     * 
+     * <p>
+     * Data links with an unknown type are ignored, so that they are caught 
+     * here (at load time) rather than causing errors later on. Each ignored 
+     * data link is recorded as a warning, see {@link #getWarnings()}.
      * 
      * @param location The location. Should always be given.
      * @param type The type/category. Should always be given.
@@ -174,7 +550,26 @@ public class SpeciesData {
      * @return This instance, updated.
      */
     public SpeciesData addDataLink(String location, String type, String url, String numYears, String comment) {
-        this.dataLinks.add(new SpeciesDataLink(location, type, url, numYears, comment));
+        links(); // Load any lazy data links first, so the new one is added after them
+        return appendDataLink(location, type, url, numYears, comment);
+    }
+
+    /**
+     * Adds a single data link to the list of data links, without loading any
+     * lazy data links first. Used while reading the data links.
+     *
+     * @see #addDataLink(java.lang.String, java.lang.String, java.lang.String, java.lang.String, java.lang.String)
+     */
+    private SpeciesData appendDataLink(String location, String type, String url, String numYears, String comment) {
+        if (SpeciesDataLinkType.forName(type) == null) {
+            // Unknown type => ignore, but keep track of it
+            if (warnings == null) {
+                warnings = new ArrayList<String>(2);
+            }
+            warnings.add("Ignored data link with unknown type '" + type + "' (location '" + location + "', URL '" + url + "').");
+            return this;
+        }
+        dataLinks.add(new SpeciesDataLink(location, type, url, numYears, comment));
         return this;
     }
     
@@ -186,15 +581,15 @@ public class SpeciesData {
      */
     public List<SpeciesDataLink> getDataLinksByLocation(String location) {
         List<SpeciesDataLink> tmp = new ArrayList<SpeciesDataLink>();
-        Iterator<SpeciesDataLink> i = this.dataLinks.iterator();
+        int locationId = SpeciesDataLink.getLocationId(location);
+        if (locationId < 0) {
+            return tmp; // No data link anywhere has this location
+        }
+        Iterator<SpeciesDataLink> i = links().iterator();
         while (i.hasNext()) {
             SpeciesDataLink sdl = i.next();
-            try {
-                if (sdl.getLocation().equals(location)) {
-                    tmp.add(sdl);
-                }
-            } catch (NullPointerException npe) {
-                // missing location => ignore, and continue (or not)
+            if (sdl.getLocationId() == locationId) { // missing location (-1) => ignore
+                tmp.add(sdl);
             }
         }
         return tmp;
@@ -206,12 +601,13 @@ public class SpeciesData {
      */
     public List<String> getLocations() {
         List<String> tmp = new ArrayList<String>();
-        Iterator<SpeciesDataLink> i = this.dataLinks.iterator();
+        BitSet seen = new BitSet();
+        Iterator<SpeciesDataLink> i = links().iterator();
         while (i.hasNext()) {
-            SpeciesDataLink sdl = i.next();
-            String location = sdl.getLocation();
-            if (location != null && !tmp.contains(location)) {
-                tmp.add(location);
+            int locationId = i.next().getLocationId();
+            if (locationId >= 0 && !seen.get(locationId)) {
+                seen.set(locationId);
+                tmp.add(SpeciesDataLink.getLocation(locationId));
             }
         }
         return tmp;
@@ -221,7 +617,95 @@ public class SpeciesData {
      * Gets the data links.
      * @return The data links, or an empty list.
      */
-    public List<SpeciesDataLink> getDataLinks() { return this.dataLinks; }
+    public List<SpeciesDataLink> getDataLinks() { return links(); }
+    
+    /**
+     * Gets a flag indicating whether or not the data links have been loaded. 
+     * Always <code>true</code>, unless this instance was created with lazy 
+     * data links, and they have not been accessed yet, or with the name and 
+     * habitat flags only.
+     * 
+     * @return <code>true</code> if the data links have been loaded.
+     * @see #SpeciesData(org.opencms.file.CmsResource, org.opencms.file.CmsObject, java.util.Locale, boolean) 
+     * @see #isHeaderOnly() 
+     */
+    public boolean isDataLinksLoaded() { return linkLoader == null && !headerOnly; }
+    
+    /**
+     * Gets a flag indicating whether or not this instance was created with 
+     * the name and habitat flags only. Such an instance has no data links.
+     * 
+     * @return <code>true</code> if this instance holds the name and habitat flags only.
+     * @see OpenCmsSpeciesDataSource#setHeadersOnly(boolean) 
+     */
+    public boolean isHeaderOnly() { return headerOnly; }
+    
+    /**
+     * Gets the data links, loading them first if necessary.
+     */
+    private List<SpeciesDataLink> links() {
+        if (linkLoader != null) {
+            loadDataLinks();
+        }
+        return this.dataLinks;
+    }
+    
+    /**
+     * Loads the data links of an instance created with lazy data links, 
+     * unless another thread already did.
+     * <p>
+     * The file is read and unmarshalled again, and the data links are read 
+     * in the locale resolved when this instance was created. Reads are 
+     * serialized on the (shared) CmsObject, which is released once done.
+     */
+    private synchronized void loadDataLinks() {
+        LinkLoader loader = linkLoader;
+        if (loader == null) {
+            return; // Loaded by another thread
+        }
+        synchronized (loader.cmso) {
+            try {
+                CmsXmlContent xml = CmsXmlContentFactory.unmarshal(loader.cmso, loader.cmso.readFile(loader.resource));
+                readDataLinks(xml, loader.cmso, loader.locale); // Stores any error as the load error
+            } catch (Exception e) {
+                this.loadError = e;
+            }
+        }
+        linkLoader = null; // Publishes the data links (volatile write)
+    }
+    
+    /**
+     * Gets the error that prevented this instance from being loaded 
+     * completely, if any.
+     * <p>
+     * Loading errors do not prevent the instance from being created, but it 
+     * may be empty, or hold only some of its data links. With lazy data 
+     * links, errors while reading the data links are known only after they 
+     * have been accessed.
+     * 
+     * @return The loading error, or <code>null</code> if this instance was loaded completely.
+     * @see SpeciesDataLoadReport
+     */
+    public Throwable getLoadError() { return this.loadError; }
+    
+    /**
+     * Gets the warnings about data that was ignored while loading this 
+     * instance, e.g. data links with an unknown type.
+     * <p>
+     * Unlike a load error, a warning does not mean this instance is 
+     * incomplete: it holds everything that could be used. With lazy data 
+     * links, warnings about the data links are known only after they have 
+     * been accessed.
+     * 
+     * @return The warnings, or an empty list if there are none.
+     * @see SpeciesDataLoadReport.FileReport#getWarnings() 
+     */
+    public List<String> getWarnings() {
+        if (linkLoader != null) {
+            return Collections.emptyList(); // Data links not loaded yet => nothing ignored yet
+        }
+        return warnings == null ? Collections.<String>emptyList() : Collections.unmodifiableList(warnings);
+    }
     
     /**
      * Gets the species name.
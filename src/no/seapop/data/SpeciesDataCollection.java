@@ -1,34 +1,92 @@
 package no.seapop.data;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 import no.npolar.util.CmsAgent;
-import org.opencms.file.CmsObject;
 import org.opencms.file.CmsResource;
-import org.opencms.file.CmsResourceFilter;
-import org.opencms.main.OpenCms;
 
 /**
  * Holds a list of {@link SpeciesData} instances.
+ * <p>
+ * <strong>Compatibility note:</strong> {@link #get()} used to return the 
+ * underlying, modifiable list. It now returns a read-only view of it, and 
+ * code that modified or sorted that list directly (e.g. 
+ * <code>get().add(...)</code> or <code>Collections.sort(get(), ...)</code>) 
+ * will get an <code>UnsupportedOperationException</code>. Such changes 
+ * bypassed the index and counts kept by this class, and would have changed 
+ * collections shared between request threads (e.g. by 
+ * {@link SpeciesDataCollectionCache}). Use 
+ * {@link #addEntry(no.seapop.data.SpeciesData)}, 
+ * {@link #removeEntry(java.lang.String)}, 
+ * {@link #replaceEntry(no.seapop.data.SpeciesData)} and 
+ * {@link #sort(java.util.Comparator)} instead, or copy the list first.
  * 
  * @author Paul-Inge Flakstad, Norwegian Polar Institute <flakstad at npolar.no>
  */
 public class SpeciesDataCollection {
-    // All locations
+    // All locations, in order of appearance
     private List<String> locations = null;
-    // All bird species names, as Strings
-    private List<String> names = null;
+    // All locations, as a set of location IDs (see SpeciesDataLink#getLocationId())
+    private BitSet locationIds = null;
+    // The number of data links on each location, by location ID
+    private int[] locationRefs = null;
+    // All bird species names, in order of appearance, with the number of data entries having each name
+    private Map<String, int[]> names = null;
+    // Read-only list of all names, created on demand (must be discarded whenever a name is added or removed)
+    private volatile List<String> namesView = null;
     // All data entries (one per bird species)
     private List<SpeciesData> data = null;
+    // Read-only view of data, as returned by get()
+    private List<SpeciesData> dataView = null;
+    // All data entries, by VFS URI
+    private Map<String, SpeciesData> dataByUri = null;
+    // The comparator that data is sorted by, or null if not sorted
+    private Comparator<SpeciesData> comparator = null;
+    // Index: species -> location -> data links (must be updated whenever data is modified or re-ordered)
+    private SpeciesDataIndex index = null;
+    // Pre-computed link counts (must be updated whenever data is modified or re-ordered)
+    private SpeciesDataCounts counts = null;
+    // Rendered HTML fragments (must be cleared whenever data is modified or re-ordered)
+    private final SpeciesDataFragmentCache fragments = new SpeciesDataFragmentCache();
+    // Compact (columnar) representation of all data links, created on demand (must be discarded whenever data is modified or re-ordered)
+    private volatile SpeciesDataLinkTable linkTable = null;
+    // Materialized single-type views, by type ordinal, created on demand (must be discarded whenever data is modified or re-ordered)
+    private volatile SpeciesDataTypeView[] views = new SpeciesDataTypeView[SpeciesDataLinkType.count()];
+    // Bitset index of species by habitat flag and group, created on demand (must be discarded whenever data is modified or re-ordered)
+    private volatile SpeciesDataHabitatIndex habitatIndex = null;
+    // Years coverage statistics, computed when the collection is built or sorted, otherwise on demand (must be discarded whenever data is modified or re-ordered)
+    private volatile SpeciesDataCoverage coverage = null;
+    // The report on the load this collection was built from, if any
+    private SpeciesDataLoadReport loadReport = null;
+    // The version, changes whenever data is modified or re-ordered
+    private volatile long version = 0;
+    
+    // Source of process-wide unique version numbers
+    private static final AtomicLong VERSIONS = new AtomicLong(0);
     
     
     public SpeciesDataCollection() {
         locations = new ArrayList<String>();
-        names = new ArrayList<String>();
+        locationIds = new BitSet();
+        locationRefs = new int[16];
+        names = new LinkedHashMap<String, int[]>();
         data = new ArrayList<SpeciesData>();
+        dataView = Collections.unmodifiableList(data);
+        dataByUri = new HashMap<String, SpeciesData>();
+        index = new SpeciesDataIndex(data);
+        counts = new SpeciesDataCounts(data);
+        version = VERSIONS.incrementAndGet();
     }
     
     /**
@@ -78,31 +136,161 @@ public class SpeciesDataCollection {
      * @param excluded Resource(s) to ignore. Can be <code>null</code>.
      */
     public SpeciesDataCollection(String folder, CmsAgent cms, List<CmsResource> excluded) {
+        this(folder, cms, excluded, 1);
+    }
+    
+    /**
+     * Creates a new collection by constructing data entries based on the 
+     * <code>seapop_species_data</code> data files found in the given folder, 
+     * optionally loading the data files in parallel.
+     * <p>
+     * When loading in parallel, the data files are read by a bounded pool of 
+     * worker threads, each using its own copy of the current CmsObject. The 
+     * result is identical to that of a sequential load: entries are added in 
+     * the order the data files were read, before the collection is sorted.
+     * <p>
+     * Any resource in the given <code>excluded</code> list will be ignored.
+     * <p>
+     * After the collection has been created, it is sorted by group.
+     * 
+     * @param folder The folder to read <code>seapop_species_data</code> data files from.
+     * @param cms Initialized CmsAgent.
+     * @param excluded Resource(s) to ignore. Can be <code>null</code>.
+     * @param parallelism The maximum number of threads to use for loading. If 1 or less, data files are loaded sequentially, in the current thread.
+     * @see #getDefaultParallelism() 
+     * @see OpenCmsSpeciesDataSource
+     */
+    public SpeciesDataCollection(String folder, CmsAgent cms, List<CmsResource> excluded, int parallelism) {
         this();
-        
-        if (excluded == null) {
-            excluded = new ArrayList<CmsResource>(0);
-        }
-        
+        long start = System.nanoTime();
+        Exception failure = null;
+        SpeciesDataSource source = new OpenCmsSpeciesDataSource(folder, cms, excluded, parallelism);
         try {
-            CmsObject cmso = cms.getCmsObject();
-            CmsResourceFilter dataFilesFilter = CmsResourceFilter.DEFAULT_FILES.addRequireType(OpenCms.getResourceManager().getResourceType(SpeciesData.RESOURCE_TYPE_NAME).getTypeId());
-
-            // Load data files
-            List<CmsResource> ocmsDataFiles = cmso.readResources(folder, dataFilesFilter, false);
-            Iterator<CmsResource> iOcmsDataFiles = ocmsDataFiles.iterator();
-            while (iOcmsDataFiles.hasNext()) {
-                CmsResource speciesDataResource = iOcmsDataFiles.next();
-                if (!excluded.contains(speciesDataResource)) {
-                    SpeciesData speciesDataEntry = new SpeciesData(cmso.getSitePath(speciesDataResource), cms);
-                    this.add(speciesDataEntry);
-                }
-            }            
+            addAll(source.load());
         } catch (Exception e) {
-            // ???
+            // ??? (available via the load report)
+            failure = e;
         }
-        
         sortByGroup();
+        loadReport = completeLoadReport(source, start, failure);
+    }
+    
+    /**
+     * Creates a new collection holding all data entries from the given 
+     * source.
+     * <p>
+     * After the collection has been created, it is sorted by group.
+     * 
+     * @param source The source to load data entries from.
+     * @throws IOException If the source cannot be read.
+     */
+    public SpeciesDataCollection(SpeciesDataSource source) throws IOException {
+        this();
+        long start = System.nanoTime();
+        try {
+            addAll(source.load());
+        } catch (IOException e) {
+            completeLoadReport(source, start, e);
+            throw e;
+        }
+        sortByGroup();
+        loadReport = completeLoadReport(source, start, null);
+    }
+    
+    /**
+     * Completes the report on the most recent load from the given source 
+     * with the total build time, and adds it to the process-wide load 
+     * metrics.
+     * 
+     * @param source The source.
+     * @param start The time building started, as given by {@link System#nanoTime()}.
+     * @param failure The error that prevented the source from being read, if any.
+     * @return The completed report.
+     * @see SpeciesDataMetrics#getLoadMetrics() 
+     */
+    private static SpeciesDataLoadReport completeLoadReport(SpeciesDataSource source, long start, Exception failure) {
+        SpeciesDataLoadReport report = source.getLoadReport();
+        if (report == null) {
+            report = new SpeciesDataLoadReport(String.valueOf(source)); // Source without reporting
+        }
+        if (failure != null && report.getFailure() == null) {
+            report.setFailure(failure);
+        }
+        report.setBuildTime(System.nanoTime() - start);
+        SpeciesDataMetrics.getLoadMetrics().record(report);
+        return report;
+    }
+    
+    /**
+     * Gets the report on the load this collection was built from: per-file 
+     * load times, data links parsed and failures, and the total build time.
+     * 
+     * @return The report on the load this collection was built from, or <code>null</code> if it was not built from a source (e.g. restored from a snapshot).
+     */
+    public SpeciesDataLoadReport getLoadReport() { return loadReport; }
+    
+    /**
+     * Creates a new collection holding the given data entries, in the given 
+     * order (that is, the collection is <strong>not</strong> sorted).
+     * 
+     * @param entries The data entries.
+     * @param locationsInOrder The locations, in order (typically as returned by {@link #getLocations()} of the collection being re-created). Can be <code>null</code>.
+     */
+    SpeciesDataCollection(List<SpeciesData> entries, List<String> locationsInOrder) {
+        this();
+        if (locationsInOrder != null) {
+            Iterator<String> iLocations = locationsInOrder.iterator();
+            while (iLocations.hasNext()) {
+                int locationId = SpeciesDataLink.getLocationId(iLocations.next());
+                if (locationId >= 0 && !locationIds.get(locationId)) {
+                    locationIds.set(locationId);
+                    locations.add(SpeciesDataLink.getLocation(locationId));
+                }
+            }
+        }
+        addAll(entries);
+        update();
+    }
+    
+    /**
+     * Creates a new collection holding the data entries of the given 
+     * collection, in the given order. The index, counts and coverage 
+     * statistics are re-ordered copies of those in the given collection, 
+     * rather than built again from the data links.
+     * 
+     * @param base The collection to copy. Must not be modified while the copy is created.
+     * @param permutation The order: positions in the given collection, by position in the new collection.
+     */
+    SpeciesDataCollection(SpeciesDataCollection base, int[] permutation) {
+        locations = new ArrayList<String>(base.locations);
+        locationIds = (BitSet)base.locationIds.clone();
+        locationRefs = Arrays.copyOf(base.locationRefs, base.locationRefs.length);
+        names = new LinkedHashMap<String, int[]>();
+        Iterator<Map.Entry<String, int[]>> iNames = base.names.entrySet().iterator();
+        while (iNames.hasNext()) {
+            Map.Entry<String, int[]> name = iNames.next();
+            names.put(name.getKey(), new int[] { name.getValue()[0] });
+        }
+        data = new ArrayList<SpeciesData>(permutation.length);
+        for (int i = 0; i < permutation.length; i++) {
+            data.add(base.data.get(permutation[i]));
+        }
+        dataView = Collections.unmodifiableList(data);
+        dataByUri = new HashMap<String, SpeciesData>(base.dataByUri);
+        index = new SpeciesDataIndex(base.index, permutation);
+        counts = new SpeciesDataCounts(base.counts, permutation);
+        coverage = new SpeciesDataCoverage(base.getCoverage(), permutation);
+        version = VERSIONS.incrementAndGet();
+    }
+    
+    /**
+     * Gets the default number of threads to use when loading in parallel, 
+     * which is the number of available processors.
+     * 
+     * @return The default number of threads to use when loading in parallel.
+     */
+    public static int getDefaultParallelism() {
+        return Runtime.getRuntime().availableProcessors();
     }
     
     /**
@@ -143,47 +331,213 @@ public class SpeciesDataCollection {
      * @param excludedDataTypes The names of the data types to exclude from the table.
      * @param locationsInOrder The names of the locations to include, in order.
      * @return Ready-to-use HTML table rows.
+     * @see #writeHtmlTableRows(java.lang.Appendable, no.npolar.util.CmsAgent, java.lang.String, java.util.List, java.util.List, java.util.List) 
      */
     public String toHtmlTableRows(CmsAgent cms, String dataType, List<String> dataTypeTotals, List<String> excludedDataTypes, List<String> locationsInOrder) {
+        long start = System.nanoTime();
+        String html = renderHtmlTableRows(cms, dataType, dataTypeTotals, excludedDataTypes, locationsInOrder);
+        SpeciesDataMetrics.RENDER_STRING.record(System.nanoTime() - start, html.length());
+        return html;
+    }
+    
+    /**
+     * Renders HTML table rows to a string, without recording any render 
+     * metrics.
+     * 
+     * @see #toHtmlTableRows(no.npolar.util.CmsAgent, java.lang.String, java.util.List, java.util.List, java.util.List) 
+     */
+    private String renderHtmlTableRows(CmsAgent cms, String dataType, List<String> dataTypeTotals, List<String> excludedDataTypes, List<String> locationsInOrder) {
+        StringBuilder sb = new StringBuilder(4096);
+        try {
+            renderHtmlTableRows(sb, cms, dataType, dataTypeTotals, excludedDataTypes, locationsInOrder);
+        } catch (IOException ioe) {
+            // Should never happen: StringBuilder.append does not throw
+            throw new IllegalStateException(ioe);
+        }
+        return sb.toString();
+    }
+    
+    /**
+     * Writes cached HTML table rows, encoded as UTF-8, to the given stream.
+     * 
+     * @param out The stream to write to.
+     * @param gzipped If <code>true</code>, the gzipped bytes are written (the caller is responsible for setting the Content-Encoding header).
+     * @see #toHtmlTableRowsBytes(no.npolar.util.CmsAgent, java.lang.String, java.util.List, java.util.List, java.util.List, boolean) 
+     * @throws IOException If writing to the given stream fails.
+     */
+    public void writeHtmlTableRows(OutputStream out, boolean gzipped, CmsAgent cms, String dataType, List<String> dataTypeTotals, List<String> excludedDataTypes, List<String> locationsInOrder) throws IOException {
+        long start = System.nanoTime();
+        byte[] bytes = getFragmentBytes(cms, dataType, dataTypeTotals, excludedDataTypes, locationsInOrder, gzipped);
+        out.write(bytes);
+        SpeciesDataMetrics.RENDER_STREAM.record(System.nanoTime() - start, bytes.length);
+    }
+    
+    /**
+     * Gets HTML table rows, encoded as UTF-8, from the fragment cache of this 
+     * collection, rendering (and caching) them first if necessary.
+     * <p>
+     * Fragments are cached per locale and render parameters, and are 
+     * discarded whenever this collection changes. Fragments rendered with 
+     * labels that have since been discarded are not served.
+     * <p>
+     * The returned array is shared, and must not be modified.
+     * 
+     * @param cms
+     * @param dataType If provided, the generated table will include only this data type. If null, all data types will be included.
+     * @param dataTypeTotals The names of the data types to aggregate data for, and their order.
+     * @param excludedDataTypes The names of the data types to exclude from the table.
+     * @param locationsInOrder The names of the locations to include, in order.
+     * @param gzipped If <code>true</code>, the bytes are gzipped.
+     * @return Ready-to-use HTML table rows, as UTF-8 encoded (and possibly gzipped) bytes.
+     * @see #toHtmlTableRows(no.npolar.util.CmsAgent, java.lang.String, java.util.List, java.util.List, java.util.List) 
+     */
+    public byte[] toHtmlTableRowsBytes(CmsAgent cms, String dataType, List<String> dataTypeTotals, List<String> excludedDataTypes, List<String> locationsInOrder, boolean gzipped) {
+        long start = System.nanoTime();
+        byte[] bytes = getFragmentBytes(cms, dataType, dataTypeTotals, excludedDataTypes, locationsInOrder, gzipped);
+        SpeciesDataMetrics.RENDER_BYTES.record(System.nanoTime() - start, bytes.length);
+        return bytes;
+    }
+    
+    /**
+     * Gets HTML table rows from the fragment cache, rendering (and caching) 
+     * them first if necessary, without recording any render metrics.
+     * 
+     * @see #toHtmlTableRowsBytes(no.npolar.util.CmsAgent, java.lang.String, java.util.List, java.util.List, java.util.List, boolean) 
+     */
+    private byte[] getFragmentBytes(CmsAgent cms, String dataType, List<String> dataTypeTotals, List<String> excludedDataTypes, List<String> locationsInOrder, boolean gzipped) {
+        SpeciesDataFragmentCache.Key key = new SpeciesDataFragmentCache.Key(version, SpeciesDataLabels.getGeneration(), cms.getRequestContext().getLocale(), dataType, dataTypeTotals, excludedDataTypes, locationsInOrder);
+        SpeciesDataFragmentCache.Fragment fragment = fragments.get(key);
+        if (fragment == null) {
+            fragment = fragments.put(key, renderHtmlTableRows(cms, dataType, dataTypeTotals, excludedDataTypes, locationsInOrder));
+        }
+        return gzipped ? fragment.getGzippedBytes() : fragment.getBytes();
+    }
+    
+    /**
+     * Gets the version of this collection. 
+     * <p>
+     * The version is unique (within the current process), and changes 
+     * whenever this collection is modified or re-ordered. It can be used as 
+     * part of a key when caching anything derived from this collection.
+     * 
+     * @return The version of this collection.
+     */
+    public long getVersion() { return version; }
+    
+    /**
+     * @see #writeHtmlTableRows(java.lang.Appendable, no.npolar.util.CmsAgent, java.lang.String, java.util.List, java.util.List, java.util.List) 
+     */
+    public void writeHtmlTableRows(Appendable out, CmsAgent cms) throws IOException {
+        writeHtmlTableRows(out, cms, null);
+    }
+    
+    /**
+     * @see #writeHtmlTableRows(java.lang.Appendable, no.npolar.util.CmsAgent, java.lang.String, java.util.List, java.util.List, java.util.List) 
+     */
+    public void writeHtmlTableRows(Appendable out, CmsAgent cms, String dataType) throws IOException {
+        writeHtmlTableRows(out, cms, dataType, SpeciesDataLinkType.TYPES_ORDER_DEFAULT);
+    }
+    
+    /**
+     * @see #writeHtmlTableRows(java.lang.Appendable, no.npolar.util.CmsAgent, java.lang.String, java.util.List, java.util.List, java.util.List) 
+     */
+    public void writeHtmlTableRows(Appendable out, CmsAgent cms, String dataType, List<String> dataTypeTotals) throws IOException {
+        writeHtmlTableRows(out, cms, dataType, dataTypeTotals, null);
+    }
+    
+    /**
+     * @see #writeHtmlTableRows(java.lang.Appendable, no.npolar.util.CmsAgent, java.lang.String, java.util.List, java.util.List, java.util.List) 
+     */
+    public void writeHtmlTableRows(Appendable out, CmsAgent cms, String dataType, List<String> dataTypeTotals, List<String> excludedDataTypes) throws IOException {
+        writeHtmlTableRows(out, cms, dataType, dataTypeTotals, excludedDataTypes, null);
+    }
+    
+    /**
+     * Writes HTML table rows based on the data in this collection, and the 
+     * given "type totals" (aggregated sums per data type), directly to the 
+     * given output.
+     * <p>
+     * The output is identical to that of 
+     * {@link #toHtmlTableRows(no.npolar.util.CmsAgent, java.lang.String, java.util.List, java.util.List, java.util.List)}, 
+     * but nothing is buffered here, so this is the preferred method when 
+     * writing to e.g. the JSP <code>out</code>.
+     * 
+     * @param out The output to write to, e.g. a {@link java.io.Writer}.
+     * @param cms
+     * @param dataType If provided, the generated table will include only this data type. If null, all data types will be included.
+     * @param dataTypeTotals The names of the data types to aggregate data for, and their order.
+     * @param excludedDataTypes The names of the data types to exclude from the table.
+     * @param locationsInOrder The names of the locations to include, in order.
+     * @throws IOException If writing to the given output fails.
+     */
+    public void writeHtmlTableRows(Appendable out, CmsAgent cms, String dataType, List<String> dataTypeTotals, List<String> excludedDataTypes, List<String> locationsInOrder) throws IOException {
+        long start = System.nanoTime();
+        SpeciesDataRenderMetrics.CountingAppendable counting = new SpeciesDataRenderMetrics.CountingAppendable(out);
+        renderHtmlTableRows(counting, cms, dataType, dataTypeTotals, excludedDataTypes, locationsInOrder);
+        SpeciesDataMetrics.RENDER_APPENDABLE.record(System.nanoTime() - start, counting.getCount());
+    }
+    
+    /**
+     * Writes HTML table rows directly to the given output, without recording 
+     * any render metrics.
+     * 
+     * @see #writeHtmlTableRows(java.lang.Appendable, no.npolar.util.CmsAgent, java.lang.String, java.util.List, java.util.List, java.util.List) 
+     */
+    private void renderHtmlTableRows(Appendable out, CmsAgent cms, String dataType, List<String> dataTypeTotals, List<String> excludedDataTypes, List<String> locationsInOrder) throws IOException {
         if (excludedDataTypes == null) {
             excludedDataTypes = new ArrayList<String>(); // Prevent NPE
         }
         
+        // Resolve the data type names once, up front
+        int dataTypeOrdinal = SpeciesDataLinkType.ordinalOf(dataType);
+        boolean[] excluded = new boolean[SpeciesDataLinkType.count()];
+        Iterator<String> iExcludedDataTypes = excludedDataTypes.iterator();
+        while (iExcludedDataTypes.hasNext()) {
+            int excludedOrdinal = SpeciesDataLinkType.ordinalOf(iExcludedDataTypes.next());
+            if (excludedOrdinal >= 0) {
+                excluded[excludedOrdinal] = true;
+            }
+        }
+        
+        // Resolve the labels once, up front
+        SpeciesDataLabels labels = SpeciesDataLabels.get(cms);
+        
+        if (dataTypeOrdinal >= 0) {
+            // Single (known) type: render from the materialized view
+            writeHtmlTableRows(out, getView(dataTypeOrdinal), labels, locationsInOrder);
+            return;
+        }
+        
         List<String> comments = new ArrayList<String>();
-        String s = "";
         
         Iterator<String> iLocations = locationsInOrder != null ? locationsInOrder.iterator() : locations.iterator();
         while (iLocations.hasNext()) {
             // Get the location
             String location = iLocations.next();
+            int locationId = SpeciesDataLink.getLocationId(location);
             
             // Prevent error case (can happen when locationsInOrder is used)
-            if (!locations.contains(location)) {
-                s += "\n<-- skipping location '" + location + "' because it has no entries in this collection -->";
+            if (!index.containsLocation(locationId)) {
+                out.append("\n<-- skipping location '").append(location).append("' because it has no entries in this collection -->");
                 continue;
             }
             
-            // Construct the array of aggregated sums per data type + 1 for the combined total
-            int[] sums = new int[dataTypeTotals.size()+1]; // E.g.: [Population] [Reproduction] [Survival] [Diet] [COMBINED TOTAL (always last)]
-            for (int sum : sums) {
-                sum = 0;
-            }
-            
             // Start the row, using the location as the row header
-            s += "<tr><th scope=\"row\">" + location + "</th>";
+            out.append("<tr><th scope=\"row\">").append(location).append("</th>");
             
             // Now iterate the data entries ...
-            Iterator<SpeciesData> iData= data.iterator();
-            while (iData.hasNext()) {
+            for (int speciesIndex = 0; speciesIndex < data.size(); speciesIndex++) {
                 // A data entry
-                SpeciesData speciesDataEntry = iData.next();
-                // That data entry's location-specific data
-                List<SpeciesDataLink> dataForSpeciesOnLocation = speciesDataEntry.getDataLinksByLocation(location);
+                SpeciesData speciesDataEntry = data.get(speciesIndex);
+                // That data entry's location-specific data (none, if an unknown data type was specified)
+                List<SpeciesDataLink> dataForSpeciesOnLocation = dataType == null 
+                        ? index.getCell(locationId, speciesIndex).getLinks() 
+                        : Collections.<SpeciesDataLink>emptyList();
                 
-                s += "<td>";
+                out.append("<td>");
                 
                 if (dataType == null) 
-                    s += "<div>"; // This <div> is a vital wrapper when dataType is null
+                    out.append("<div>"); // This <div> is a vital wrapper when dataType is null
                 
                 if (dataForSpeciesOnLocation.size() > 0) {
                     
@@ -193,92 +547,218 @@ public class SpeciesDataCollection {
                         
                         // We don't want to include data links with negative order 
                         // factor (like the timing data links) in the combined table
-                        if (dataType == null && excludedDataTypes.contains(dataLink.getType().getName()))
+                        if (dataType == null && excluded[dataLink.getType().getOrdinal()])
                             continue;
                         
-                        if (dataType == null || dataType.equals(dataLink.getType().getName())) {
-                            
-                            if (dataType != null)
-                                s += "<div class=\"rel-data-type-".concat(dataLink.getType().getIdentifier()).concat("\"") + ">";
+                        if (dataType != null)
+                            out.append("<div class=\"rel-data-type-").append(dataLink.getType().getIdentifier()).append("\">");
+                        
+                        out.append("<a")
+                                .append(" href=\"").append(dataLink.getUrl()).append("\"")
+                                .append(" class=\"rel-data-type-").append(dataLink.getType().getIdentifier()).append(dataType == null ? " species-data-link" : "").append("\"")
+                                .append(" title=\"")
+                                    .append(speciesDataEntry.getName())
+                                    .append(": ").append(labels.getTypeLabel(dataLink.getType()))
+                                    .append(", ").append(location);
+                        if (dataLink.hasNumYears()) {
+                            out.append(" (").append(dataLink.getNumYears()).append(" ").append(labels.getYearLabel()).append(")");
+                        }
+                        out.append("\"")
+                                .append(" target=\"_blank\"")
+                                .append(">");
+                        
+                        if (dataType != null) {
+                            out.append(dataLink.getNumYears());
                             
-                            sums[dataTypeTotals.indexOf(dataLink.getType().getName())]++; // Increment relevant counter
-                            sums[dataTypeTotals.size()]++; // Increment combined total (always at the "rightmost" position in the sums array)
-                            String linkText = "";
-                            if (dataType != null) {
-                                linkText = dataLink.getNumYears();
-                                
-                                String comment = dataLink.getComment();
-                                if (comment != null && !comment.isEmpty()) {
-                                    int commentIndex = comments.indexOf(comment);
-                                    if (commentIndex < 0) {
-                                        comments.add(comment);
-                                        commentIndex = comments.indexOf(comment);
-                                    }
-                                    linkText += "<sup>" + (commentIndex+1) + "</sup>"; 
+                            String comment = dataLink.getComment();
+                            if (comment != null && !comment.isEmpty()) {
+                                int commentIndex = comments.indexOf(comment);
+                                if (commentIndex < 0) {
+                                    comments.add(comment);
+                                    commentIndex = comments.size() - 1;
                                 }
+                                out.append("<sup>").append(String.valueOf(commentIndex+1)).append("</sup>");
                             }
-                            
-                            s += "<a"
-                                    + " href=\"" + dataLink.getUrl() + "\""
-                                    + " class=\"rel-data-type-" + dataLink.getType().getIdentifier() + (dataType == null ? " species-data-link" : "") + "\""
-                                    + " title=\"" 
-                                        + speciesDataEntry.getName() 
-                                        + ": " + dataLink.getType().getLabel(cms) 
-                                        + ", " + location + (dataLink.getNumYears().isEmpty() ? 
-                                            "" : 
-                                            " ("+dataLink.getNumYears()+" "+cms.label("label.seapop-species-data.year")+")") 
-                                        + "\""
-                                    + " target=\"_blank\""
-                                    + ">" + linkText + "</a>";
-                            
-                            if (dataType != null)
-                                s += "</div>";
                         }
+                        
+                        out.append("</a>");
+                        
+                        if (dataType != null)
+                            out.append("</div>");
                     }
                     
                 } 
                 
                 if (dataType == null)
-                    s += "</div>";
+                    out.append("</div>");
                 
-                s += "</td>";
+                out.append("</td>");
             }
             
             if (dataType == null) {
-                // No specified data type - print all aggregated sums
+                // No specified data type - print all aggregated sums (read from the pre-computed counts)
+                // (Excluded types are not part of the combined total either)
+                int[] sums = counts.getTotals(location, dataTypeTotals, excluded); // E.g.: [Population] [Reproduction] [Survival] [Diet] [COMBINED TOTAL (always last)]
                 for (int iSums = 0; iSums < sums.length; iSums++) {
                     try { if (excludedDataTypes.contains(dataTypeTotals.get(iSums))) continue; } catch (Exception e) {}
                     String dataTypeIdentifier = "total"; // Default: total - will be used if the next line throws an exception (which it should do at the last iteration)
                     try { dataTypeIdentifier = SpeciesDataLinkType.getIdentifierForName(dataTypeTotals.get(iSums)); } catch (Exception e) {}
-                    s += "<td class=\"rel-data-type-" + dataTypeIdentifier + "\"><span>" + sums[iSums] + "</span></td>";
+                    out.append("<td class=\"rel-data-type-").append(dataTypeIdentifier).append("\"><span>").append(String.valueOf(sums[iSums])).append("</span></td>");
                 }
             } 
             
             else {
                 // Specified data type - print the single total sum
-                s += "<td class=\"rel-data-type-t\"><span>" + sums[dataTypeTotals.indexOf(dataType)] + "</span></td>";
+                out.append("<td class=\"rel-data-type-t\"><span>").append(String.valueOf(counts.getCount(location, dataType))).append("</span></td>");
             }
             
             // End the row
-            s += "</tr>\n\n";
-            
-            
+            out.append("</tr>\n\n");
         }
         
-        s += "</table>\n\n";
+        out.append("</table>\n\n");
         
         if (dataType != null && !comments.isEmpty()) {
-            s += "<div class=\"species-data-table-comments\">";
-            s += "<ol>";
+            out.append("<div class=\"species-data-table-comments\">");
+            out.append("<ol>");
             Iterator<String> iComments = comments.iterator();
             while (iComments.hasNext()) {
-                s += "<li>" + iComments.next() + "</li>";
+                out.append("<li>").append(iComments.next()).append("</li>");
+            }
+            out.append("</ol>");
+            out.append("</div>");
+        }
+    }
+    
+    /**
+     * Writes single-type HTML table rows, from the given materialized view.
+     * <p>
+     * The output is identical to that of 
+     * {@link #writeHtmlTableRows(java.lang.Appendable, no.npolar.util.CmsAgent, java.lang.String, java.util.List, java.util.List, java.util.List)} 
+     * for the same data type, but no data links are filtered, and footnotes 
+     * are looked up rather than searched for.
+     * 
+     * @param out The output to write to.
+     * @param view The materialized view for the data type.
+     * @param labels The labels to use.
+     * @param locationsInOrder The names of the locations to include, in order. If <code>null</code>, all locations are included, in order of appearance.
+     * @throws IOException If writing to the given output fails.
+     */
+    private void writeHtmlTableRows(Appendable out, SpeciesDataTypeView view, SpeciesDataLabels labels, List<String> locationsInOrder) throws IOException {
+        String identifier = view.getType().getIdentifier();
+        String typeLabel = labels.getTypeLabel(view.getType());
+        String yearLabel = labels.getYearLabel();
+        
+        // The view's footnote numbers apply as-is when all locations are 
+        // rendered in order of appearance - otherwise, number the footnotes 
+        // in the order they appear in this table
+        int[] footnoteNumbers = null; // Footnote ID -> number (0 = not yet numbered)
+        int[] footnoteIdsInOrder = null; // Footnote number - 1 -> footnote ID
+        int numFootnotes = 0;
+        if (locationsInOrder != null) {
+            footnoteNumbers = new int[view.getNumFootnotes()];
+            footnoteIdsInOrder = new int[view.getNumFootnotes()];
+        }
+        
+        Iterator<String> iLocations = locationsInOrder != null ? locationsInOrder.iterator() : locations.iterator();
+        while (iLocations.hasNext()) {
+            // Get the location
+            String location = iLocations.next();
+            int locationId = SpeciesDataLink.getLocationId(location);
+            
+            // Prevent error case (can happen when locationsInOrder is used)
+            if (!index.containsLocation(locationId)) {
+                out.append("\n<-- skipping location '").append(location).append("' because it has no entries in this collection -->");
+                continue;
             }
-            s += "</ol>";
-            s += "</div>";
+            
+            // Start the row, using the location as the row header
+            out.append("<tr><th scope=\"row\">").append(location).append("</th>");
+            
+            for (int speciesIndex = 0; speciesIndex < data.size(); speciesIndex++) {
+                out.append("<td>");
+                SpeciesDataTypeView.Cell cell = view.getCell(locationId, speciesIndex);
+                if (cell != null) {
+                    String speciesName = data.get(speciesIndex).getName();
+                    for (int i = 0; i < cell.size(); i++) {
+                        String numYears = cell.numYears[i];
+                        out.append("<div class=\"rel-data-type-").append(identifier).append("\">");
+                        out.append("<a")
+                                .append(" href=\"").append(cell.urls[i]).append("\"")
+                                .append(" class=\"rel-data-type-").append(identifier).append("\"")
+                                .append(" title=\"")
+                                    .append(speciesName)
+                                    .append(": ").append(typeLabel)
+                                    .append(", ").append(location);
+                        if (!numYears.isEmpty()) {
+                            out.append(" (").append(numYears).append(" ").append(yearLabel).append(")");
+                        }
+                        out.append("\"")
+                                .append(" target=\"_blank\"")
+                                .append(">");
+                        out.append(numYears);
+                        
+                        int footnoteId = cell.footnoteIds[i];
+                        if (footnoteId != SpeciesDataTypeView.NO_FOOTNOTE) {
+                            int footnoteNumber;
+                            if (footnoteNumbers == null) {
+                                footnoteNumber = footnoteId + 1;
+                            } else {
+                                footnoteNumber = footnoteNumbers[footnoteId];
+                                if (footnoteNumber == 0) {
+                                    footnoteIdsInOrder[numFootnotes] = footnoteId;
+                                    footnoteNumber = ++numFootnotes;
+                                    footnoteNumbers[footnoteId] = footnoteNumber;
+                                }
+                            }
+                            out.append("<sup>").append(String.valueOf(footnoteNumber)).append("</sup>");
+                        }
+                        
+                        out.append("</a>");
+                        out.append("</div>");
+                    }
+                }
+                out.append("</td>");
+            }
+            
+            // The single total sum
+            out.append("<td class=\"rel-data-type-t\"><span>").append(String.valueOf(view.getTotal(locationId))).append("</span></td>");
+            
+            // End the row
+            out.append("</tr>\n\n");
         }
         
-        return s;
+        out.append("</table>\n\n");
+        
+        if (footnoteNumbers == null) {
+            numFootnotes = view.getNumFootnotes();
+        }
+        if (numFootnotes > 0) {
+            out.append("<div class=\"species-data-table-comments\">");
+            out.append("<ol>");
+            for (int i = 0; i < numFootnotes; i++) {
+                out.append("<li>").append(view.getFootnote(footnoteIdsInOrder == null ? i : footnoteIdsInOrder[i])).append("</li>");
+            }
+            out.append("</ol>");
+            out.append("</div>");
+        }
+    }
+    
+    /**
+     * Gets the materialized view for the data type with the given ordinal, 
+     * creating it if necessary.
+     * 
+     * @param typeOrdinal The type ordinal.
+     * @return The materialized view for the data type with the given ordinal.
+     */
+    private SpeciesDataTypeView getView(int typeOrdinal) {
+        SpeciesDataTypeView[] currentViews = views;
+        SpeciesDataTypeView view = currentViews[typeOrdinal];
+        if (view == null) {
+            view = new SpeciesDataTypeView(SpeciesDataLinkType.forOrdinal(typeOrdinal), locations, data.size(), index);
+            currentViews[typeOrdinal] = view;
+        }
+        return view;
     }
     
     /**
@@ -290,36 +770,84 @@ public class SpeciesDataCollection {
     private SpeciesDataCollection add(SpeciesData speciesDataEntry) {
         if (speciesDataEntry != null) {
             data.add(speciesDataEntry);
-            updateNames(speciesDataEntry);
-            updateLocations(speciesDataEntry);
+            dataByUri.put(speciesDataEntry.getVfsUri(), speciesDataEntry);
+            retain(speciesDataEntry);
         }
         return this;
     }
     
     /**
-     * Updates the list of species names in this collection, after a data entry 
-     * was added (in the {@link #add(no.seapop.data.SpeciesData)} method).
+     * Adds the given species data entries.
      * 
-     * @param speciesDataEntry The newly added species data entry.
+     * @param speciesDataEntries The data entries to add.
      */
-    private void updateNames(SpeciesData speciesDataEntry) {
-        if (!names.contains(speciesDataEntry.getName())) {
-            names.add(speciesDataEntry.getName());
+    private void addAll(List<SpeciesData> speciesDataEntries) {
+        Iterator<SpeciesData> iEntries = speciesDataEntries.iterator();
+        while (iEntries.hasNext()) {
+            this.add(iEntries.next());
         }
     }
     
     /**
-     * Updates the list of locations in this collection, after a data entry 
-     * was added (in the {@link #add(no.seapop.data.SpeciesData)} method).
+     * Updates the species names and locations in this collection, when a data 
+     * entry is added: counts the entry's name and the locations of its data 
+     * links, appending any that are new.
      * 
-     * @param speciesDataEntry The newly added species data entry.
+     * @param speciesDataEntry The data entry being added.
+     * @see #release(no.seapop.data.SpeciesData) 
      */
-    private void updateLocations(SpeciesData speciesDataEntry) {
-        Iterator<String> iEntryLocations = speciesDataEntry.getLocations().iterator();
-        while (iEntryLocations.hasNext()) {
-            String entryLocation = iEntryLocations.next();
-            if (!locations.contains(entryLocation))
-                locations.add(entryLocation);
+    private void retain(SpeciesData speciesDataEntry) {
+        String name = speciesDataEntry.getName();
+        if (name != null) {
+            int[] nameRefs = names.get(name);
+            if (nameRefs == null) {
+                names.put(name, new int[] { 1 });
+                namesView = null;
+            } else {
+                nameRefs[0]++;
+            }
+        }
+        Iterator<SpeciesDataLink> iEntryDataLinks = speciesDataEntry.getDataLinks().iterator();
+        while (iEntryDataLinks.hasNext()) {
+            int entryLocationId = iEntryDataLinks.next().getLocationId();
+            if (entryLocationId < 0) {
+                continue;
+            }
+            if (entryLocationId >= locationRefs.length) {
+                locationRefs = Arrays.copyOf(locationRefs, Math.max(entryLocationId + 1, locationRefs.length * 2));
+            }
+            locationRefs[entryLocationId]++;
+            if (!locationIds.get(entryLocationId)) {
+                locationIds.set(entryLocationId);
+                locations.add(SpeciesDataLink.getLocation(entryLocationId));
+            }
+        }
+    }
+    
+    /**
+     * Updates the species names and locations in this collection, when a data 
+     * entry is removed: un-counts the entry's name and the locations of its 
+     * data links, removing any that are no longer used.
+     * 
+     * @param speciesDataEntry The data entry being removed.
+     * @see #retain(no.seapop.data.SpeciesData) 
+     */
+    private void release(SpeciesData speciesDataEntry) {
+        String name = speciesDataEntry.getName();
+        if (name != null) {
+            int[] nameRefs = names.get(name);
+            if (nameRefs != null && --nameRefs[0] == 0) {
+                names.remove(name);
+                namesView = null;
+            }
+        }
+        Iterator<SpeciesDataLink> iEntryDataLinks = speciesDataEntry.getDataLinks().iterator();
+        while (iEntryDataLinks.hasNext()) {
+            int entryLocationId = iEntryDataLinks.next().getLocationId();
+            if (entryLocationId >= 0 && --locationRefs[entryLocationId] == 0) {
+                locationIds.clear(entryLocationId);
+                locations.remove(SpeciesDataLink.getLocation(entryLocationId));
+            }
         }
     }
     
@@ -330,27 +858,504 @@ public class SpeciesDataCollection {
      * @see SpeciesData#GROUP_NUMBER
      */
     private void sortByGroup() {
-        Collections.sort(data, SpeciesData.GROUP_NUMBER);
+        sort(SpeciesData.GROUP_NUMBER);
     }
     
     /**
      * Sorts the list of data entries using the given comparator.
+     * <p>
+     * Entries added later, by {@link #addEntry(no.seapop.data.SpeciesData)} 
+     * or {@link #replaceEntry(no.seapop.data.SpeciesData)}, are inserted at 
+     * their sorted position according to the same comparator.
+     * 
+     * <p>
+     * This method modifies the collection. To serve several orderings of a 
+     * collection that is shared between threads, use an 
+     * {@link ImmutableSpeciesDataCollection} instead.
      * 
      * @param comp The comparator to use when sorting.
      * @return This instance, updated with newly sorted data entries.
      */
     public SpeciesDataCollection sort(Comparator<SpeciesData> comp) {
         Collections.sort(data, comp);
+        comparator = comp;
+        update();
+        return this;
+    }
+    
+    /**
+     * Adds the given data entry to this collection, in place.
+     * <p>
+     * If the collection is sorted, the entry is inserted at its sorted 
+     * position (after any equal entries), otherwise it is appended. Names, 
+     * locations, the index and the counts are updated incrementally, at a cost 
+     * proportional to the number of data links in the given entry. (Names and 
+     * locations are reference counted.)
+     * <p>
+     * Like {@link #sort(java.util.Comparator)}, this method modifies the 
+     * collection, and must not be used on a collection that is shared between 
+     * threads (e.g. one obtained from {@link SpeciesDataCollectionCache}).
+     * 
+     * @param speciesDataEntry The data entry to add.
+     * @return This instance, updated.
+     * @throws IllegalArgumentException If this collection already holds an entry with the same VFS URI.
+     * @see #replaceEntry(no.seapop.data.SpeciesData) 
+     */
+    public SpeciesDataCollection addEntry(SpeciesData speciesDataEntry) {
+        if (dataByUri.containsKey(speciesDataEntry.getVfsUri())) {
+            throw new IllegalArgumentException("This collection already holds an entry for '" + speciesDataEntry.getVfsUri() + "'.");
+        }
+        retain(speciesDataEntry);
+        insert(speciesDataEntry);
+        changed();
         return this;
     }
     
     /**
-     * Gets the "raw" list of data entries that is at the foundation of this 
-     * class.
+     * Inserts the given data entry in the list of data entries, the index and 
+     * the counts.
+     */
+    private void insert(SpeciesData speciesDataEntry) {
+        int speciesIndex = insertionPoint(speciesDataEntry);
+        data.add(speciesIndex, speciesDataEntry);
+        dataByUri.put(speciesDataEntry.getVfsUri(), speciesDataEntry);
+        index.insert(speciesIndex, speciesDataEntry);
+        counts.insert(speciesIndex, speciesDataEntry);
+    }
+    
+    /**
+     * Deletes the given data entry from the list of data entries, the index 
+     * and the counts.
+     */
+    private void delete(SpeciesData speciesDataEntry) {
+        dataByUri.remove(speciesDataEntry.getVfsUri());
+        int speciesIndex = indexOf(speciesDataEntry);
+        data.remove(speciesIndex);
+        index.remove(speciesIndex);
+        counts.remove(speciesIndex, speciesDataEntry);
+    }
+    
+    /**
+     * Removes the data entry with the given VFS URI from this collection, in 
+     * place.
+     * <p>
+     * Locations that have no data links left are removed. Note that this 
+     * method modifies the collection, see 
+     * {@link #addEntry(no.seapop.data.SpeciesData)}.
+     * 
+     * @param vfsUri The VFS URI of the data entry to remove.
+     * @return The removed data entry, or <code>null</code> if this collection holds no entry with the given VFS URI.
+     */
+    public SpeciesData removeEntry(String vfsUri) {
+        SpeciesData speciesDataEntry = dataByUri.get(vfsUri);
+        if (speciesDataEntry == null) {
+            return null;
+        }
+        delete(speciesDataEntry);
+        release(speciesDataEntry);
+        changed();
+        return speciesDataEntry;
+    }
+    
+    /**
+     * Replaces the data entry that has the same VFS URI as the given data 
+     * entry, or adds the given data entry if there is no such entry.
+     * <p>
+     * Typically used when a single <code>seapop_species_data</code> file has 
+     * been modified. Names and locations that are in both the replaced and 
+     * the new data entry keep their position. Note that this method modifies 
+     * the collection, see {@link #addEntry(no.seapop.data.SpeciesData)}.
+     * 
+     * @param speciesDataEntry The new data entry.
+     * @return The replaced data entry, or <code>null</code> if none.
+     */
+    public SpeciesData replaceEntry(SpeciesData speciesDataEntry) {
+        SpeciesData replaced = dataByUri.get(speciesDataEntry.getVfsUri());
+        if (replaced == null) {
+            addEntry(speciesDataEntry);
+            return null;
+        }
+        retain(speciesDataEntry); // Before releasing the replaced entry, so that shared names and locations are never removed
+        delete(replaced);
+        release(replaced);
+        insert(speciesDataEntry);
+        changed();
+        return replaced;
+    }
+    
+    /**
+     * Re-reads the <code>seapop_species_data</code> file with the given VFS 
+     * URI, and replaces the corresponding data entry in this collection.
+     * 
+     * @param vfsUri The VFS URI of the data file.
+     * @param cms Initialized CmsAgent.
+     * @return The replaced data entry, or <code>null</code> if none.
+     * @see #replaceEntry(no.seapop.data.SpeciesData) 
+     */
+    public SpeciesData reloadEntry(String vfsUri, CmsAgent cms) {
+        return replaceEntry(new SpeciesData(vfsUri, cms));
+    }
+    
+    /**
+     * Gets the data entry with the given VFS URI.
+     * 
+     * @param vfsUri The VFS URI.
+     * @return The data entry with the given VFS URI, or <code>null</code> if none.
+     */
+    public SpeciesData getEntry(String vfsUri) {
+        return dataByUri.get(vfsUri);
+    }
+    
+    /**
+     * Gets the position at which the given data entry should be inserted: 
+     * after any equal entries if this collection is sorted, otherwise last.
+     */
+    private int insertionPoint(SpeciesData speciesDataEntry) {
+        if (comparator == null) {
+            return data.size();
+        }
+        int low = 0;
+        int high = data.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (comparator.compare(data.get(mid), speciesDataEntry) <= 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+    
+    /**
+     * Gets the position of the given data entry, which must be in this 
+     * collection.
+     */
+    private int indexOf(SpeciesData speciesDataEntry) {
+        if (comparator != null) {
+            // Binary search for the first entry that is not less than the given entry, then scan past any equal entries
+            int low = 0;
+            int high = data.size();
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (comparator.compare(data.get(mid), speciesDataEntry) < 0) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            for (int i = low; i < data.size() && comparator.compare(data.get(i), speciesDataEntry) == 0; i++) {
+                if (data.get(i) == speciesDataEntry) {
+                    return i;
+                }
+            }
+        }
+        for (int i = 0; i < data.size(); i++) {
+            if (data.get(i) == speciesDataEntry) {
+                return i;
+            }
+        }
+        throw new IllegalStateException("Entry for '" + speciesDataEntry.getVfsUri() + "' not found.");
+    }
+    
+    /**
+     * Updates everything derived from the list of data entries (index, 
+     * counts, coverage, version etc.), after the list was modified or 
+     * re-ordered.
+     */
+    private void update() {
+        index = new SpeciesDataIndex(data);
+        counts = new SpeciesDataCounts(data);
+        changed();
+        coverage = new SpeciesDataCoverage(data);
+    }
+    
+    /**
+     * Updates the version, and discards anything rendered or built from a 
+     * previous version, after the index and counts were updated.
+     */
+    private void changed() {
+        version = VERSIONS.incrementAndGet();
+        fragments.clear();
+        linkTable = null;
+        views = new SpeciesDataTypeView[SpeciesDataLinkType.count()];
+        habitatIndex = null;
+        coverage = null;
+    }
+    
+    /**
+     * Gets the pre-computed number of data links of the given type on the 
+     * given location.
+     * 
+     * @param location The location.
+     * @param dataType The data type name, e.g. "Population".
+     * @return The number of data links of the given type on the given location.
+     */
+    public int getCount(String location, String dataType) {
+        return counts.getCount(location, dataType);
+    }
+    
+    /**
+     * Gets the pre-computed number of data links (all types) on the given 
+     * location.
+     * 
+     * @param location The location.
+     * @return The number of data links on the given location.
+     */
+    public int getCountByLocation(String location) {
+        return counts.getCountByLocation(location);
+    }
+    
+    /**
+     * Gets the pre-computed number of data links of the given type, all 
+     * locations combined.
+     * 
+     * @param dataType The data type name, e.g. "Population".
+     * @return The number of data links of the given type.
+     */
+    public int getCountByType(String dataType) {
+        return counts.getCountByType(dataType);
+    }
+    
+    /**
+     * Gets the pre-computed number of data links of the given type for the 
+     * given species, all locations combined.
+     * 
+     * @param speciesIndex The species' position in this collection, see {@link #get()}.
+     * @param dataType The data type name, e.g. "Population". If <code>null</code>, all types are counted.
+     * @return The number of matching data links for the given species.
+     */
+    public int getCountBySpecies(int speciesIndex, String dataType) {
+        return dataType == null ? counts.getCountBySpecies(speciesIndex) : counts.getCountBySpecies(speciesIndex, dataType);
+    }
+    
+    /**
+     * Gets the total number of data links in this collection.
+     * 
+     * @return The total number of data links in this collection.
+     */
+    public int getCount() {
+        return counts.getCount();
+    }
+    
+    /**
+     * @see #getTotals(java.lang.String, java.util.List) 
+     */
+    public int[] getTotals(String location) {
+        return getTotals(location, SpeciesDataLinkType.TYPES_ORDER_DEFAULT);
+    }
+    
+    /**
+     * Gets the pre-computed per-type totals for the given location, in the 
+     * given type order, followed by the combined total for those types.
+     * <p>
+     * A type listed more than once is counted at its first position only 
+     * (later positions are 0), and only once in the combined total. The 
+     * returned array is a copy, and can be modified freely.
+     * 
+     * @param location The location.
+     * @param dataTypes The data type names, in order.
+     * @return The totals, e.g.: [Population] [Reproduction] [Survival] [Diet] [Timing] [COMBINED TOTAL (always last)]
+     */
+    public int[] getTotals(String location, List<String> dataTypes) {
+        return counts.getTotals(location, dataTypes);
+    }
+    
+    /**
+     * Gets all data links for the given location and species, using the index 
+     * built for this collection.
+     * <p>
+     * Unlike {@link SpeciesData#getDataLinksByLocation(java.lang.String)}, 
+     * this is a constant-time lookup that does not create a new list.
+     * 
+     * @param location The location.
+     * @param speciesIndex The species' position in this collection, see {@link #get()}.
+     * @return All data links for the given location and species, or an empty (read-only) list.
+     */
+    public List<SpeciesDataLink> getDataLinks(String location, int speciesIndex) {
+        return index.getLinks(location, speciesIndex);
+    }
+    
+    /**
+     * Gets all data links of the given type for the given location and 
+     * species, using the index built for this collection.
+     * 
+     * @param location The location.
+     * @param speciesIndex The species' position in this collection, see {@link #get()}.
+     * @param dataType The data type name, e.g. "Population".
+     * @return All matching data links, or an empty (read-only) list.
+     * @see #getDataLinks(java.lang.String, int) 
+     */
+    public List<SpeciesDataLink> getDataLinks(String location, int speciesIndex, String dataType) {
+        return index.getLinks(location, speciesIndex, dataType);
+    }
+    
+    /**
+     * Gets the list of data entries that is at the foundation of this class, 
+     * as a read-only view (no copy is made).
+     * <p>
+     * The list cannot be modified or re-ordered directly (it could until 
+     * the index was introduced, see the class description); use 
+     * {@link #sort(java.util.Comparator)} to re-order it, and 
+     * {@link #addEntry(no.seapop.data.SpeciesData)}, 
+     * {@link #removeEntry(java.lang.String)} or 
+     * {@link #replaceEntry(no.seapop.data.SpeciesData)} to modify it, as that 
+     * will also update the index used by e.g. 
+     * {@link #getDataLinks(java.lang.String, int)}.
      * 
      * @return The data entries contained in this instance.
      */
-    public List<SpeciesData> get() { return this.data; }
+    public List<SpeciesData> get() { return this.dataView; }
+    
+    /**
+     * Creates a new, unfiltered query over the species and data links in 
+     * this collection.
+     * <p>
+     * Queries are lazy: filter the query, then iterate the results, e.g. 
+     * <code>query().locations(location).types(type).getDataLinks()</code>.
+     * 
+     * @return A new, unfiltered query over this collection.
+     */
+    public SpeciesDataQuery query() { return new SpeciesDataQuery(this); }
+    
+    /**
+     * Gets the index over the data links in this collection.
+     * 
+     * @return The index over the data links in this collection.
+     */
+    SpeciesDataIndex getIndex() { return this.index; }
+    
+    /**
+     * Gets the compact, column-oriented representation of all data links in 
+     * this collection, creating it if necessary.
+     * <p>
+     * The table's species indexes match the positions in {@link #get()}.
+     * 
+     * @return The compact representation of all data links in this collection.
+     */
+    public SpeciesDataLinkTable getLinkTable() {
+        SpeciesDataLinkTable table = linkTable;
+        if (table == null) {
+            table = new SpeciesDataLinkTable(data);
+            linkTable = table;
+        }
+        return table;
+    }
+    
+    /**
+     * Gets the time series coverage statistics (number of years covered by 
+     * the data links) for this collection, per location, type and species.
+     * <p>
+     * The statistics are computed when the collection is built (and when it 
+     * is sorted). After a single entry is added, removed or replaced, they 
+     * are re-computed on first request instead, to keep such updates cheap.
+     * <p>
+     * The statistics' species indexes match the positions in {@link #get()}.
+     * 
+     * @return The time series coverage statistics for this collection.
+     */
+    public SpeciesDataCoverage getCoverage() {
+        SpeciesDataCoverage stats = coverage;
+        if (stats == null) {
+            stats = new SpeciesDataCoverage(data);
+            coverage = stats;
+        }
+        return stats;
+    }
+    
+    /**
+     * Gets the species that have all the given habitat flags.
+     * <p>
+     * The returned set holds species indexes, matching the positions in 
+     * {@link #get()}, and may be modified freely (e.g. combined with other 
+     * sets) by the caller.
+     * 
+     * @param habitatMask The habitat flags, as a bitmask of {@link SpeciesData} <code>HABITAT_*</code> values. If zero, all species are returned.
+     * @return The indexes of all species that have all the given habitat flags.
+     * @see SpeciesData#getHabitat() 
+     */
+    public BitSet getSpeciesByHabitat(int habitatMask) {
+        return getHabitatIndex().getSpecies(habitatMask);
+    }
+    
+    /**
+     * Gets the species in the given group.
+     * <p>
+     * The returned set holds species indexes, matching the positions in 
+     * {@link #get()}, and may be modified freely by the caller.
+     * 
+     * @param groupNumber The group number.
+     * @return The indexes of all species in the given group.
+     * @see SpeciesData#getGroupNumber() 
+     */
+    public BitSet getSpeciesByGroup(int groupNumber) {
+        return getHabitatIndex().getSpeciesInGroup(groupNumber);
+    }
+    
+    /**
+     * Gets the habitat index, creating it if necessary.
+     * 
+     * @return The habitat index.
+     */
+    private SpeciesDataHabitatIndex getHabitatIndex() {
+        SpeciesDataHabitatIndex habitats = habitatIndex;
+        if (habitats == null) {
+            habitats = new SpeciesDataHabitatIndex(data);
+            habitatIndex = habitats;
+        }
+        return habitats;
+    }
+    
+    /**
+     * Gets a report comparing the estimated heap footprint of the data links 
+     * in this collection, as objects (the default representation) versus the 
+     * compact representation returned by {@link #getLinkTable()}.
+     * 
+     * @return A human-readable memory footprint report.
+     */
+    public String getFootprintReport() {
+        SpeciesDataLinkTable table = getLinkTable();
+        long objectBytes = SpeciesDataLinkTable.estimateObjectGraphFootprint(data);
+        long tableBytes = table.estimateFootprint();
+        return "Data links: " + table.size() 
+                + " (" + data.size() + " species, " + locations.size() + " locations, " + table.getNumPooledStrings() + " distinct pooled strings)"
+                + "\nObjects: ~" + objectBytes + " bytes" + (table.size() > 0 ? " (~" + (objectBytes / table.size()) + " bytes per link)" : "")
+                + "\nCompact: ~" + tableBytes + " bytes" + (table.size() > 0 ? " (~" + (tableBytes / table.size()) + " bytes per link)" : "")
+                + (objectBytes > 0 ? "\nCompact/objects: " + (tableBytes * 100 / objectBytes) + "%" : "");
+    }
+    
+    /**
+     * Gets all locations in this collection, in order of appearance.
+     * 
+     * @return All locations in this collection (read-only).
+     */
+    public List<String> getLocations() { return Collections.unmodifiableList(this.locations); }
+    
+    /**
+     * Gets a flag indicating whether or not this collection has any data 
+     * links for the given location.
+     * 
+     * @param location The location.
+     * @return <code>true</code> if this collection has data links for the given location.
+     */
+    public boolean containsLocation(String location) {
+        int locationId = SpeciesDataLink.getLocationId(location);
+        return locationId >= 0 && locationIds.get(locationId);
+    }
+    
+    /**
+     * Gets all species names in this collection, in order of appearance.
+     * 
+     * @return All species names in this collection (read-only).
+     */
+    public List<String> getNames() {
+        List<String> view = namesView;
+        if (view == null) {
+            view = Collections.unmodifiableList(new ArrayList<String>(names.keySet()));
+            namesView = view;
+        }
+        return view;
+    }
     
     /**
      * Gets the number of data entries contained in this instance.
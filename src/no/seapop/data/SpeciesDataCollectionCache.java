@@ -0,0 +1,550 @@
+package no.seapop.data;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+import no.npolar.util.CmsAgent;
+import org.opencms.db.CmsPublishedResource;
+import org.opencms.file.CmsObject;
+import org.opencms.file.CmsResource;
+import org.opencms.main.CmsEvent;
+import org.opencms.main.I_CmsEventListener;
+import org.opencms.main.OpenCms;
+import org.opencms.util.CmsUUID;
+
+/**
+ * Process-wide cache of {@link SpeciesDataCollection} instances.
+ * <p>
+ * Collections are cached per folder, project, user, locale and set of
+ * excluded resources. The user is part of the key because what a user can
+ * read depends on their permissions; all guest (online) requests share the
+ * same collections. The cache is size-bounded, and evicts the least recently
+ * used collection when full.
+ * <p>
+ * Only complete loads are cached: if the folder or any species file could
+ * not be read (see {@link SpeciesDataLoadReport#isComplete()}), the
+ * collection is returned, but loaded again on the next request.
+ * <p>
+ * Cached collections are invalidated by OpenCms events: Modifying a resource
+ * invalidates any offline collection read from a folder containing that
+ * resource, and publishing invalidates any online collection read from a
+ * folder containing one of the published resources. (If the published
+ * resources cannot be read from the publish history, all online collections
+ * are invalidated.)
+ * <p>
+ * Loading is single-flight: concurrent requests for the same (missing)
+ * collection wait for a single load, instead of each loading it.
+ * <p>
+ * The shared instance is exposed via JMX, see {@link SpeciesDataMetrics}.
+ * <p>
+ * Cached collections are shared, and should be treated as read-only: do not
+ * {@link SpeciesDataCollection#sort(java.util.Comparator) sort} them or
+ * modify the list returned by {@link SpeciesDataCollection#get()}. To serve
+ * several orderings, wrap them in an {@link ImmutableSpeciesDataCollection}.
+ *
+ * @author Paul-Inge Flakstad, Norwegian Polar Institute <flakstad at npolar.no>
+ */
+public class SpeciesDataCollectionCache implements I_CmsEventListener, SpeciesDataCollectionCacheMBean {
+
+    /** The default maximum number of cached collections. */
+    public static final int DEFAULT_MAX_SIZE = 32;
+
+    /** The events this cache listens for. */
+    private static final int[] EVENTS = new int[] {
+        I_CmsEventListener.EVENT_PUBLISH_PROJECT,
+        I_CmsEventListener.EVENT_CLEAR_CACHES,
+        I_CmsEventListener.EVENT_CLEAR_ONLINE_CACHES,
+        I_CmsEventListener.EVENT_CLEAR_OFFLINE_CACHES,
+        I_CmsEventListener.EVENT_RESOURCE_CREATED,
+        I_CmsEventListener.EVENT_RESOURCE_MODIFIED,
+        I_CmsEventListener.EVENT_RESOURCE_AND_PROPERTIES_MODIFIED,
+        I_CmsEventListener.EVENT_RESOURCES_MODIFIED,
+        I_CmsEventListener.EVENT_RESOURCE_MOVED,
+        I_CmsEventListener.EVENT_RESOURCE_DELETED
+    };
+
+    /** The shared instance. */
+    private static SpeciesDataCollectionCache instance = null;
+
+    /** The cached collections, in access order (least recently used first). */
+    private final Map<Key, SpeciesDataCollection> cache;
+
+    /** The loads in progress. Invalidation removes affected loads, so that they are not cached when complete. */
+    private final Map<Key, FutureTask<SpeciesDataCollection>> loading = new HashMap<Key, FutureTask<SpeciesDataCollection>>();
+
+    /** Used to read the publish history, created on the first publish event (guarded by {@link #publishHistoryLock}). */
+    private CmsObject publishHistoryCms = null;
+    /** Guards {@link #publishHistoryCms}. */
+    private final Object publishHistoryLock = new Object();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong loads = new AtomicLong();
+    private final AtomicLong loadTime = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+
+    /**
+     * Cache key: folder (root path), project, user, locale and excluded
+     * resources (structure IDs).
+     */
+    private static class Key {
+        private final String folderRootPath;
+        private final boolean online;
+        private final CmsUUID projectId;
+        private final CmsUUID userId;
+        private final Locale locale;
+        private final Set<CmsUUID> excludedIds;
+
+        private Key(String folderRootPath, boolean online, CmsUUID projectId, CmsUUID userId, Locale locale, Set<CmsUUID> excludedIds) {
+            this.folderRootPath = folderRootPath.endsWith("/") ? folderRootPath : folderRootPath.concat("/");
+            this.online = online;
+            this.projectId = projectId;
+            this.userId = userId;
+            this.locale = locale;
+            this.excludedIds = excludedIds;
+        }
+
+        private boolean contains(String rootPath) {
+            return rootPath != null && rootPath.startsWith(folderRootPath);
+        }
+
+        @Override
+        public int hashCode() {
+            int h = folderRootPath.hashCode();
+            h = 31 * h + projectId.hashCode();
+            h = 31 * h + userId.hashCode();
+            h = 31 * h + (locale == null ? 0 : locale.hashCode());
+            h = 31 * h + excludedIds.hashCode();
+            return h;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key))
+                return false;
+            if (obj == this)
+                return true;
+
+            Key rhs = (Key) obj;
+            return this.online == rhs.online
+                    && this.projectId.equals(rhs.projectId)
+                    && this.userId.equals(rhs.userId)
+                    && this.folderRootPath.equals(rhs.folderRootPath)
+                    && (this.locale == null ? rhs.locale == null : this.locale.equals(rhs.locale))
+                    && this.excludedIds.equals(rhs.excludedIds);
+        }
+    }
+
+    /**
+     * Creates a new cache, holding at most the given number of collections.
+     * <p>
+     * The new cache is not registered as an event listener; use
+     * {@link #getInstance()} to get the shared, registered instance.
+     *
+     * @param maxSize The maximum number of collections to keep.
+     */
+    public SpeciesDataCollectionCache(final int maxSize) {
+        cache = new LinkedHashMap<Key, SpeciesDataCollection>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, SpeciesDataCollection> eldest) {
+                if (size() > maxSize) {
+                    evictions.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Gets the shared cache instance, creating it and registering it as an
+     * OpenCms event listener if necessary.
+     *
+     * @return The shared cache instance.
+     */
+    public static synchronized SpeciesDataCollectionCache getInstance() {
+        if (instance == null) {
+            instance = new SpeciesDataCollectionCache(DEFAULT_MAX_SIZE);
+            OpenCms.addCmsEventListener(instance, EVENTS);
+            SpeciesDataMetrics.register(instance, "type=Cache");
+        }
+        return instance;
+    }
+
+    /**
+     * Shuts down the shared instance, if any: unregisters it as an OpenCms
+     * event listener and clears it. Also unregisters all species data MBeans,
+     * see {@link SpeciesDataMetrics#unregisterAll()}.
+     * <p>
+     * Call this when the module is stopped or redeployed. A later call to
+     * {@link #getInstance()} creates a new shared instance.
+     */
+    public static synchronized void shutdown() {
+        if (instance != null) {
+            OpenCms.removeCmsEventListener(instance);
+            instance.clear();
+            instance = null;
+        }
+        SpeciesDataMetrics.unregisterAll();
+    }
+
+    /**
+     * @see #get(java.lang.String, no.npolar.util.CmsAgent, java.util.List)
+     */
+    public SpeciesDataCollection get(String folder, CmsAgent cms) {
+        return get(folder, cms, null);
+    }
+
+    /**
+     * Gets the collection for the given folder, using a cached collection if
+     * possible. If no cached collection exists, a new one is created and
+     * cached. If another thread is already creating it, this thread waits for
+     * that collection instead.
+     *
+     * @param folder The folder to read <code>seapop_species_data</code> data files from.
+     * @param cms Initialized CmsAgent.
+     * @param excluded Resource(s) to ignore. Can be <code>null</code>.
+     * @return The collection for the given folder.
+     * @see SpeciesDataCollection#SpeciesDataCollection(java.lang.String, no.npolar.util.CmsAgent, java.util.List)
+     */
+    public SpeciesDataCollection get(String folder, CmsAgent cms, List<CmsResource> excluded) {
+        Key key = createKey(folder, cms, excluded);
+        FutureTask<SpeciesDataCollection> load;
+        boolean owner = false;
+        synchronized (this) {
+            SpeciesDataCollection cached = cache.get(key);
+            if (cached != null) {
+                hits.incrementAndGet();
+                return cached;
+            }
+            misses.incrementAndGet();
+            load = loading.get(key);
+            if (load == null) {
+                load = createLoad(folder, cms, excluded);
+                loading.put(key, load);
+                owner = true;
+            } else {
+                coalesced.incrementAndGet();
+            }
+        }
+
+        if (owner) {
+            load.run();
+            synchronized (this) {
+                // Don't cache if the load was invalidated (removed) while running
+                if (loading.get(key) == load) {
+                    loading.remove(key);
+                    SpeciesDataCollection collection = await(load);
+                    if (isComplete(collection)) {
+                        cache.put(key, collection);
+                    }
+                }
+            }
+        }
+        return await(load);
+    }
+
+    /**
+     * Creates a load of the collection for the given parameters. The load is
+     * run by the thread that created it.
+     */
+    private FutureTask<SpeciesDataCollection> createLoad(final String folder, final CmsAgent cms, final List<CmsResource> excluded) {
+        return new FutureTask<SpeciesDataCollection>(new Callable<SpeciesDataCollection>() {
+            @Override
+            public SpeciesDataCollection call() {
+                long start = System.currentTimeMillis();
+                SpeciesDataCollection collection = new SpeciesDataCollection(folder, cms, excluded);
+                loadTime.addAndGet(System.currentTimeMillis() - start);
+                loads.incrementAndGet();
+                return collection;
+            }
+        });
+    }
+
+    /**
+     * Gets a flag indicating whether or not the given (freshly loaded)
+     * collection is complete, and so may be cached.
+     */
+    private static boolean isComplete(SpeciesDataCollection collection) {
+        SpeciesDataLoadReport report = collection.getLoadReport();
+        return report != null && report.isComplete();
+    }
+
+    /**
+     * Waits for the given load to complete.
+     *
+     * @return The loaded collection.
+     * @throws RuntimeException If the load failed.
+     */
+    private static SpeciesDataCollection await(FutureTask<SpeciesDataCollection> load) {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    return load.get();
+                } catch (InterruptedException e) {
+                    interrupted = true; // Keep waiting, the collection is needed
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    if (cause instanceof RuntimeException) {
+                        throw (RuntimeException)cause;
+                    }
+                    if (cause instanceof Error) {
+                        throw (Error)cause;
+                    }
+                    throw new RuntimeException(cause);
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Creates the cache key for the given parameters.
+     */
+    private static Key createKey(String folder, CmsAgent cms, List<CmsResource> excluded) {
+        CmsObject cmso = cms.getCmsObject();
+        Set<CmsUUID> excludedIds = new HashSet<CmsUUID>();
+        if (excluded != null) {
+            Iterator<CmsResource> iExcluded = excluded.iterator();
+            while (iExcluded.hasNext()) {
+                excludedIds.add(iExcluded.next().getStructureId());
+            }
+        }
+        return new Key(
+                cmso.getRequestContext().addSiteRoot(folder),
+                cmso.getRequestContext().getCurrentProject().isOnlineProject(),
+                cmso.getRequestContext().getCurrentProject().getUuid(),
+                cmso.getRequestContext().getCurrentUser().getId(),
+                cms.getRequestContext().getLocale(),
+                Collections.unmodifiableSet(excludedIds)
+        );
+    }
+
+    /**
+     * Handles OpenCms events by invalidating the affected collections.
+     *
+     * @param event The event.
+     */
+    @Override
+    public void cmsEvent(CmsEvent event) {
+        switch (event.getType()) {
+            case I_CmsEventListener.EVENT_PUBLISH_PROJECT:
+                invalidate(true, getPublishedRootPaths(event));
+                break;
+            case I_CmsEventListener.EVENT_CLEAR_ONLINE_CACHES:
+                invalidate(true, null);
+                break;
+            case I_CmsEventListener.EVENT_CLEAR_OFFLINE_CACHES:
+                invalidate(false, null);
+                break;
+            case I_CmsEventListener.EVENT_CLEAR_CACHES:
+                clear();
+                break;
+            default:
+                invalidate(false, getAffectedRootPaths(event));
+                break;
+        }
+    }
+
+    /**
+     * Gets the root paths of the resources in the given event's data.
+     *
+     * @return The root paths of the affected resources, or <code>null</code> if they are unknown.
+     */
+    @SuppressWarnings("unchecked")
+    private static List<String> getAffectedRootPaths(CmsEvent event) {
+        List<String> rootPaths = new ArrayList<String>();
+        try {
+            Map<String, Object> eventData = event.getData();
+            Object resource = eventData.get(I_CmsEventListener.KEY_RESOURCE);
+            if (resource instanceof CmsResource) {
+                rootPaths.add(((CmsResource)resource).getRootPath());
+            }
+            Object resources = eventData.get(I_CmsEventListener.KEY_RESOURCES);
+            if (resources instanceof List) {
+                Iterator<CmsResource> iResources = ((List<CmsResource>)resources).iterator();
+                while (iResources.hasNext()) {
+                    rootPaths.add(iResources.next().getRootPath());
+                }
+            }
+        } catch (Exception e) {
+            return null;
+        }
+        return rootPaths.isEmpty() ? null : rootPaths;
+    }
+
+    /**
+     * Gets the root paths of the resources published in the publish job of
+     * the given event, by reading the publish history.
+     *
+     * @return The root paths of the published resources, or <code>null</code> if they are unknown.
+     */
+    private List<String> getPublishedRootPaths(CmsEvent event) {
+        List<String> rootPaths = new ArrayList<String>();
+        try {
+            Object publishHistoryId = event.getData().get(I_CmsEventListener.KEY_PUBLISHID);
+            if (publishHistoryId == null) {
+                return null;
+            }
+            List<CmsPublishedResource> published;
+            // Not the cache lock, which every get() takes: reading the publish history may be slow
+            synchronized (publishHistoryLock) {
+                if (publishHistoryCms == null) {
+                    publishHistoryCms = OpenCms.initCmsObject(OpenCms.getDefaultUsers().getUserGuest());
+                }
+                published = publishHistoryCms.readPublishedResources(new CmsUUID(publishHistoryId.toString()));
+            }
+            Iterator<CmsPublishedResource> iPublished = published.iterator();
+            while (iPublished.hasNext()) {
+                rootPaths.add(iPublished.next().getRootPath());
+            }
+        } catch (Exception e) {
+            return null;
+        }
+        return rootPaths;
+    }
+
+    /**
+     * Removes cached collections from the given project.
+     *
+     * @param online If <code>true</code>, online collections are removed; if <code>false</code>, offline collections are removed.
+     * @param rootPaths If not <code>null</code>, only collections that contain any of these resources are removed.
+     */
+    private synchronized void invalidate(boolean online, List<String> rootPaths) {
+        if (rootPaths != null && rootPaths.isEmpty()) {
+            return;
+        }
+        removeAffected(loading.keySet().iterator(), online, rootPaths);
+        invalidations.addAndGet(removeAffected(cache.keySet().iterator(), online, rootPaths));
+    }
+
+    /**
+     * Removes the affected keys from the given keys.
+     *
+     * @return The number of keys removed.
+     * @see #invalidate(boolean, java.util.List)
+     */
+    private static int removeAffected(Iterator<Key> iKeys, boolean online, List<String> rootPaths) {
+        int removed = 0;
+        while (iKeys.hasNext()) {
+            Key key = iKeys.next();
+            if (key.online != online) {
+                continue;
+            }
+            boolean affected = rootPaths == null;
+            if (!affected) {
+                Iterator<String> iRootPaths = rootPaths.iterator();
+                while (iRootPaths.hasNext() && !affected) {
+                    affected = key.contains(iRootPaths.next());
+                }
+            }
+            if (affected) {
+                iKeys.remove();
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * Removes all cached collections.
+     */
+    @Override
+    public synchronized void clear() {
+        invalidations.addAndGet(cache.size());
+        cache.clear();
+        loading.clear();
+    }
+
+    /**
+     * Gets the number of currently cached collections.
+     *
+     * @return The number of currently cached collections.
+     */
+    public synchronized int size() { return cache.size(); }
+
+    /**
+     * Gets the number of requests served by a cached collection.
+     *
+     * @return The number of cache hits.
+     */
+    @Override
+    public long getHitCount() { return hits.get(); }
+
+    /**
+     * Gets the number of requests that were not served by a cached collection.
+     *
+     * @return The number of cache misses.
+     */
+    @Override
+    public long getMissCount() { return misses.get(); }
+
+    /**
+     * Gets the number of cache misses that waited for a load already started
+     * by another request, instead of loading the collection themselves.
+     *
+     * @return The number of coalesced cache misses.
+     */
+    @Override
+    public long getCoalescedMissCount() { return coalesced.get(); }
+
+    /**
+     * Gets the number of collections created (loaded) by this cache.
+     *
+     * @return The number of collections loaded.
+     */
+    @Override
+    public long getLoadCount() { return loads.get(); }
+
+    /**
+     * Gets the total time spent loading collections.
+     *
+     * @return The total time spent loading collections, in milliseconds.
+     */
+    @Override
+    public long getTotalLoadTime() { return loadTime.get(); }
+
+    /**
+     * Gets the average time spent loading a collection.
+     *
+     * @return The average time spent loading a collection, in milliseconds, or 0 if nothing has been loaded yet.
+     */
+    @Override
+    public long getAverageLoadTime() {
+        long numLoads = loads.get();
+        return numLoads == 0 ? 0 : loadTime.get() / numLoads;
+    }
+
+    /**
+     * Gets the number of collections evicted because the cache was full.
+     *
+     * @return The number of collections evicted.
+     */
+    @Override
+    public long getEvictionCount() { return evictions.get(); }
+
+    /**
+     * Gets the number of collections removed due to invalidation.
+     *
+     * @return The number of collections invalidated.
+     */
+    @Override
+    public long getInvalidationCount() { return invalidations.get(); }
+}
@@ -0,0 +1,36 @@
+package no.seapop.data;
+
+/**
+ * JMX management interface for {@link SpeciesDataCollectionCache}.
+ *
+ * @author Paul-Inge Flakstad, Norwegian Polar Institute <flakstad at npolar.no>
+ */
+public interface SpeciesDataCollectionCacheMBean {
+
+    /** @see SpeciesDataCollectionCache#getHitCount() */
+    public long getHitCount();
+
+    /** @see SpeciesDataCollectionCache#getMissCount() */
+    public long getMissCount();
+
+    /** @see SpeciesDataCollectionCache#getCoalescedMissCount() */
+    public long getCoalescedMissCount();
+
+    /** @see SpeciesDataCollectionCache#getLoadCount() */
+    public long getLoadCount();
+
+    /** @see SpeciesDataCollectionCache#getTotalLoadTime() */
+    public long getTotalLoadTime();
+
+    /** @see SpeciesDataCollectionCache#getAverageLoadTime() */
+    public long getAverageLoadTime();
+
+    /** @see SpeciesDataCollectionCache#getEvictionCount() */
+    public long getEvictionCount();
+
+    /** @see SpeciesDataCollectionCache#getInvalidationCount() */
+    public long getInvalidationCount();
+
+    /** @see SpeciesDataCollectionCache#clear() */
+    public void clear();
+}
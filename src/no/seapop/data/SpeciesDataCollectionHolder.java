@@ -0,0 +1,295 @@
+package no.seapop.data;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.opencms.main.CmsEvent;
+import org.opencms.main.I_CmsEventListener;
+import org.opencms.main.OpenCms;
+
+/**
+ * Holds the current {@link SpeciesDataCollection} for a single source, and
+ * rebuilds it in the background (stale-while-revalidate).
+ * <p>
+ * {@link #get()} always returns the current collection immediately. Only the
+ * very first call (warm-up) waits for a collection to be built. After that,
+ * request threads never block on loading: rebuilds are triggered by
+ * {@link #refresh()} (e.g. on OpenCms events, see {@link #listen(int[])}) or
+ * on a fixed schedule, run on a single background thread, and the new
+ * collection is swapped in atomically when complete. Until then, the previous
+ * collection is served.
+ * <p>
+ * Rebuilds are single-flight: at most one rebuild runs at a time, and any
+ * number of triggers during a rebuild result in exactly one follow-up
+ * rebuild (so that changes made during a rebuild are never missed).
+ * <p>
+ * A rebuild that fails keeps the previous collection; see
+ * {@link #getLastFailure()}. A rebuild where any species file could not be
+ * read (see {@link SpeciesDataLoadReport#isComplete()}) counts as failed, so
+ * a complete collection is never replaced by a partial one. (The very first
+ * rebuild is the exception: with nothing to keep, a partial collection is
+ * better than none.) The held collections are shared, and should be treated
+ * as read-only.
+ *
+ * @author Paul-Inge Flakstad, Norwegian Polar Institute <flakstad at npolar.no>
+ * @see OpenCmsSpeciesDataSource#OpenCmsSpeciesDataSource(java.lang.String, org.opencms.file.CmsObject, java.util.Locale, java.util.List, int)
+ */
+public class SpeciesDataCollectionHolder implements I_CmsEventListener {
+
+    /** The default events that trigger a rebuild: publishing, and clearing (online) caches. */
+    public static final int[] DEFAULT_EVENTS = new int[] {
+        I_CmsEventListener.EVENT_PUBLISH_PROJECT,
+        I_CmsEventListener.EVENT_CLEAR_CACHES,
+        I_CmsEventListener.EVENT_CLEAR_ONLINE_CACHES
+    };
+
+    /** Rebuild state: no rebuild running. */
+    private static final int IDLE = 0;
+    /** Rebuild state: a rebuild is running. */
+    private static final int RUNNING = 1;
+    /** Rebuild state: a rebuild is running, and another one has been requested. */
+    private static final int RUNNING_PENDING = 2;
+
+    /** Source of unique thread numbers. */
+    private static final AtomicInteger THREADS = new AtomicInteger(0);
+
+    /** The source to build collections from. */
+    private final SpeciesDataSource source;
+    /** The background thread. */
+    private final ScheduledExecutorService executor;
+    /** The rebuild state. */
+    private final AtomicInteger state = new AtomicInteger(IDLE);
+    /** Released when the first rebuild has completed (successfully or not). */
+    private final CountDownLatch warmedUp = new CountDownLatch(1);
+
+    /** The current collection, or <code>null</code> before the first successful rebuild. */
+    private volatile SpeciesDataCollection current = null;
+    /** The error that made the most recent rebuild fail, if any. */
+    private volatile Throwable lastFailure = null;
+    /** The time the current collection was swapped in, in milliseconds since the epoch. */
+    private volatile long lastRefreshTime = 0;
+
+    private final AtomicLong refreshes = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong triggers = new AtomicLong();
+
+    /** Runs rebuilds, until no more are pending. */
+    private final Runnable rebuildTask = new Runnable() {
+        @Override
+        public void run() {
+            boolean done = false;
+            try {
+                do {
+                    rebuild();
+                } while (!state.compareAndSet(RUNNING, IDLE) && state.compareAndSet(RUNNING_PENDING, RUNNING));
+                done = true;
+            } finally {
+                if (!done) {
+                    state.set(IDLE); // An error escaped the rebuild => let the next trigger start over
+                }
+            }
+        }
+    };
+
+    /**
+     * Creates a new holder, without scheduled rebuilds. Nothing is built
+     * until the first call to {@link #get()} or {@link #refresh()}.
+     *
+     * @param source The source to build collections from. Must be usable outside the request thread.
+     */
+    public SpeciesDataCollectionHolder(SpeciesDataSource source) {
+        this(source, 0, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Creates a new holder, rebuilding at a fixed interval. The first
+     * collection is built immediately, in the background.
+     *
+     * @param source The source to build collections from. Must be usable outside the request thread.
+     * @param refreshInterval The time between the end of one scheduled rebuild and the start of the next. If 0 or less, there are no scheduled rebuilds.
+     * @param unit The unit of the given interval.
+     */
+    public SpeciesDataCollectionHolder(SpeciesDataSource source, long refreshInterval, TimeUnit unit) {
+        this.source = source;
+        this.executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "species-data-refresh-" + THREADS.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        if (refreshInterval > 0) {
+            executor.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    refresh();
+                }
+            }, 0, refreshInterval, unit);
+        }
+    }
+
+    /**
+     * Registers this holder as an OpenCms event listener, so that the given
+     * events trigger a rebuild.
+     *
+     * @param events The events that should trigger a rebuild, e.g. {@link #DEFAULT_EVENTS}.
+     * @return This instance.
+     */
+    public SpeciesDataCollectionHolder listen(int[] events) {
+        OpenCms.addCmsEventListener(this, events);
+        return this;
+    }
+
+    /**
+     * Triggers a rebuild on any of the events this holder listens for.
+     *
+     * @param event The event.
+     * @see #listen(int[])
+     */
+    @Override
+    public void cmsEvent(CmsEvent event) {
+        refresh();
+    }
+
+    /**
+     * Gets the current collection.
+     * <p>
+     * Returns immediately, except on the very first call(s), which wait
+     * until the first collection has been built. If that fails, an empty
+     * collection is returned (and the next rebuild will try again).
+     *
+     * @return The current collection.
+     */
+    public SpeciesDataCollection get() {
+        SpeciesDataCollection collection = current;
+        if (collection != null) {
+            return collection;
+        }
+        refresh();
+        try {
+            warmedUp.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        collection = current;
+        return collection != null ? collection : new SpeciesDataCollection();
+    }
+
+    /**
+     * Triggers a rebuild in the background, and returns immediately.
+     * <p>
+     * If a rebuild is already running, another one is run when it
+     * completes; any further triggers in the meantime have no additional
+     * effect.
+     *
+     * @return <code>true</code> if a new rebuild was started, <code>false</code> if one was already running (or this holder is shut down).
+     */
+    public boolean refresh() {
+        triggers.incrementAndGet();
+        while (true) {
+            int s = state.get();
+            if (s == IDLE) {
+                if (state.compareAndSet(IDLE, RUNNING)) {
+                    try {
+                        executor.execute(rebuildTask);
+                    } catch (RejectedExecutionException e) {
+                        // Shut down => nothing will run
+                        state.set(IDLE);
+                        return false;
+                    }
+                    return true;
+                }
+            } else if (s == RUNNING_PENDING || state.compareAndSet(RUNNING, RUNNING_PENDING)) {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Builds a new collection, and swaps it in if successful (complete).
+     */
+    private void rebuild() {
+        try {
+            SpeciesDataCollection collection = new SpeciesDataCollection(source);
+            SpeciesDataLoadReport report = collection.getLoadReport();
+            if (report != null && !report.isComplete()) {
+                // Keep serving the previous collection, if any
+                if (current == null) {
+                    current = collection;
+                    lastRefreshTime = System.currentTimeMillis();
+                }
+                lastFailure = new IOException("Incomplete load from " + report.getSource() + ": " 
+                        + report.getNumFailedFiles() + " of " + report.getNumFiles() + " files failed.", 
+                        report.getFailedFiles().isEmpty() ? report.getFailure() : report.getFailedFiles().get(0).getFailure());
+                failures.incrementAndGet();
+                return;
+            }
+            current = collection;
+            lastRefreshTime = System.currentTimeMillis();
+            lastFailure = null;
+            refreshes.incrementAndGet();
+        } catch (Exception e) {
+            // Keep serving the previous collection
+            lastFailure = e;
+            failures.incrementAndGet();
+        } catch (Error e) {
+            lastFailure = e;
+            failures.incrementAndGet();
+            throw e;
+        } finally {
+            warmedUp.countDown();
+        }
+    }
+
+    /**
+     * Stops the background thread, and unregisters this holder as an event
+     * listener. The current collection is still served by {@link #get()},
+     * but will no longer be rebuilt.
+     * <p>
+     * The process-wide metrics MBeans are shared by all holders, and are not
+     * unregistered here; see {@link SpeciesDataCollectionCache#shutdown()} and
+     * {@link SpeciesDataMetrics#unregisterAll()}.
+     */
+    public void shutdown() {
+        OpenCms.removeCmsEventListener(this);
+        executor.shutdownNow();
+        warmedUp.countDown();
+    }
+
+    /**
+     * @return <code>true</code> if a rebuild is currently running.
+     */
+    public boolean isRefreshing() { return state.get() != IDLE; }
+
+    /**
+     * @return The time the current collection was swapped in, in milliseconds since the epoch, or 0 if nothing has been built yet.
+     */
+    public long getLastRefreshTime() { return lastRefreshTime; }
+
+    /**
+     * @return The error that made the most recent rebuild fail, or <code>null</code> if it succeeded.
+     */
+    public Throwable getLastFailure() { return lastFailure; }
+
+    /**
+     * @return The number of successful rebuilds.
+     */
+    public long getRefreshCount() { return refreshes.get(); }
+
+    /**
+     * @return The number of failed rebuilds.
+     */
+    public long getFailureCount() { return failures.get(); }
+
+    /**
+     * @return The number of rebuild triggers, including those coalesced into an already running or pending rebuild.
+     */
+    public long getTriggerCount() { return triggers.get(); }
+}
@@ -0,0 +1,252 @@
+package no.seapop.data;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Pre-computed data link counts for a list of {@link SpeciesData} entries:
+ * per location, per data type, per species, per location and data type, per
+ * species and data type, and overall.
+ * <p>
+ * Per-type counts are held in plain arrays, indexed by type ordinal (see
+ * {@link SpeciesDataLinkType#getOrdinal()}), with the combined total for all
+ * types at the last position.
+ * <p>
+ * The counts mirror the list they were built from. If an entry is inserted
+ * into or removed from the list, the same must be done here, see
+ * {@link #insert(int, no.seapop.data.SpeciesData)} and
+ * {@link #remove(int, no.seapop.data.SpeciesData)}. Any other modification or
+ * re-ordering requires new counts.
+ *
+ * @author Paul-Inge Flakstad, Norwegian Polar Institute <flakstad at npolar.no>
+ */
+class SpeciesDataCounts {
+
+    /** The number of type slots, + 1 for the combined total. */
+    private static final int SLOTS = SpeciesDataLinkType.count() + 1;
+    /** The index of the combined total. */
+    private static final int TOTAL = SLOTS - 1;
+
+    /** Shared all-zero counts, for unknown locations. */
+    private static final int[] ZERO = new int[SLOTS];
+
+    /** Counts per location ID: type ordinal -> count. Locations without links are <code>null</code>. */
+    private int[][] byLocation;
+    /** Counts per data type, all locations combined. */
+    private final int[] byType;
+    /** Counts per species (by species index): type ordinal -> count. */
+    private final List<int[]> bySpecies;
+
+    /**
+     * Builds new counts for the given data entries.
+     *
+     * @param data The data entries to count links for. The position of each entry in this list is its species index.
+     */
+    SpeciesDataCounts(List<SpeciesData> data) {
+        byLocation = new int[SpeciesDataLink.getNumLocationIds()][];
+        byType = new int[SLOTS];
+        bySpecies = new ArrayList<int[]>(data.size() + 16);
+        for (int speciesIndex = 0; speciesIndex < data.size(); speciesIndex++) {
+            insert(speciesIndex, data.get(speciesIndex));
+        }
+    }
+
+    /**
+     * Creates a re-ordered copy of the given counts, without counting the 
+     * data links again.
+     *
+     * @param base The counts to copy.
+     * @param permutation The new order: species indexes in the given counts, by new species index.
+     */
+    SpeciesDataCounts(SpeciesDataCounts base, int[] permutation) {
+        byLocation = new int[base.byLocation.length][];
+        for (int locationId = 0; locationId < byLocation.length; locationId++) {
+            if (base.byLocation[locationId] != null) {
+                byLocation[locationId] = Arrays.copyOf(base.byLocation[locationId], SLOTS);
+            }
+        }
+        byType = Arrays.copyOf(base.byType, SLOTS);
+        bySpecies = new ArrayList<int[]>(permutation.length + 16);
+        for (int speciesIndex = 0; speciesIndex < permutation.length; speciesIndex++) {
+            bySpecies.add(Arrays.copyOf(base.bySpecies.get(permutation[speciesIndex]), SLOTS));
+        }
+    }
+
+    /**
+     * Adds the counts for the given data entry, which was inserted at the
+     * given position. Entries at or after that position are shifted up by one.
+     *
+     * @param speciesIndex The position of the new entry.
+     * @param entry The new entry.
+     */
+    final void insert(int speciesIndex, SpeciesData entry) {
+        bySpecies.add(speciesIndex, new int[SLOTS]);
+        count(speciesIndex, entry, 1);
+    }
+
+    /**
+     * Subtracts the counts for the given data entry, which was removed from
+     * the given position. Entries after that position are shifted down by one.
+     *
+     * @param speciesIndex The position of the removed entry.
+     * @param entry The removed entry.
+     */
+    void remove(int speciesIndex, SpeciesData entry) {
+        count(speciesIndex, entry, -1);
+        bySpecies.remove(speciesIndex);
+    }
+
+    /**
+     * Adds the given delta to the counts, for each data link in the given entry.
+     */
+    private void count(int speciesIndex, SpeciesData entry, int delta) {
+        int[] speciesCounts = bySpecies.get(speciesIndex);
+        Iterator<SpeciesDataLink> iDataLinks = entry.getDataLinks().iterator();
+        while (iDataLinks.hasNext()) {
+            SpeciesDataLink sdl = iDataLinks.next();
+            int locationId = sdl.getLocationId();
+            if (locationId < 0) {
+                continue; // missing location => ignore
+            }
+            if (locationId >= byLocation.length) {
+                byLocation = Arrays.copyOf(byLocation, Math.max(locationId + 1, SpeciesDataLink.getNumLocationIds()));
+            }
+            int ordinal = sdl.getType().getOrdinal();
+
+            int[] locationCounts = byLocation[locationId];
+            if (locationCounts == null) {
+                locationCounts = new int[SLOTS];
+                byLocation[locationId] = locationCounts;
+            }
+            locationCounts[ordinal] += delta;
+            locationCounts[TOTAL] += delta;
+            byType[ordinal] += delta;
+            byType[TOTAL] += delta;
+            speciesCounts[ordinal] += delta;
+            speciesCounts[TOTAL] += delta;
+        }
+    }
+
+    /**
+     * Gets the counts for the given location.
+     */
+    private int[] locationCounts(String location) {
+        return locationCounts(SpeciesDataLink.getLocationId(location));
+    }
+
+    /**
+     * Gets the counts for the given location ID.
+     */
+    private int[] locationCounts(int locationId) {
+        if (locationId < 0 || locationId >= byLocation.length || byLocation[locationId] == null) {
+            return ZERO;
+        }
+        return byLocation[locationId];
+    }
+
+    /**
+     * Gets the count at the given type slot, or 0 if the type is unknown.
+     */
+    private static int read(int[] counts, String typeName) {
+        int ordinal = SpeciesDataLinkType.ordinalOf(typeName);
+        return ordinal < 0 ? 0 : counts[ordinal];
+    }
+
+    /**
+     * @return The number of data links of the given type on the given location.
+     */
+    int getCount(String location, String typeName) {
+        return read(locationCounts(location), typeName);
+    }
+
+    /**
+     * @return The number of data links of the given type (by ordinal) on the given location.
+     */
+    int getCount(String location, int typeOrdinal) {
+        return locationCounts(location)[typeOrdinal];
+    }
+
+    /**
+     * @return The number of data links (all types) on the given location.
+     */
+    int getCountByLocation(String location) {
+        return locationCounts(location)[TOTAL];
+    }
+
+    /**
+     * @return The number of data links of the given type (all locations).
+     */
+    int getCountByType(String typeName) {
+        return read(byType, typeName);
+    }
+
+    /**
+     * @return The number of data links of the given type for the given species (all locations).
+     */
+    int getCountBySpecies(int speciesIndex, String typeName) {
+        return read(bySpecies.get(speciesIndex), typeName);
+    }
+
+    /**
+     * @return The number of data links (all types) for the given species (all locations).
+     */
+    int getCountBySpecies(int speciesIndex) {
+        return bySpecies.get(speciesIndex)[TOTAL];
+    }
+
+    /**
+     * @return The total number of data links.
+     */
+    int getCount() {
+        return byType[TOTAL];
+    }
+
+    /**
+     * Gets the per-type counts for the given location, in the given type
+     * order, followed by the combined total for those types.
+     * <p>
+     * A type listed more than once is counted at its first position only
+     * (later positions are 0), so that the combined total is always the sum
+     * of the per-type counts.
+     *
+     * @param location The location.
+     * @param typeNames The type names, in order.
+     * @return The per-type counts, plus the combined total at the last position.
+     */
+    int[] getTotals(String location, List<String> typeNames) {
+        return getTotals(location, typeNames, null);
+    }
+
+    /**
+     * Gets the per-type counts for the given location, in the given type
+     * order, followed by the combined total for those types, except the
+     * given excluded types.
+     * <p>
+     * A type listed more than once is counted at its first position only
+     * (later positions are 0). Excluded types still get their per-type count.
+     *
+     * @param location The location.
+     * @param typeNames The type names, in order.
+     * @param excluded The types to leave out of the combined total, by ordinal, or <code>null</code>.
+     * @return The per-type counts, plus the combined total at the last position.
+     */
+    int[] getTotals(String location, List<String> typeNames, boolean[] excluded) {
+        int[] totals = new int[typeNames.size()+1];
+        int[] locationCounts = locationCounts(location);
+        boolean[] counted = new boolean[SpeciesDataLinkType.count()];
+        for (int i = 0; i < typeNames.size(); i++) {
+            int ordinal = SpeciesDataLinkType.ordinalOf(typeNames.get(i));
+            if (ordinal < 0 || counted[ordinal]) {
+                continue; // Unknown type, or already counted => 0
+            }
+            counted[ordinal] = true;
+            totals[i] = locationCounts[ordinal];
+            if (excluded == null || !excluded[ordinal]) {
+                totals[typeNames.size()] += totals[i];
+            }
+        }
+        return totals;
+    }
+}
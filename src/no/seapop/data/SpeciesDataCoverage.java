@@ -0,0 +1,247 @@
+package no.seapop.data;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Time series coverage statistics for a list of {@link SpeciesData} entries:
+ * the number of years covered by the data links, aggregated per location, per
+ * data type, per species and in total.
+ * <p>
+ * All statistics are computed once, when the instance is created, from the
+ * numeric number of years of each data link (see
+ * {@link SpeciesDataLink#getNumYearsValue()}). Data links with an unknown
+ * number of years are counted as links, but not included in any of the year
+ * statistics.
+ * <p>
+ * The statistics are a read-only snapshot of the list they were computed
+ * from. If the list is modified or re-ordered, new statistics must be
+ * computed.
+ *
+ * @author Paul-Inge Flakstad, Norwegian Polar Institute <flakstad at npolar.no>
+ */
+public class SpeciesDataCoverage {
+
+    /** The highest number of years with its own histogram bucket. Higher numbers go in this bucket too. */
+    public static final int HISTOGRAM_MAX_YEARS = 100;
+
+    /** The statistics, by location ID. */
+    private final Stats[] byLocation;
+    /** The statistics, by type ordinal. */
+    private final Stats[] byType;
+    /** The statistics, by species index. */
+    private final Stats[] bySpecies;
+    /** The statistics for all data links. */
+    private final Stats total;
+
+    /**
+     * Coverage statistics for a set of data links.
+     */
+    public static class Stats {
+        /** Shared instance for sets without any data links. */
+        static final Stats EMPTY = new Stats(new Accumulator());
+
+        private final int numLinks;
+        private final long totalYears;
+        /** The known numbers of years, in ascending order. */
+        private final int[] years;
+        /** Histogram: number of links by number of years, with the last bucket also holding all higher numbers. */
+        private final int[] histogram;
+
+        private Stats(Accumulator acc) {
+            numLinks = acc.numLinks;
+            totalYears = acc.totalYears;
+            years = Arrays.copyOf(acc.years, acc.numYears);
+            Arrays.sort(years);
+            int maxYears = years.length == 0 ? 0 : years[years.length - 1];
+            histogram = new int[Math.min(maxYears, HISTOGRAM_MAX_YEARS) + 1];
+            for (int i = 0; i < years.length; i++) {
+                histogram[Math.min(years[i], HISTOGRAM_MAX_YEARS)]++;
+            }
+        }
+
+        /**
+         * @return The number of data links, including those with an unknown number of years.
+         */
+        public int getNumLinks() { return numLinks; }
+
+        /**
+         * @return The number of data links with a known number of years.
+         */
+        public int getNumLinksWithYears() { return years.length; }
+
+        /**
+         * @return The sum of the (known) number of years of all data links.
+         */
+        public long getTotalYears() { return totalYears; }
+
+        /**
+         * @return The highest (known) number of years, or {@link SpeciesDataLink#NUM_YEARS_UNKNOWN} if no data link has a known number of years.
+         */
+        public int getMaxYears() { return years.length == 0 ? SpeciesDataLink.NUM_YEARS_UNKNOWN : years[years.length - 1]; }
+
+        /**
+         * Gets the number of data links that cover at least the given number
+         * of years.
+         *
+         * @param minYears The minimum number of years.
+         * @return The number of data links that cover at least the given number of years.
+         */
+        public int getNumLinksWithAtLeast(int minYears) {
+            // Find the first position holding a value >= minYears
+            int low = 0;
+            int high = years.length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (years[mid] < minYears) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return years.length - low;
+        }
+
+        /**
+         * Gets the number of data links by number of years: position
+         * <code>n</code> holds the number of data links covering exactly
+         * <code>n</code> years. The last position, if it is
+         * {@link #HISTOGRAM_MAX_YEARS}, also holds all data links covering
+         * more years.
+         *
+         * @return A copy of the histogram.
+         */
+        public int[] getHistogram() { return histogram.clone(); }
+    }
+
+    /**
+     * Collects the values for a single {@link Stats} instance.
+     */
+    private static class Accumulator {
+        int numLinks = 0;
+        long totalYears = 0;
+        int[] years = new int[4];
+        int numYears = 0;
+
+        void add(int numYearsValue) {
+            numLinks++;
+            if (numYearsValue == SpeciesDataLink.NUM_YEARS_UNKNOWN) {
+                return;
+            }
+            if (numYears == years.length) {
+                years = Arrays.copyOf(years, numYears * 2);
+            }
+            years[numYears++] = numYearsValue;
+            totalYears += numYearsValue;
+        }
+    }
+
+    /**
+     * Computes the statistics for the given data entries.
+     *
+     * @param data The data entries. The position of each entry in this list is its species index.
+     */
+    SpeciesDataCoverage(List<SpeciesData> data) {
+        Accumulator[] locationAccs = new Accumulator[SpeciesDataLink.getNumLocationIds()];
+        Accumulator[] typeAccs = new Accumulator[SpeciesDataLinkType.count()];
+        Accumulator totalAcc = new Accumulator();
+        bySpecies = new Stats[data.size()];
+
+        for (int speciesIndex = 0; speciesIndex < data.size(); speciesIndex++) {
+            Accumulator speciesAcc = new Accumulator();
+            Iterator<SpeciesDataLink> iDataLinks = data.get(speciesIndex).getDataLinks().iterator();
+            while (iDataLinks.hasNext()) {
+                SpeciesDataLink sdl = iDataLinks.next();
+                int numYears = sdl.getNumYearsValue();
+                int locationId = sdl.getLocationId();
+                if (locationId >= 0 && locationId < locationAccs.length) { // missing location (-1) => ignore
+                    accumulator(locationAccs, locationId).add(numYears);
+                }
+                accumulator(typeAccs, sdl.getType().getOrdinal()).add(numYears);
+                speciesAcc.add(numYears);
+                totalAcc.add(numYears);
+            }
+            bySpecies[speciesIndex] = new Stats(speciesAcc);
+        }
+
+        byLocation = toStats(locationAccs);
+        byType = toStats(typeAccs);
+        total = new Stats(totalAcc);
+    }
+
+    /**
+     * Creates a re-ordered copy of the given statistics. The statistics are 
+     * immutable, and so shared, not computed again.
+     *
+     * @param base The statistics to copy.
+     * @param permutation The new order: species indexes in the given statistics, by new species index.
+     */
+    SpeciesDataCoverage(SpeciesDataCoverage base, int[] permutation) {
+        bySpecies = new Stats[permutation.length];
+        for (int speciesIndex = 0; speciesIndex < permutation.length; speciesIndex++) {
+            bySpecies[speciesIndex] = base.bySpecies[permutation[speciesIndex]];
+        }
+        byLocation = base.byLocation;
+        byType = base.byType;
+        total = base.total;
+    }
+
+    /**
+     * Gets the accumulator at the given position, creating it if necessary.
+     */
+    private static Accumulator accumulator(Accumulator[] accs, int i) {
+        if (accs[i] == null) {
+            accs[i] = new Accumulator();
+        }
+        return accs[i];
+    }
+
+    /**
+     * Converts the given accumulators to statistics.
+     */
+    private static Stats[] toStats(Accumulator[] accs) {
+        Stats[] stats = new Stats[accs.length];
+        for (int i = 0; i < accs.length; i++) {
+            stats[i] = accs[i] == null ? Stats.EMPTY : new Stats(accs[i]);
+        }
+        return stats;
+    }
+
+    /**
+     * Gets the statistics for all data links on the given location.
+     *
+     * @param location The location.
+     * @return The statistics for all data links on the given location.
+     */
+    public Stats getByLocation(String location) {
+        int locationId = SpeciesDataLink.getLocationId(location);
+        return locationId < 0 || locationId >= byLocation.length ? Stats.EMPTY : byLocation[locationId];
+    }
+
+    /**
+     * Gets the statistics for all data links of the given type.
+     *
+     * @param typeName The type name, e.g. "Population".
+     * @return The statistics for all data links of the given type.
+     */
+    public Stats getByType(String typeName) {
+        int ordinal = SpeciesDataLinkType.ordinalOf(typeName);
+        return ordinal < 0 ? Stats.EMPTY : byType[ordinal];
+    }
+
+    /**
+     * Gets the statistics for all data links of the given species.
+     *
+     * @param speciesIndex The species index.
+     * @return The statistics for all data links of the given species.
+     */
+    public Stats getBySpecies(int speciesIndex) { return bySpecies[speciesIndex]; }
+
+    /**
+     * Gets the statistics for all data links.
+     *
+     * @return The statistics for all data links.
+     */
+    public Stats getTotal() { return total; }
+}
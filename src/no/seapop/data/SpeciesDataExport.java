@@ -0,0 +1,331 @@
+package no.seapop.data;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Streaming export of a {@link SpeciesDataCollection}, as JSON or CSV.
+ * <p>
+ * Everything is written directly to the given writer or stream, as it is
+ * read from the collection; no intermediate document tree is built.
+ * Streams are written as UTF-8, and are flushed but not closed.
+ * <p>
+ * JSON layout:
+ * <pre>
+ * {
+ *   "types": ["Population", ...],
+ *   "locations": [
+ *     { "name": "Hornøya", "totals": { "Population": 12, ..., "total": 40 } }, ...
+ *   ],
+ *   "species": [
+ *     { "uri": "/...", "name": "Lomvi", "group": 0,
+ *       "pelagic": true, "coastalBound": false, "surfaceBound": false, "diving": true, "iceBound": false,
+ *       "links": [
+ *         { "location": "Hornøya", "type": "Population", "url": "http://...", "numYears": "25", "comment": null }, ...
+ *       ]
+ *     }, ...
+ *   ]
+ * }
+ * </pre>
+ * <p>
+ * CSV is written as two separate tables (RFC 4180, with a header row): one
+ * row per data link (see {@link #writeLinksCsv(no.seapop.data.SpeciesDataCollection, java.io.Writer)}),
+ * and one row per location (see {@link #writeLocationTotalsCsv(no.seapop.data.SpeciesDataCollection, java.io.Writer)}).
+ *
+ * @author Paul-Inge Flakstad, Norwegian Polar Institute <flakstad at npolar.no>
+ */
+public class SpeciesDataExport {
+
+    /** The charset used when writing to streams. */
+    public static final Charset CHARSET = Charset.forName("UTF-8");
+
+    /** CSV line separator, as per RFC 4180. */
+    private static final String CSV_LINE_END = "\r\n";
+    /** Hex digits, for JSON unicode escapes. */
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    /**
+     * Prevents instantiation.
+     */
+    private SpeciesDataExport() {}
+
+    /**
+     * Writes the given collection as JSON, encoded as UTF-8, to the given stream.
+     *
+     * @see #writeJson(no.seapop.data.SpeciesDataCollection, java.io.Writer)
+     */
+    public static void writeJson(SpeciesDataCollection collection, OutputStream out) throws IOException {
+        Writer w = writer(out);
+        writeJson(collection, w);
+        w.flush();
+    }
+
+    /**
+     * Writes the given collection as JSON: data types, locations (with
+     * per-type totals) and species (with group number, habitat flags and
+     * data links), in collection order.
+     *
+     * @param collection The collection to export.
+     * @param out The writer to write to.
+     * @throws IOException If writing fails.
+     */
+    public static void writeJson(SpeciesDataCollection collection, Writer out) throws IOException {
+        List<String> types = SpeciesDataLinkType.TYPES_ORDER_DEFAULT;
+
+        out.write("{\"types\":[");
+        for (int t = 0; t < types.size(); t++) {
+            if (t > 0) {
+                out.write(',');
+            }
+            writeJsonString(out, types.get(t));
+        }
+
+        out.write("],\"locations\":[");
+        List<String> locations = collection.getLocations();
+        for (int l = 0; l < locations.size(); l++) {
+            String location = locations.get(l);
+            int[] totals = collection.getTotals(location, types);
+            if (l > 0) {
+                out.write(',');
+            }
+            out.write("{\"name\":");
+            writeJsonString(out, location);
+            out.write(",\"totals\":{");
+            for (int t = 0; t < types.size(); t++) {
+                writeJsonString(out, types.get(t));
+                out.write(':');
+                out.write(Integer.toString(totals[t]));
+                out.write(',');
+            }
+            out.write("\"total\":");
+            out.write(Integer.toString(totals[types.size()]));
+            out.write("}}");
+        }
+
+        out.write("],\"species\":[");
+        List<SpeciesData> data = collection.get();
+        for (int s = 0; s < data.size(); s++) {
+            SpeciesData speciesData = data.get(s);
+            if (s > 0) {
+                out.write(',');
+            }
+            out.write("{\"uri\":");
+            writeJsonString(out, speciesData.getVfsUri());
+            out.write(",\"name\":");
+            writeJsonString(out, speciesData.getName());
+            out.write(",\"group\":");
+            out.write(Integer.toString(speciesData.getGroupNumber()));
+            out.write(",\"pelagic\":");
+            out.write(String.valueOf(speciesData.isPelagic()));
+            out.write(",\"coastalBound\":");
+            out.write(String.valueOf(speciesData.isCoastalBound()));
+            out.write(",\"surfaceBound\":");
+            out.write(String.valueOf(speciesData.isSurfaceBound()));
+            out.write(",\"diving\":");
+            out.write(String.valueOf(speciesData.isDiving()));
+            out.write(",\"iceBound\":");
+            out.write(String.valueOf(speciesData.isIceBound()));
+            out.write(",\"links\":[");
+            Iterator<SpeciesDataLink> iDataLinks = speciesData.getDataLinks().iterator();
+            boolean first = true;
+            while (iDataLinks.hasNext()) {
+                SpeciesDataLink dataLink = iDataLinks.next();
+                if (!first) {
+                    out.write(',');
+                }
+                first = false;
+                out.write("{\"location\":");
+                writeJsonString(out, dataLink.getLocation());
+                out.write(",\"type\":");
+                writeJsonString(out, dataLink.getType().getName());
+                out.write(",\"url\":");
+                writeJsonString(out, dataLink.getUrl());
+                out.write(",\"numYears\":");
+                writeJsonString(out, dataLink.getNumYears());
+                out.write(",\"comment\":");
+                writeJsonString(out, dataLink.getComment());
+                out.write('}');
+            }
+            out.write("]}");
+        }
+        out.write("]}");
+    }
+
+    /**
+     * Writes the data links in the given collection as CSV, encoded as UTF-8,
+     * to the given stream.
+     *
+     * @see #writeLinksCsv(no.seapop.data.SpeciesDataCollection, java.io.Writer)
+     */
+    public static void writeLinksCsv(SpeciesDataCollection collection, OutputStream out) throws IOException {
+        Writer w = writer(out);
+        writeLinksCsv(collection, w);
+        w.flush();
+    }
+
+    /**
+     * Writes the data links in the given collection as CSV, one row per data
+     * link, in collection order. Each row also holds the species' URI, name
+     * and group number. Species without data links are not included.
+     * <p>
+     * Columns: uri, name, group, location, type, url, numYears, comment
+     *
+     * @param collection The collection to export.
+     * @param out The writer to write to.
+     * @throws IOException If writing fails.
+     */
+    public static void writeLinksCsv(SpeciesDataCollection collection, Writer out) throws IOException {
+        out.write("uri,name,group,location,type,url,numYears,comment");
+        out.write(CSV_LINE_END);
+        List<SpeciesData> data = collection.get();
+        for (int s = 0; s < data.size(); s++) {
+            SpeciesData speciesData = data.get(s);
+            String group = Integer.toString(speciesData.getGroupNumber());
+            Iterator<SpeciesDataLink> iDataLinks = speciesData.getDataLinks().iterator();
+            while (iDataLinks.hasNext()) {
+                SpeciesDataLink dataLink = iDataLinks.next();
+                writeCsvField(out, speciesData.getVfsUri());
+                out.write(',');
+                writeCsvField(out, speciesData.getName());
+                out.write(',');
+                out.write(group);
+                out.write(',');
+                writeCsvField(out, dataLink.getLocation());
+                out.write(',');
+                writeCsvField(out, dataLink.getType().getName());
+                out.write(',');
+                writeCsvField(out, dataLink.getUrl());
+                out.write(',');
+                writeCsvField(out, dataLink.getNumYears());
+                out.write(',');
+                writeCsvField(out, dataLink.getComment());
+                out.write(CSV_LINE_END);
+            }
+        }
+    }
+
+    /**
+     * Writes the per-location totals in the given collection as CSV, encoded
+     * as UTF-8, to the given stream.
+     *
+     * @see #writeLocationTotalsCsv(no.seapop.data.SpeciesDataCollection, java.io.Writer)
+     */
+    public static void writeLocationTotalsCsv(SpeciesDataCollection collection, OutputStream out) throws IOException {
+        Writer w = writer(out);
+        writeLocationTotalsCsv(collection, w);
+        w.flush();
+    }
+
+    /**
+     * Writes the per-location totals in the given collection as CSV, one row
+     * per location, in collection order.
+     * <p>
+     * Columns: location, one column per data type (in default order), total
+     *
+     * @param collection The collection to export.
+     * @param out The writer to write to.
+     * @throws IOException If writing fails.
+     */
+    public static void writeLocationTotalsCsv(SpeciesDataCollection collection, Writer out) throws IOException {
+        List<String> types = SpeciesDataLinkType.TYPES_ORDER_DEFAULT;
+        out.write("location");
+        for (int t = 0; t < types.size(); t++) {
+            out.write(',');
+            writeCsvField(out, types.get(t));
+        }
+        out.write(",total");
+        out.write(CSV_LINE_END);
+
+        List<String> locations = collection.getLocations();
+        for (int l = 0; l < locations.size(); l++) {
+            String location = locations.get(l);
+            int[] totals = collection.getTotals(location, types);
+            writeCsvField(out, location);
+            for (int t = 0; t < totals.length; t++) {
+                out.write(',');
+                out.write(Integer.toString(totals[t]));
+            }
+            out.write(CSV_LINE_END);
+        }
+    }
+
+    /**
+     * Creates a buffered UTF-8 writer for the given stream.
+     */
+    private static Writer writer(OutputStream out) {
+        return new BufferedWriter(new OutputStreamWriter(out, CHARSET), 8192);
+    }
+
+    /**
+     * Writes the given string as a JSON string literal, or <code>null</code>.
+     * <p>
+     * In addition to the required escapes, U+2028 and U+2029 are escaped, so
+     * that the output is also safe to embed in JavaScript.
+     */
+    static void writeJsonString(Writer out, String s) throws IOException {
+        if (s == null) {
+            out.write("null");
+            return;
+        }
+        out.write('"');
+        int start = 0;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c >= 0x20 && c != '"' && c != '\\' && c != '\u2028' && c != '\u2029') {
+                continue;
+            }
+            out.write(s, start, i - start);
+            start = i + 1;
+            switch (c) {
+                case '"':   out.write("\\\""); break;
+                case '\\':  out.write("\\\\"); break;
+                case '\n':  out.write("\\n"); break;
+                case '\r':  out.write("\\r"); break;
+                case '\t':  out.write("\\t"); break;
+                default:
+                    out.write("\\u");
+                    out.write(HEX[(c >> 12) & 0xF]);
+                    out.write(HEX[(c >> 8) & 0xF]);
+                    out.write(HEX[(c >> 4) & 0xF]);
+                    out.write(HEX[c & 0xF]);
+            }
+        }
+        out.write(s, start, s.length() - start);
+        out.write('"');
+    }
+
+    /**
+     * Writes the given string as a CSV field, quoted if necessary. A
+     * <code>null</code> string is written as an empty field.
+     */
+    static void writeCsvField(Writer out, String s) throws IOException {
+        if (s == null) {
+            return;
+        }
+        boolean quote = false;
+        for (int i = 0; i < s.length() && !quote; i++) {
+            char c = s.charAt(i);
+            quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!quote) {
+            out.write(s);
+            return;
+        }
+        out.write('"');
+        int start = 0;
+        for (int i = 0; i < s.length(); i++) {
+            if (s.charAt(i) == '"') {
+                out.write(s, start, i + 1 - start); // Including the quote ...
+                start = i; // ... which is then written again
+            }
+        }
+        out.write(s, start, s.length() - start);
+        out.write('"');
+    }
+}
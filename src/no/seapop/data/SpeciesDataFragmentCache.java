@@ -0,0 +1,177 @@
+package no.seapop.data;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Cache of rendered HTML fragments, stored as encoded bytes (and, on demand,
+ * as pre-gzipped bytes).
+ * <p>
+ * Each {@link SpeciesDataCollection} has its own fragment cache, so fragments
+ * are discarded together with the collection they were rendered from. The
+ * collection version is part of the key, and the collection clears the cache
+ * whenever its version changes. The {@link SpeciesDataLabels#getGeneration()
+ * labels generation} is part of the key too, so that fragments rendered with
+ * discarded labels are never served.
+ *
+ * @author Paul-Inge Flakstad, Norwegian Polar Institute <flakstad at npolar.no>
+ */
+class SpeciesDataFragmentCache {
+
+    /** The charset used to encode fragments. */
+    static final Charset CHARSET = Charset.forName("UTF-8");
+
+    /** The maximum number of fragments to keep. */
+    static final int MAX_SIZE = 64;
+
+    /** The fragments, in access order (least recently used first). */
+    private final Map<Key, Fragment> fragments = new LinkedHashMap<Key, Fragment>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, Fragment> eldest) {
+            return size() > MAX_SIZE;
+        }
+    };
+
+    /**
+     * Fragment key: collection version and labels generation, plus all
+     * render parameters.
+     */
+    static class Key {
+        private final long version;
+        private final long labelsGeneration;
+        private final Locale locale;
+        private final String dataType;
+        private final List<String> dataTypeTotals;
+        private final Set<String> excludedDataTypes;
+        private final List<String> locationsInOrder;
+        private final int hash;
+
+        Key(long version, long labelsGeneration, Locale locale, String dataType, List<String> dataTypeTotals, List<String> excludedDataTypes, List<String> locationsInOrder) {
+            this.version = version;
+            this.labelsGeneration = labelsGeneration;
+            this.locale = locale;
+            this.dataType = dataType;
+            this.dataTypeTotals = dataTypeTotals == null ? null : new ArrayList<String>(dataTypeTotals);
+            this.excludedDataTypes = excludedDataTypes == null ? new HashSet<String>(0) : new HashSet<String>(excludedDataTypes);
+            this.locationsInOrder = locationsInOrder == null ? null : new ArrayList<String>(locationsInOrder);
+            this.hash = Arrays.hashCode(new Object[] { version, labelsGeneration, locale, dataType, this.dataTypeTotals, this.excludedDataTypes, this.locationsInOrder });
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key))
+                return false;
+            if (obj == this)
+                return true;
+
+            Key rhs = (Key) obj;
+            return this.version == rhs.version
+                    && this.labelsGeneration == rhs.labelsGeneration
+                    && equal(this.locale, rhs.locale)
+                    && equal(this.dataType, rhs.dataType)
+                    && equal(this.dataTypeTotals, rhs.dataTypeTotals)
+                    && this.excludedDataTypes.equals(rhs.excludedDataTypes)
+                    && equal(this.locationsInOrder, rhs.locationsInOrder);
+        }
+
+        private static boolean equal(Object a, Object b) {
+            return a == null ? b == null : a.equals(b);
+        }
+    }
+
+    /**
+     * A rendered fragment.
+     */
+    static class Fragment {
+        /** The encoded fragment. */
+        private final byte[] bytes;
+        /** The gzipped fragment, created on first request. */
+        private volatile byte[] gzipped = null;
+
+        private Fragment(String html) {
+            bytes = html.getBytes(CHARSET);
+        }
+
+        /**
+         * @return The encoded fragment. Must not be modified.
+         */
+        byte[] getBytes() {
+            return bytes;
+        }
+
+        /**
+         * @return The gzipped encoded fragment. Must not be modified.
+         */
+        byte[] getGzippedBytes() {
+            byte[] gz = gzipped;
+            if (gz == null) {
+                try {
+                    ByteArrayOutputStream bytesOut = new ByteArrayOutputStream(bytes.length / 4 + 64);
+                    GZIPOutputStream gzipOut = new GZIPOutputStream(bytesOut);
+                    gzipOut.write(bytes);
+                    gzipOut.close();
+                    gz = bytesOut.toByteArray();
+                } catch (IOException ioe) {
+                    // Should never happen: ByteArrayOutputStream does not throw
+                    throw new IllegalStateException(ioe);
+                }
+                gzipped = gz;
+            }
+            return gz;
+        }
+    }
+
+    /**
+     * Gets the cached fragment for the given key.
+     *
+     * @param key The key.
+     * @return The cached fragment, or <code>null</code> if none.
+     */
+    synchronized Fragment get(Key key) {
+        return fragments.get(key);
+    }
+
+    /**
+     * Caches the given rendered HTML under the given key.
+     *
+     * @param key The key.
+     * @param html The rendered HTML.
+     * @return The new fragment.
+     */
+    Fragment put(Key key, String html) {
+        Fragment fragment = new Fragment(html);
+        synchronized (this) {
+            fragments.put(key, fragment);
+        }
+        return fragment;
+    }
+
+    /**
+     * Removes all cached fragments.
+     */
+    synchronized void clear() {
+        fragments.clear();
+    }
+
+    /**
+     * @return The number of cached fragments.
+     */
+    synchronized int size() {
+        return fragments.size();
+    }
+}
@@ -0,0 +1,99 @@
+package no.seapop.data;
+
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Bitset index of a list of {@link SpeciesData} entries, by habitat flag and
+ * by group number.
+ * <p>
+ * Bit <code>i</code> in each set represents the species at position
+ * <code>i</code> in the list, so filters can be combined using plain bitset
+ * operations (<code>and</code>, <code>or</code>, <code>andNot</code>).
+ * <p>
+ * The index is a read-only snapshot of the list it was built from. If the list
+ * is modified or re-ordered, a new index must be built.
+ *
+ * @author Paul-Inge Flakstad, Norwegian Polar Institute <flakstad at npolar.no>
+ */
+class SpeciesDataHabitatIndex {
+
+    /** The lowest possible group number (species not in any group). */
+    private static final int MIN_GROUP_NUMBER = -1;
+
+    /** The number of species. */
+    private final int numSpecies;
+    /** The species, by habitat flag bit position. */
+    private final BitSet[] byFlag;
+    /** The species, by group number (offset by {@link #MIN_GROUP_NUMBER}). */
+    private final BitSet[] byGroup;
+
+    /**
+     * Builds a new index.
+     *
+     * @param data The data entries to index.
+     */
+    SpeciesDataHabitatIndex(List<SpeciesData> data) {
+        numSpecies = data.size();
+        byFlag = new BitSet[SpeciesData.NUM_HABITAT_FLAGS];
+        for (int i = 0; i < byFlag.length; i++) {
+            byFlag[i] = new BitSet(numSpecies);
+        }
+        BitSet[] groups = new BitSet[0];
+        for (int speciesIndex = 0; speciesIndex < numSpecies; speciesIndex++) {
+            SpeciesData speciesData = data.get(speciesIndex);
+            int habitat = speciesData.getHabitat();
+            for (int i = 0; i < byFlag.length; i++) {
+                if ((habitat & (1 << i)) != 0) {
+                    byFlag[i].set(speciesIndex);
+                }
+            }
+            int group = speciesData.getGroupNumber() - MIN_GROUP_NUMBER;
+            if (group >= groups.length) {
+                BitSet[] grown = new BitSet[group + 1];
+                System.arraycopy(groups, 0, grown, 0, groups.length);
+                groups = grown;
+            }
+            if (groups[group] == null) {
+                groups[group] = new BitSet(numSpecies);
+            }
+            groups[group].set(speciesIndex);
+        }
+        byGroup = groups;
+    }
+
+    /**
+     * Gets the species that have all the given habitat flags.
+     *
+     * @param habitatMask The habitat flags, as a bitmask of {@link SpeciesData} <code>HABITAT_*</code> values. If zero, all species are returned.
+     * @return A new set, holding the indexes of all species that have all the given habitat flags.
+     */
+    BitSet getSpecies(int habitatMask) {
+        BitSet species = new BitSet(numSpecies);
+        species.set(0, numSpecies);
+        for (int i = 0; i < byFlag.length; i++) {
+            if ((habitatMask & (1 << i)) != 0) {
+                species.and(byFlag[i]);
+            }
+        }
+        if ((habitatMask >>> byFlag.length) != 0) {
+            species.clear(); // Unknown flag => no species can have it
+        }
+        return species;
+    }
+
+    /**
+     * Gets the species in the given group.
+     *
+     * @param groupNumber The group number.
+     * @return A new set, holding the indexes of all species in the given group.
+     * @see SpeciesData#getGroupNumber()
+     */
+    BitSet getSpeciesInGroup(int groupNumber) {
+        int group = groupNumber - MIN_GROUP_NUMBER;
+        if (group < 0 || group >= byGroup.length || byGroup[group] == null) {
+            return new BitSet();
+        }
+        return (BitSet)byGroup[group].clone();
+    }
+}
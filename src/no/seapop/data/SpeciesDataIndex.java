@@ -0,0 +1,264 @@
+package no.seapop.data;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Inverted index over the data links in a list of {@link SpeciesData} entries:
+ * species (by position in the list) &rarr; location (by ID) &rarr; data
+ * links, with the links in each cell also grouped by type.
+ * <p>
+ * The index mirrors the list it was built from. If an entry is inserted into
+ * or removed from the list, the same must be done here, see
+ * {@link #insert(int, no.seapop.data.SpeciesData)} and {@link #remove(int)}.
+ * Any other modification or re-ordering requires a new index.
+ *
+ * @author Paul-Inge Flakstad, Norwegian Polar Institute <flakstad at npolar.no>
+ */
+class SpeciesDataIndex {
+
+    /** Shared empty cell, returned for species without links on a location. */
+    private static final Cell EMPTY_CELL = new Cell();
+
+    /** The cells, per species. Each array is indexed by location ID, and has a slot for every location the species has links for. */
+    private final List<Cell[]> cells;
+
+    /** The number of species with links, per location ID. */
+    private int[] numSpeciesByLocation;
+
+    /**
+     * A single table cell: all data links for one species on one location.
+     */
+    static class Cell {
+        /** The data links, in their original order. */
+        private final List<SpeciesDataLink> links;
+        /** The data links, grouped by type ordinal. Slots for types without links are <code>null</code>. */
+        private final List<SpeciesDataLink>[] linksByType;
+
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        private Cell() {
+            links = Collections.emptyList();
+            linksByType = new List[SpeciesDataLinkType.count()];
+        }
+
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        private Cell(List<SpeciesDataLink> links) {
+            this.links = Collections.unmodifiableList(links);
+            this.linksByType = new List[SpeciesDataLinkType.count()];
+            Iterator<SpeciesDataLink> i = links.iterator();
+            while (i.hasNext()) {
+                SpeciesDataLink sdl = i.next();
+                int ordinal = sdl.getType().getOrdinal();
+                if (linksByType[ordinal] == null) {
+                    linksByType[ordinal] = new ArrayList<SpeciesDataLink>(1);
+                }
+                linksByType[ordinal].add(sdl);
+            }
+            for (int ordinal = 0; ordinal < linksByType.length; ordinal++) {
+                if (linksByType[ordinal] != null) {
+                    linksByType[ordinal] = Collections.unmodifiableList(linksByType[ordinal]);
+                }
+            }
+        }
+
+        /**
+         * Gets all data links in this cell.
+         *
+         * @return All data links in this cell, or an empty list.
+         */
+        List<SpeciesDataLink> getLinks() { return links; }
+
+        /**
+         * Gets the data links of the given type in this cell.
+         *
+         * @param typeName The type name, e.g. "Population".
+         * @return The data links of the given type in this cell, or an empty list.
+         */
+        List<SpeciesDataLink> getLinks(String typeName) {
+            int ordinal = SpeciesDataLinkType.ordinalOf(typeName);
+            if (ordinal < 0) {
+                return Collections.emptyList();
+            }
+            return getLinks(ordinal);
+        }
+
+        /**
+         * Gets the data links of the given type in this cell.
+         *
+         * @param typeOrdinal The type ordinal.
+         * @return The data links of the given type in this cell, or an empty list.
+         * @see SpeciesDataLinkType#getOrdinal()
+         */
+        List<SpeciesDataLink> getLinks(int typeOrdinal) {
+            List<SpeciesDataLink> typeLinks = linksByType[typeOrdinal];
+            if (typeLinks == null) {
+                return Collections.emptyList();
+            }
+            return typeLinks;
+        }
+    }
+
+    /**
+     * Builds a new index for the given data entries.
+     *
+     * @param data The data entries to index. The position of each entry in this list is its species index.
+     */
+    SpeciesDataIndex(List<SpeciesData> data) {
+        cells = new ArrayList<Cell[]>(data.size() + 16);
+        numSpeciesByLocation = new int[SpeciesDataLink.getNumLocationIds()];
+        for (int speciesIndex = 0; speciesIndex < data.size(); speciesIndex++) {
+            insert(speciesIndex, data.get(speciesIndex));
+        }
+    }
+
+    /**
+     * Creates a re-ordered copy of the given index. The cells are shared, not 
+     * re-built, so this is much cheaper than indexing the entries again.
+     *
+     * @param base The index to copy.
+     * @param permutation The new order: positions in the given index, by new position.
+     */
+    SpeciesDataIndex(SpeciesDataIndex base, int[] permutation) {
+        cells = new ArrayList<Cell[]>(permutation.length + 16);
+        for (int speciesIndex = 0; speciesIndex < permutation.length; speciesIndex++) {
+            cells.add(base.cells.get(permutation[speciesIndex]));
+        }
+        numSpeciesByLocation = Arrays.copyOf(base.numSpeciesByLocation, base.numSpeciesByLocation.length);
+    }
+
+    /**
+     * Indexes the given data entry, which was inserted at the given position.
+     * Entries at or after that position are shifted up by one.
+     *
+     * @param speciesIndex The position of the new entry.
+     * @param entry The new entry.
+     */
+    final void insert(int speciesIndex, SpeciesData entry) {
+        // Group the entry's links by location ID
+        List<List<SpeciesDataLink>> tmp = new ArrayList<List<SpeciesDataLink>>();
+        Iterator<SpeciesDataLink> iDataLinks = entry.getDataLinks().iterator();
+        while (iDataLinks.hasNext()) {
+            SpeciesDataLink sdl = iDataLinks.next();
+            int locationId = sdl.getLocationId();
+            if (locationId < 0) {
+                continue; // missing location => ignore
+            }
+            while (tmp.size() <= locationId) {
+                tmp.add(null);
+            }
+            if (tmp.get(locationId) == null) {
+                tmp.set(locationId, new ArrayList<SpeciesDataLink>(4));
+            }
+            tmp.get(locationId).add(sdl);
+        }
+
+        Cell[] speciesCells = new Cell[tmp.size()];
+        if (numSpeciesByLocation.length < speciesCells.length) {
+            numSpeciesByLocation = Arrays.copyOf(numSpeciesByLocation, Math.max(speciesCells.length, SpeciesDataLink.getNumLocationIds()));
+        }
+        for (int locationId = 0; locationId < speciesCells.length; locationId++) {
+            if (tmp.get(locationId) != null) {
+                speciesCells[locationId] = new Cell(tmp.get(locationId));
+                numSpeciesByLocation[locationId]++;
+            }
+        }
+        cells.add(speciesIndex, speciesCells);
+    }
+
+    /**
+     * Removes the data entry at the given position from this index. Entries
+     * after that position are shifted down by one.
+     *
+     * @param speciesIndex The position of the removed entry.
+     */
+    void remove(int speciesIndex) {
+        Cell[] speciesCells = cells.remove(speciesIndex);
+        for (int locationId = 0; locationId < speciesCells.length; locationId++) {
+            if (speciesCells[locationId] != null) {
+                numSpeciesByLocation[locationId]--;
+            }
+        }
+    }
+
+    /**
+     * Gets the cell for the given location and species.
+     *
+     * @param location The location.
+     * @param speciesIndex The species index.
+     * @return The cell for the given location and species. Never <code>null</code>.
+     */
+    Cell getCell(String location, int speciesIndex) {
+        return getCell(SpeciesDataLink.getLocationId(location), speciesIndex);
+    }
+
+    /**
+     * Gets the cell for the given location and species.
+     *
+     * @param locationId The location ID.
+     * @param speciesIndex The species index.
+     * @return The cell for the given location and species. Never <code>null</code>.
+     * @see SpeciesDataLink#getLocationId(java.lang.String)
+     */
+    Cell getCell(int locationId, int speciesIndex) {
+        Cell[] speciesCells = cells.get(speciesIndex);
+        if (locationId < 0 || locationId >= speciesCells.length || speciesCells[locationId] == null) {
+            return EMPTY_CELL;
+        }
+        return speciesCells[locationId];
+    }
+
+    /**
+     * Gets all data links for the given location and species.
+     *
+     * @param location The location.
+     * @param speciesIndex The species index.
+     * @return All data links for the given location and species, or an empty list.
+     */
+    List<SpeciesDataLink> getLinks(String location, int speciesIndex) {
+        return getCell(location, speciesIndex).getLinks();
+    }
+
+    /**
+     * Gets all data links of the given type for the given location and species.
+     *
+     * @param location The location.
+     * @param speciesIndex The species index.
+     * @param typeName The type name, e.g. "Population".
+     * @return All matching data links, or an empty list.
+     */
+    List<SpeciesDataLink> getLinks(String location, int speciesIndex, String typeName) {
+        return getCell(location, speciesIndex).getLinks(typeName);
+    }
+
+    /**
+     * Gets a flag indicating whether or not any species has data links on the
+     * given location.
+     *
+     * @param location The location.
+     * @return <code>true</code> if at least one data link exists for the given location.
+     */
+    boolean containsLocation(String location) {
+        return containsLocation(SpeciesDataLink.getLocationId(location));
+    }
+
+    /**
+     * Gets a flag indicating whether or not any species has data links on the
+     * given location.
+     *
+     * @param locationId The location ID.
+     * @return <code>true</code> if at least one data link exists for the given location.
+     */
+    boolean containsLocation(int locationId) {
+        return locationId >= 0 && locationId < numSpeciesByLocation.length && numSpeciesByLocation[locationId] > 0;
+    }
+
+    /**
+     * Gets the number of species covered by this index.
+     *
+     * @return The number of species covered by this index.
+     */
+    int getNumSpecies() { return cells.size(); }
+}
@@ -0,0 +1,144 @@
+package no.seapop.data;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import no.npolar.util.CmsAgent;
+import org.opencms.main.CmsEvent;
+import org.opencms.main.I_CmsEventListener;
+import org.opencms.main.OpenCms;
+
+/**
+ * The localized labels used when rendering species data tables, resolved once
+ * per locale: one label per data type (by ordinal), plus the fixed labels.
+ * <p>
+ * Label tables are cached process-wide, and discarded whenever OpenCms may
+ * have reloaded its resource bundles (on publish, and when caches are
+ * cleared). Anything rendered with cached labels should include the
+ * {@link #getGeneration() generation} in its cache key.
+ *
+ * @author Paul-Inge Flakstad, Norwegian Polar Institute <flakstad at npolar.no>
+ */
+public class SpeciesDataLabels {
+
+    /** Label key: "year(s)", used after the number of years. */
+    public static final String LABEL_KEY_YEAR = "label.seapop-species-data.year";
+
+    /** The events that discard cached label tables. */
+    private static final int[] EVENTS = new int[] {
+        I_CmsEventListener.EVENT_PUBLISH_PROJECT,
+        I_CmsEventListener.EVENT_CLEAR_CACHES,
+        I_CmsEventListener.EVENT_CLEAR_ONLINE_CACHES,
+        I_CmsEventListener.EVENT_CLEAR_OFFLINE_CACHES
+    };
+
+    /** The cached label tables, by locale. */
+    private static final Map<Locale, SpeciesDataLabels> CACHE = new ConcurrentHashMap<Locale, SpeciesDataLabels>();
+
+    /** Incremented whenever the cached label tables are discarded. */
+    private static final AtomicLong GENERATION = new AtomicLong();
+
+    /** Flag indicating whether or not the event listener has been registered. */
+    private static boolean listening = false;
+
+    /** The type labels, by type ordinal. */
+    private final String[] typeLabels;
+    /** The "year(s)" label. */
+    private final String yearLabel;
+    /** The generation these labels were resolved in. */
+    private final long generation;
+
+    /**
+     * Resolves all labels, using the given CmsAgent.
+     *
+     * @param cms Initialized CmsAgent.
+     */
+    private SpeciesDataLabels(CmsAgent cms) {
+        generation = GENERATION.get(); // Read first, so that labels resolved during a clear are never current
+        typeLabels = new String[SpeciesDataLinkType.count()];
+        for (int ordinal = 0; ordinal < typeLabels.length; ordinal++) {
+            typeLabels[ordinal] = SpeciesDataLinkType.forOrdinal(ordinal).getLabel(cms);
+        }
+        yearLabel = cms.label(LABEL_KEY_YEAR);
+    }
+
+    /**
+     * Gets the labels for the current request locale of the given CmsAgent,
+     * resolving them if they are not already cached.
+     *
+     * @param cms Initialized CmsAgent.
+     * @return The labels for the current request locale.
+     */
+    public static SpeciesDataLabels get(CmsAgent cms) {
+        Locale locale = cms.getRequestContext().getLocale();
+        if (locale == null) {
+            return new SpeciesDataLabels(cms); // Can't cache
+        }
+        SpeciesDataLabels labels = CACHE.get(locale);
+        if (labels == null || labels.generation != GENERATION.get()) {
+            listen();
+            labels = new SpeciesDataLabels(cms);
+            CACHE.put(locale, labels);
+        }
+        return labels;
+    }
+
+    /**
+     * Registers the event listener that clears the cache, unless already
+     * registered.
+     */
+    private static synchronized void listen() {
+        if (!listening) {
+            OpenCms.addCmsEventListener(new I_CmsEventListener() {
+                @Override
+                public void cmsEvent(CmsEvent event) {
+                    clear();
+                }
+            }, EVENTS);
+            listening = true;
+        }
+    }
+
+    /**
+     * Discards all cached label tables.
+     */
+    public static void clear() {
+        GENERATION.incrementAndGet();
+        CACHE.clear();
+    }
+
+    /**
+     * Gets the current generation of the cached label tables.
+     * <p>
+     * The generation changes whenever the cached label tables are discarded.
+     * To be safe, read it <em>before</em> getting the labels to render with.
+     *
+     * @return The current generation of the cached label tables.
+     */
+    public static long getGeneration() { return GENERATION.get(); }
+
+    /**
+     * Gets the label for the data type with the given ordinal.
+     *
+     * @param typeOrdinal The type ordinal.
+     * @return The label for the data type with the given ordinal.
+     * @see SpeciesDataLinkType#getOrdinal()
+     */
+    public String getTypeLabel(int typeOrdinal) { return typeLabels[typeOrdinal]; }
+
+    /**
+     * Gets the label for the given data type.
+     *
+     * @param type The data type.
+     * @return The label for the given data type.
+     */
+    public String getTypeLabel(SpeciesDataLinkType type) { return typeLabels[type.getOrdinal()]; }
+
+    /**
+     * Gets the "year(s)" label, used after the number of years.
+     *
+     * @return The "year(s)" label.
+     */
+    public String getYearLabel() { return yearLabel; }
+}
@@ -15,15 +15,26 @@ import no.npolar.util.CmsAgent;
  * @author Paul-Inge Flakstad, Norwegian Polar Institute <flakstad at npolar.no>
  */
 public class SpeciesDataLink {
+    /** Number of years value: unknown (not given, or not a number). */
+    public static final int NUM_YEARS_UNKNOWN = -1;
+    
+    /** All locations, across all data links. Locations are referenced by their ID in this dictionary. */
+    private static final StringDictionary LOCATIONS = new StringDictionary(64);
+    
     private String url = null;
-    private String location = null;
+    private int locationId = -1;
     private SpeciesDataLinkType type = null; // Population | Reproduction | Survival | Diet
     private String numYears = null;
+    private int numYearsValue = NUM_YEARS_UNKNOWN; // Parsed from numYears
     private String comment = null;
     
     /**
      * Dummy constructor
+     * 
+     * @throws IllegalArgumentException Always, as a data link must have a type.
+     * @deprecated A data link must have a type, use {@link #SpeciesDataLink(java.lang.String, java.lang.String, java.lang.String, java.lang.String, java.lang.String)}.
      */
+    @Deprecated
     public SpeciesDataLink() {
         this(null, null, null, null, null);
     }
@@ -31,26 +42,122 @@ public class SpeciesDataLink {
      * Creates a new data link.
      * 
      * @param location The associated geographical location.
-     * @param type The data type category.
+     * @param type The data type category. Must be given.
      * @param url The target URL.
      * @param numYears How many years data exists for.
      * @param comment Optional comment.
+     * @throws IllegalArgumentException If the given type is missing, or is not a known type.
      * @see SpeciesDataLinkType
      */
     public SpeciesDataLink(String location, String type, String url, String numYears, String comment) {
-        this.location = location;
+        this.locationId = location == null ? -1 : LOCATIONS.add(location);
         this.url = url;
-        this.type = new SpeciesDataLinkType(type);
+        this.type = SpeciesDataLinkType.requireKnown(type);
         this.numYears = numYears;
+        this.numYearsValue = parseNumYears(numYears);
+        this.comment = comment;
+    }
+    
+    /**
+     * Creates a copy of the given data link, with a different comment.
+     * 
+     * @param core The data link to copy everything but the comment from.
+     * @param comment Optional comment.
+     */
+    private SpeciesDataLink(SpeciesDataLink core, String comment) {
+        this.locationId = core.locationId;
+        this.url = core.url;
+        this.type = core.type;
+        this.numYears = core.numYears;
+        this.numYearsValue = core.numYearsValue;
         this.comment = comment;
     }
     
+    /**
+     * Gets a data link identical to this one, but with the given comment.
+     * <p>
+     * Used to create locale-specific copies of a data link. The location, 
+     * type, URL and number of years are shared with this data link; if the 
+     * comment is the same too, this data link itself is returned.
+     * 
+     * @param comment Optional comment.
+     * @return A data link identical to this one, but with the given comment.
+     * @see SpeciesDataLocales
+     */
+    SpeciesDataLink withComment(String comment) {
+        if (comment == null ? this.comment == null : comment.equals(this.comment)) {
+            return this;
+        }
+        return new SpeciesDataLink(this, comment);
+    }
+    
+    /**
+     * Parses the given number of years text.
+     * <p>
+     * Only plain, non-negative whole numbers (surrounding whitespace allowed) 
+     * are accepted; anything else is considered unknown.
+     * 
+     * @param numYears The number of years text.
+     * @return The number of years, or {@link #NUM_YEARS_UNKNOWN}.
+     */
+    static int parseNumYears(String numYears) {
+        if (numYears == null) {
+            return NUM_YEARS_UNKNOWN;
+        }
+        String text = numYears.trim();
+        if (text.isEmpty() || text.length() > 9) { // 9 digits can't overflow
+            return NUM_YEARS_UNKNOWN;
+        }
+        int n = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c < '0' || c > '9') {
+                return NUM_YEARS_UNKNOWN;
+            }
+            n = n * 10 + (c - '0');
+        }
+        return n;
+    }
+    
     /**
      * Gets the associated geographical location.
      * 
      * @return The associated geographical location.
      */
-    public String getLocation() { return this.location; }
+    public String getLocation() { return this.locationId < 0 ? null : LOCATIONS.get(this.locationId); }
+    /**
+     * Gets the ID of the associated geographical location.
+     * <p>
+     * Location IDs are dense (0, 1, 2, ...) and shared by all data links, so 
+     * they can be used to index plain arrays sized {@link #getNumLocationIds()}.
+     * 
+     * @return The ID of the associated geographical location, or -1 if there is no location.
+     * @see #getLocationId(java.lang.String) 
+     */
+    public int getLocationId() { return this.locationId; }
+    /**
+     * Gets the ID of the given geographical location.
+     * 
+     * @param location The location.
+     * @return The ID of the given location, or -1 if no data link has the given location.
+     * @see #getLocationId() 
+     */
+    public static int getLocationId(String location) { return LOCATIONS.getId(location); }
+    /**
+     * Gets the geographical location with the given ID.
+     * 
+     * @param locationId The location ID.
+     * @return The geographical location with the given ID.
+     * @throws IndexOutOfBoundsException If there is no location with the given ID.
+     */
+    public static String getLocation(int locationId) { return LOCATIONS.get(locationId); }
+    /**
+     * Gets the number of location IDs currently in use, which is also the 
+     * upper bound (exclusive) for location IDs.
+     * 
+     * @return The number of location IDs currently in use.
+     */
+    public static int getNumLocationIds() { return LOCATIONS.size(); }
     /**
      * Gets the target URL.
      * 
@@ -69,11 +176,27 @@ public class SpeciesDataLink {
     //    return cms.labelUnicode("label.seapop-species-data.category.".concat(type.toLowerCase()));
     //}
     /**
-     * Gets the number of years data exists for.
+     * Gets the number of years data exists for, as the original text (for 
+     * display).
      * 
      * @return The number of years data exists for.
+     * @see #getNumYearsValue() 
      */
     public String getNumYears() { return this.numYears; }
+    /**
+     * Gets the number of years data exists for, as a number (for sorting and 
+     * aggregation). The value is parsed once, when the data link is created.
+     * 
+     * @return The number of years data exists for, or {@link #NUM_YEARS_UNKNOWN} if not given or not a number.
+     * @see #getNumYears() 
+     */
+    public int getNumYearsValue() { return this.numYearsValue; }
+    /**
+     * Gets a flag indicating whether or not a number of years text is given.
+     * 
+     * @return <code>true</code> if a (non-empty) number of years text is given.
+     */
+    public boolean hasNumYears() { return this.numYears != null && !this.numYears.isEmpty(); }
     /** 
      * Gets the comment, if any.
      * 
@@ -0,0 +1,357 @@
+package no.seapop.data;
+
+import java.util.AbstractList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact, column-oriented ("struct of arrays") representation of all data
+ * links in a list of {@link SpeciesData} entries.
+ * <p>
+ * Each data link is a row, and each data link field is a column held in a
+ * primitive array: species index, location ID, type ordinal and number of
+ * years. URLs, comments and any non-numeric number-of-years texts are kept in
+ * a de-duplicated string pool, and referenced by ID. Rows are grouped by
+ * species, in species index order, and keep their original order within each
+ * species.
+ * <p>
+ * {@link SpeciesDataLink} instances are created on demand, see
+ * {@link #getDataLink(int)}.
+ * <p>
+ * The table is a read-only snapshot of the list it was built from.
+ *
+ * @author Paul-Inge Flakstad, Norwegian Polar Institute <flakstad at npolar.no>
+ */
+public class SpeciesDataLinkTable {
+
+    /** Number of years value: no number of years given (empty string). */
+    public static final int NUM_YEARS_EMPTY = -1;
+
+    /** Pool ID value: no string (<code>null</code>). */
+    private static final int NONE = -1;
+    /** Encoded number of years: no number of years text (<code>null</code>). */
+    private static final int NUM_YEARS_NULL = Integer.MIN_VALUE;
+
+    /** Estimated size of an object header, in bytes (assuming compressed references). */
+    private static final int HEADER = 12;
+    /** Estimated size of a reference, in bytes (assuming compressed references). */
+    private static final int REFERENCE = 4;
+
+    /** The number of rows. */
+    private final int size;
+    /** Row offsets per species: rows for species i are [speciesStart[i], speciesStart[i+1]). */
+    private final int[] speciesStart;
+    /** Column: species index. */
+    private final int[] speciesIndexes;
+    /** Column: location ID, see {@link SpeciesDataLink#getLocationId()}. */
+    private final int[] locationIds;
+    /** Column: type ordinal, see {@link SpeciesDataLinkType#getOrdinal()}. */
+    private final byte[] typeOrdinals;
+    /** Column: number of years. Values &lt; {@link #NUM_YEARS_EMPTY} refer to a non-numeric text in the string pool, see {@link #getNumYearsText(int)}. */
+    private final int[] numYears;
+    /** Column: URL (pool ID). */
+    private final int[] urlIds;
+    /** Column: comment (pool ID). */
+    private final int[] commentIds;
+    /** The string pool, by pool ID. */
+    private final String[] strings;
+    /** The string pool, used only while building: string -> pool ID. */
+    private Map<String, Integer> stringIds;
+
+    /**
+     * Builds a new table for the given data entries.
+     *
+     * @param data The data entries. The position of each entry in this list is its species index.
+     */
+    SpeciesDataLinkTable(List<SpeciesData> data) {
+        int numRows = 0;
+        for (int speciesIndex = 0; speciesIndex < data.size(); speciesIndex++) {
+            numRows += data.get(speciesIndex).getDataLinks().size();
+        }
+
+        size = numRows;
+        speciesStart = new int[data.size() + 1];
+        speciesIndexes = new int[size];
+        locationIds = new int[size];
+        typeOrdinals = new byte[size];
+        numYears = new int[size];
+        urlIds = new int[size];
+        commentIds = new int[size];
+        stringIds = new HashMap<String, Integer>();
+
+        int row = 0;
+        for (int speciesIndex = 0; speciesIndex < data.size(); speciesIndex++) {
+            speciesStart[speciesIndex] = row;
+            Iterator<SpeciesDataLink> iDataLinks = data.get(speciesIndex).getDataLinks().iterator();
+            while (iDataLinks.hasNext()) {
+                SpeciesDataLink sdl = iDataLinks.next();
+                speciesIndexes[row] = speciesIndex;
+                locationIds[row] = sdl.getLocationId();
+                typeOrdinals[row] = (byte)sdl.getType().getOrdinal();
+                numYears[row] = encodeNumYears(sdl.getNumYears());
+                urlIds[row] = pool(sdl.getUrl());
+                commentIds[row] = pool(sdl.getComment());
+                row++;
+            }
+        }
+        speciesStart[data.size()] = row;
+        
+        // Keep only the ID-to-string direction of the string pool
+        strings = new String[stringIds.size()];
+        Iterator<Map.Entry<String, Integer>> iStringIds = stringIds.entrySet().iterator();
+        while (iStringIds.hasNext()) {
+            Map.Entry<String, Integer> entry = iStringIds.next();
+            strings[entry.getValue().intValue()] = entry.getKey();
+        }
+        stringIds = null;
+    }
+
+    /**
+     * Adds the given string to the string pool.
+     *
+     * @return The pool ID, or {@link #NONE} if the given string is <code>null</code>.
+     */
+    private int pool(String s) {
+        if (s == null) {
+            return NONE;
+        }
+        Integer id = stringIds.get(s);
+        if (id == null) {
+            id = Integer.valueOf(stringIds.size());
+            stringIds.put(s, id);
+        }
+        return id.intValue();
+    }
+
+    /**
+     * Encodes the given number of years text as a single int.
+     * <p>
+     * Plain non-negative numbers are stored as-is, and an empty string as
+     * {@link #NUM_YEARS_EMPTY}. Any other text is stored in the string pool,
+     * and encoded as <code>-2 - poolId</code>.
+     */
+    private int encodeNumYears(String text) {
+        if (text == null) {
+            return NUM_YEARS_NULL;
+        }
+        if (text.isEmpty()) {
+            return NUM_YEARS_EMPTY;
+        }
+        if (text.length() < 10) {
+            int n = 0;
+            boolean numeric = text.length() == 1 || text.charAt(0) != '0'; // Leading zeros would not survive decoding
+            for (int i = 0; i < text.length() && numeric; i++) {
+                char c = text.charAt(i);
+                numeric = c >= '0' && c <= '9';
+                n = n * 10 + (c - '0');
+            }
+            if (numeric) {
+                return n;
+            }
+        }
+        return -2 - pool(text);
+    }
+
+    /**
+     * Gets the number of rows (data links) in this table.
+     *
+     * @return The number of rows in this table.
+     */
+    public int size() { return size; }
+
+    /**
+     * Gets the first row for the given species.
+     *
+     * @param speciesIndex The species index.
+     * @return The first row for the given species.
+     */
+    public int getFirstRow(int speciesIndex) { return speciesStart[speciesIndex]; }
+
+    /**
+     * Gets the row after the last row for the given species.
+     *
+     * @param speciesIndex The species index.
+     * @return The row after the last row for the given species.
+     */
+    public int getEndRow(int speciesIndex) { return speciesStart[speciesIndex + 1]; }
+
+    /**
+     * @param row The row.
+     * @return The species index at the given row.
+     */
+    public int getSpeciesIndex(int row) { return speciesIndexes[row]; }
+
+    /**
+     * @param row The row.
+     * @return The location ID at the given row, or -1 if none.
+     * @see SpeciesDataLink#getLocation(int)
+     */
+    public int getLocationId(int row) { return locationIds[row]; }
+
+    /**
+     * @param row The row.
+     * @return The type ordinal at the given row.
+     * @see SpeciesDataLinkType#forOrdinal(int)
+     */
+    public int getTypeOrdinal(int row) { return typeOrdinals[row]; }
+
+    /**
+     * Gets the number of years at the given row, as a number.
+     *
+     * @param row The row.
+     * @return The number of years at the given row, or {@link #NUM_YEARS_EMPTY} if not given or not a number.
+     */
+    public int getNumYears(int row) { return numYears[row] < 0 ? NUM_YEARS_EMPTY : numYears[row]; }
+
+    /**
+     * Gets the number of years at the given row, as the original text.
+     *
+     * @param row The row.
+     * @return The number of years at the given row, as the original text.
+     */
+    public String getNumYearsText(int row) {
+        int n = numYears[row];
+        if (n >= 0) {
+            return String.valueOf(n);
+        }
+        if (n == NUM_YEARS_EMPTY) {
+            return "";
+        }
+        if (n == NUM_YEARS_NULL) {
+            return null;
+        }
+        return strings[-2 - n];
+    }
+
+    /**
+     * @param row The row.
+     * @return The URL at the given row.
+     */
+    public String getUrl(int row) { return urlIds[row] == NONE ? null : strings[urlIds[row]]; }
+
+    /**
+     * @param row The row.
+     * @return The comment at the given row, or <code>null</code> if none.
+     */
+    public String getComment(int row) { return commentIds[row] == NONE ? null : strings[commentIds[row]]; }
+
+    /**
+     * Creates a data link from the given row.
+     *
+     * @param row The row.
+     * @return A new data link, equal in content to the one the row was built from.
+     */
+    public SpeciesDataLink getDataLink(int row) {
+        return new SpeciesDataLink(
+                locationIds[row] < 0 ? null : SpeciesDataLink.getLocation(locationIds[row]),
+                SpeciesDataLinkType.forOrdinal(typeOrdinals[row]).getName(),
+                getUrl(row),
+                getNumYearsText(row),
+                getComment(row)
+        );
+    }
+
+    /**
+     * Gets a read-only view of the data links for the given species. The data
+     * links are created on demand, by {@link #getDataLink(int)}.
+     *
+     * @param speciesIndex The species index.
+     * @return A read-only view of the data links for the given species.
+     */
+    public List<SpeciesDataLink> getDataLinks(int speciesIndex) {
+        final int first = speciesStart[speciesIndex];
+        final int end = speciesStart[speciesIndex + 1];
+        return new AbstractList<SpeciesDataLink>() {
+            @Override
+            public SpeciesDataLink get(int index) {
+                if (index < 0 || index >= end - first) {
+                    throw new IndexOutOfBoundsException("Index: " + index + ", size: " + (end - first));
+                }
+                return getDataLink(first + index);
+            }
+
+            @Override
+            public int size() {
+                return end - first;
+            }
+        };
+    }
+
+    /**
+     * Gets the number of distinct strings in the string pool.
+     *
+     * @return The number of distinct strings in the string pool.
+     */
+    public int getNumPooledStrings() { return strings.length; }
+
+    /**
+     * Estimates the heap footprint of this table, in bytes.
+     *
+     * @return The estimated heap footprint of this table, in bytes.
+     */
+    public long estimateFootprint() {
+        long bytes = align(HEADER + 9 * REFERENCE + 4); // This object
+        bytes += arrayFootprint(speciesStart.length, 4);
+        bytes += arrayFootprint(size, 4) * 5; // speciesIndexes, locationIds, numYears, urlIds, commentIds
+        bytes += arrayFootprint(size, 1); // typeOrdinals
+        bytes += arrayFootprint(strings.length, REFERENCE); // The string pool
+        for (int i = 0; i < strings.length; i++) {
+            bytes += stringFootprint(strings[i]);
+        }
+        return bytes;
+    }
+
+    /**
+     * Estimates the heap footprint of the data links (as
+     * {@link SpeciesDataLink} objects) in the given data entries, in bytes.
+     * <p>
+     * Shared objects, like types and locations, are not counted. Strings are
+     * counted once per data link, as they are not shared between data links
+     * when read from the data files.
+     *
+     * @param data The data entries.
+     * @return The estimated heap footprint of the data links, in bytes.
+     */
+    public static long estimateObjectGraphFootprint(List<SpeciesData> data) {
+        long bytes = 0;
+        Iterator<SpeciesData> iData = data.iterator();
+        while (iData.hasNext()) {
+            List<SpeciesDataLink> dataLinks = iData.next().getDataLinks();
+            bytes += align(HEADER + 4 + REFERENCE) + arrayFootprint(dataLinks.size(), REFERENCE); // The ArrayList
+            Iterator<SpeciesDataLink> iDataLinks = dataLinks.iterator();
+            while (iDataLinks.hasNext()) {
+                SpeciesDataLink sdl = iDataLinks.next();
+                bytes += align(HEADER + 4 * REFERENCE + 4); // The SpeciesDataLink object
+                bytes += stringFootprint(sdl.getUrl()) + stringFootprint(sdl.getNumYears()) + stringFootprint(sdl.getComment());
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * Estimates the footprint of the given string, in bytes (assuming UTF-16
+     * storage).
+     */
+    private static long stringFootprint(String s) {
+        if (s == null) {
+            return 0;
+        }
+        return align(HEADER + REFERENCE + 4 + 4) + arrayFootprint(s.length(), 2);
+    }
+
+    /**
+     * Estimates the footprint of an array, in bytes.
+     */
+    private static long arrayFootprint(int length, int elementSize) {
+        return align(HEADER + 4 + (long)length * elementSize);
+    }
+
+    /**
+     * Rounds the given size up to the nearest multiple of 8.
+     */
+    private static long align(long bytes) {
+        return (bytes + 7) & ~7L;
+    }
+}
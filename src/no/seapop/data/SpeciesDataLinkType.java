@@ -1,11 +1,19 @@
 package no.seapop.data;
 
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import no.npolar.util.CmsAgent;
 
 /**
- * Population | Reproduction | Survival | Diet
+ * Population | Reproduction | Survival | Diet | Timing
+ * <p>
+ * There is exactly one (canonical) instance per type, obtained via 
+ * {@link #forName(java.lang.String)}. Each type has a dense ordinal, equal to 
+ * its position in {@link #TYPES_ORDER_DEFAULT}, which can be used to index 
+ * plain arrays (e.g. per-type counts) sized {@link #count()}.
  * 
  * @author Paul-Inge Flakstad, Norwegian Polar Institute <flakstad at npolar.no>
  */
@@ -25,25 +33,127 @@ public class SpeciesDataLinkType {
     /** The default ordering of the types. */
     public static final List<String> TYPES_ORDER_DEFAULT = Arrays.asList(new String[] { POPULATION, REPRODUCTION, SURVIVAL, DIET, TIMING });
     
+    /** The canonical instances, by ordinal. */
+    private static final SpeciesDataLinkType[] TYPES;
+    /** The canonical instances, by name. */
+    private static final Map<String, SpeciesDataLinkType> TYPES_BY_NAME;
+    static {
+        TYPES = new SpeciesDataLinkType[TYPES_ORDER_DEFAULT.size()];
+        TYPES_BY_NAME = new HashMap<String, SpeciesDataLinkType>(TYPES.length * 2);
+        for (int i = 0; i < TYPES.length; i++) {
+            TYPES[i] = new SpeciesDataLinkType(TYPES_ORDER_DEFAULT.get(i), i);
+            TYPES_BY_NAME.put(TYPES[i].getName(), TYPES[i]);
+        }
+    }
+    
     /** The type name. */
     private String name = null;
     /** The order factor. */
     private int orderFactor = -1;
+    /** The ordinal. */
+    private int ordinal = -1;
     /** The identifier string, typically the type name in all-lowercase letters. */
     private String identifier = null;
+    /** The key for the localized label. */
+    private String labelKey = null;
     
     /**
      * Creates a new data link type, based on the given type name.
      * 
-     * @param typeName The type name, should be one of the names defined as 
+     * @param typeName The type name, must be one of the names defined as 
      * static finals in this class.
+     * @throws IllegalArgumentException If the given type name is unknown.
+     * @deprecated Use {@link #forName(java.lang.String)}, which returns the canonical instance.
      */
+    @Deprecated
     public SpeciesDataLinkType(String typeName) {
-        name = typeName;
-        identifier = name.toLowerCase();
-        orderFactor = TYPES_ORDER_DEFAULT.indexOf(name);
+        this(typeName, requireKnown(typeName).getOrdinal());
+    }
+    
+    /**
+     * Creates a new data link type, based on the given type name and ordinal.
+     */
+    private SpeciesDataLinkType(String typeName, int ordinal) {
+        this.name = typeName;
+        this.ordinal = ordinal;
+        this.identifier = getIdentifierForName(typeName);
+        this.orderFactor = TYPES_ORDER_DEFAULT.indexOf(typeName);
+        this.labelKey = "label.seapop-species-data.category.".concat(identifier);
+    }
+    
+    /**
+     * Gets the canonical instance for the given type name.
+     * 
+     * @param typeName The type name, should be one of the names defined as static finals in this class.
+     * @return The canonical instance for the given type name, or <code>null</code> if the type name is unknown.
+     */
+    public static SpeciesDataLinkType forName(String typeName) {
+        return typeName == null ? null : TYPES_BY_NAME.get(typeName);
+    }
+    
+    /**
+     * Gets the canonical instance with the given ordinal.
+     * 
+     * @param ordinal The ordinal, from 0 (inclusive) to {@link #count()} (exclusive).
+     * @return The canonical instance with the given ordinal.
+     */
+    public static SpeciesDataLinkType forOrdinal(int ordinal) {
+        return TYPES[ordinal];
+    }
+    
+    /**
+     * Gets the ordinal for the given type name.
+     * 
+     * @param typeName The type name.
+     * @return The ordinal for the given type name, or -1 if the type name is unknown.
+     */
+    public static int ordinalOf(String typeName) {
+        SpeciesDataLinkType type = forName(typeName);
+        return type == null ? -1 : type.getOrdinal();
     }
     
+    /**
+     * Gets the number of types, which is also the size of any array indexed by ordinal.
+     * 
+     * @return The number of types.
+     */
+    public static int count() {
+        return TYPES.length;
+    }
+    
+    /**
+     * Gets all canonical instances, in ordinal order.
+     * 
+     * @return All canonical instances, in ordinal order.
+     */
+    public static List<SpeciesDataLinkType> values() {
+        return Collections.unmodifiableList(Arrays.asList(TYPES));
+    }
+    
+    /**
+     * Gets the canonical instance for the given type name, or throws an 
+     * exception if the name is unknown.
+     * 
+     * @param typeName The type name.
+     * @return The canonical instance for the given type name.
+     * @throws IllegalArgumentException If the given type name is unknown.
+     */
+    static SpeciesDataLinkType requireKnown(String typeName) {
+        SpeciesDataLinkType type = forName(typeName);
+        if (type == null) {
+            throw new IllegalArgumentException("Unknown data link type '" + typeName + "'.");
+        }
+        return type;
+    }
+    
+    /**
+     * Gets the ordinal: a dense number, unique per type, suitable for use as 
+     * an array index.
+     * 
+     * @return The ordinal.
+     */
+    public int getOrdinal() { return ordinal; }
+    
     /**
      * Gets the order factor, a number indicating the position of this type 
      * when it appears in a set of types.
@@ -80,7 +190,10 @@ public class SpeciesDataLinkType {
      * @param name The type name.
      * @return The identifier for the given type name.
      */
-    public static String getIdentifierForName(String name) { return name.toLowerCase(); }
+    public static String getIdentifierForName(String name) { 
+        SpeciesDataLinkType type = forName(name);
+        return type != null ? type.getIdentifier() : name.toLowerCase();
+    }
     
     
     /**
@@ -90,7 +203,7 @@ public class SpeciesDataLinkType {
      * @return The corresponding label, localized according to the given CmsAgent instance.
      */
     public String getLabel(CmsAgent cms) {
-        return cms.labelUnicode("label.seapop-species-data.category.".concat(name.toLowerCase()));
+        return cms.labelUnicode(labelKey);
     }
     
     @Override
@@ -0,0 +1,125 @@
+package no.seapop.data;
+
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Process-wide load metrics, aggregated from every completed
+ * {@link SpeciesDataLoadReport}.
+ * <p>
+ * Exposed via JMX, see {@link SpeciesDataMetrics}. Loads are infrequent, so
+ * all access is simply synchronized.
+ *
+ * @author Paul-Inge Flakstad, Norwegian Polar Institute <flakstad at npolar.no>
+ */
+public class SpeciesDataLoadMetrics implements SpeciesDataLoadMetricsMBean {
+
+    private long collectionsBuilt = 0;
+    private long totalBuildTime = 0;
+    private long lastBuildTime = 0;
+    private long maxBuildTime = 0;
+    private long filesLoaded = 0;
+    private long fileFailures = 0;
+    private long sourceFailures = 0;
+    private long linksParsed = 0;
+    private long totalFileLoadTime = 0;
+    private long maxFileLoadTime = 0;
+    private String slowestFile = null;
+    private String lastFailure = null;
+    private SpeciesDataLoadReport lastReport = null;
+
+    /**
+     * Creates a new, empty instance.
+     *
+     * @see SpeciesDataMetrics#getLoadMetrics()
+     */
+    SpeciesDataLoadMetrics() {}
+
+    /**
+     * Adds the given (completed) load report to these metrics.
+     *
+     * @param report The load report.
+     */
+    synchronized void record(SpeciesDataLoadReport report) {
+        collectionsBuilt++;
+        lastBuildTime = report.getBuildTimeNanos();
+        totalBuildTime += lastBuildTime;
+        maxBuildTime = Math.max(maxBuildTime, lastBuildTime);
+        if (report.getFailure() != null) {
+            sourceFailures++;
+            lastFailure = report.getSource() + ": " + report.getFailure();
+        }
+        Iterator<SpeciesDataLoadReport.FileReport> iFiles = report.getFiles().iterator();
+        while (iFiles.hasNext()) {
+            SpeciesDataLoadReport.FileReport file = iFiles.next();
+            filesLoaded++;
+            linksParsed += file.getNumLinks();
+            totalFileLoadTime += file.getLoadTimeNanos();
+            if (file.getLoadTimeNanos() > maxFileLoadTime) {
+                maxFileLoadTime = file.getLoadTimeNanos();
+                slowestFile = file.getUri();
+            }
+            if (file.isFailed()) {
+                fileFailures++;
+                lastFailure = file.getUri() + ": " + file.getFailure();
+            }
+        }
+        lastReport = report;
+    }
+
+    @Override
+    public synchronized long getCollectionsBuilt() { return collectionsBuilt; }
+
+    @Override
+    public synchronized long getTotalBuildTime() { return TimeUnit.NANOSECONDS.toMillis(totalBuildTime); }
+
+    @Override
+    public synchronized long getLastBuildTime() { return TimeUnit.NANOSECONDS.toMillis(lastBuildTime); }
+
+    @Override
+    public synchronized long getMaxBuildTime() { return TimeUnit.NANOSECONDS.toMillis(maxBuildTime); }
+
+    @Override
+    public synchronized long getFilesLoaded() { return filesLoaded; }
+
+    @Override
+    public synchronized long getFileFailures() { return fileFailures; }
+
+    @Override
+    public synchronized long getSourceFailures() { return sourceFailures; }
+
+    @Override
+    public synchronized long getLinksParsed() { return linksParsed; }
+
+    @Override
+    public synchronized long getTotalFileLoadTime() { return TimeUnit.NANOSECONDS.toMillis(totalFileLoadTime); }
+
+    @Override
+    public synchronized long getMaxFileLoadTime() { return TimeUnit.NANOSECONDS.toMillis(maxFileLoadTime); }
+
+    @Override
+    public synchronized String getSlowestFile() { return slowestFile; }
+
+    @Override
+    public synchronized String getLastFailure() { return lastFailure; }
+
+    @Override
+    public synchronized String getLastReport() { return lastReport == null ? null : lastReport.toString(); }
+
+    @Override
+    public synchronized void reset() {
+        collectionsBuilt = 0;
+        totalBuildTime = 0;
+        lastBuildTime = 0;
+        maxBuildTime = 0;
+        filesLoaded = 0;
+        fileFailures = 0;
+        sourceFailures = 0;
+        linksParsed = 0;
+        totalFileLoadTime = 0;
+        maxFileLoadTime = 0;
+        slowestFile = null;
+        lastFailure = null;
+        lastReport = null;
+    }
+}
@@ -0,0 +1,51 @@
+package no.seapop.data;
+
+/**
+ * JMX management interface for {@link SpeciesDataLoadMetrics}.
+ *
+ * @author Paul-Inge Flakstad, Norwegian Polar Institute <flakstad at npolar.no>
+ */
+public interface SpeciesDataLoadMetricsMBean {
+
+    /** @return The number of collections built from a source. */
+    public long getCollectionsBuilt();
+
+    /** @return The total time spent building collections, in milliseconds. */
+    public long getTotalBuildTime();
+
+    /** @return The time spent building the most recent collection, in milliseconds. */
+    public long getLastBuildTime();
+
+    /** @return The highest time spent building a single collection, in milliseconds. */
+    public long getMaxBuildTime();
+
+    /** @return The number of data files read. */
+    public long getFilesLoaded();
+
+    /** @return The number of data files that were not loaded completely. */
+    public long getFileFailures();
+
+    /** @return The number of collections built from a source that could not be read. */
+    public long getSourceFailures();
+
+    /** @return The number of data links parsed. */
+    public long getLinksParsed();
+
+    /** @return The total time spent loading data files, in milliseconds. */
+    public long getTotalFileLoadTime();
+
+    /** @return The highest time spent loading a single data file, in milliseconds. */
+    public long getMaxFileLoadTime();
+
+    /** @return The URI of the slowest data file loaded. */
+    public String getSlowestFile();
+
+    /** @return Description of the most recent failure (file URI and cause), or <code>null</code>. */
+    public String getLastFailure();
+
+    /** @return A summary of the most recent load report, or <code>null</code>. */
+    public String getLastReport();
+
+    /** Resets all counters. */
+    public void reset();
+}
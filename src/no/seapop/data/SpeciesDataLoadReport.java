@@ -0,0 +1,316 @@
+package no.seapop.data;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Report on a single load of species data: one entry per data file (with its
+ * load time, number of data links parsed, failure and warnings, if any), plus
+ * the overall load and build times.
+ * <p>
+ * Reports are created by {@link SpeciesDataSource} implementations during
+ * {@link SpeciesDataSource#load()}, and completed (with the build time) by
+ * the {@link SpeciesDataCollection} that was built from the loaded entries,
+ * see {@link SpeciesDataCollection#getLoadReport()}. Each completed report is
+ * also added to the process-wide {@link SpeciesDataLoadMetrics}.
+ *
+ * @author Paul-Inge Flakstad, Norwegian Polar Institute <flakstad at npolar.no>
+ */
+public class SpeciesDataLoadReport {
+
+    /** Orders file reports by load time, slowest first. */
+    private static final Comparator<FileReport> SLOWEST_FIRST = new Comparator<FileReport>() {
+        @Override
+        public int compare(FileReport o1, FileReport o2) {
+            return o1.loadTime < o2.loadTime ? 1 : (o1.loadTime > o2.loadTime ? -1 : 0);
+        }
+    };
+
+    /** Description of the source, e.g. the folder that was read. */
+    private final String source;
+    /** The time the load started, in milliseconds since the epoch. */
+    private final long startTime;
+    /** The file reports, in load order. */
+    private final List<FileReport> files = new ArrayList<FileReport>();
+    /** The error that prevented the source itself from being read, if any. */
+    private Throwable failure = null;
+    /** The time spent loading all files, in nanoseconds. */
+    private long loadTime = 0;
+    /** The time spent building the collection, including loading, in nanoseconds. */
+    private long buildTime = 0;
+
+    /**
+     * Report on a single data file.
+     */
+    public static class FileReport {
+        private final String uri;
+        private final long loadTime;
+        private final int numLinks;
+        private final Throwable failure;
+        private final List<String> warnings;
+
+        /**
+         * Creates a new file report.
+         *
+         * @param uri The file URI.
+         * @param loadTime The time spent loading the file, in nanoseconds.
+         * @param numLinks The number of data links parsed.
+         * @param failure The error that prevented the file from being loaded completely, or <code>null</code>.
+         * @param warnings The warnings about data that was ignored.
+         */
+        FileReport(String uri, long loadTime, int numLinks, Throwable failure, List<String> warnings) {
+            this.uri = uri;
+            this.loadTime = loadTime;
+            this.numLinks = numLinks;
+            this.failure = failure;
+            this.warnings = warnings;
+        }
+
+        /**
+         * @return The file URI.
+         */
+        public String getUri() { return uri; }
+
+        /**
+         * @return The time spent loading the file, in nanoseconds.
+         */
+        public long getLoadTimeNanos() { return loadTime; }
+
+        /**
+         * @return The number of data links parsed (0 if the data links are lazy, and were not loaded yet, or if only headers were loaded).
+         */
+        public int getNumLinks() { return numLinks; }
+
+        /**
+         * @return The error that prevented the file from being loaded completely, or <code>null</code>.
+         */
+        public Throwable getFailure() { return failure; }
+
+        /**
+         * @return <code>true</code> if the file was not loaded completely.
+         */
+        public boolean isFailed() { return failure != null; }
+
+        /**
+         * @return The warnings about data that was ignored, e.g. data links with an unknown type (empty if the data links are lazy, and were not loaded yet).
+         * @see SpeciesData#getWarnings()
+         */
+        public List<String> getWarnings() { return warnings; }
+
+        /**
+         * @return <code>true</code> if any data was ignored.
+         */
+        public boolean hasWarnings() { return !warnings.isEmpty(); }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder(uri).append(": ")
+                    .append(TimeUnit.NANOSECONDS.toMillis(loadTime)).append(" ms, ")
+                    .append(numLinks).append(" links");
+            if (failure != null) {
+                sb.append(", FAILED: ").append(failure);
+            }
+            Iterator<String> iWarnings = warnings.iterator();
+            while (iWarnings.hasNext()) {
+                sb.append("\n    WARNING: ").append(iWarnings.next());
+            }
+            return sb.toString();
+        }
+    }
+
+    /**
+     * Creates a new, empty report, starting now.
+     *
+     * @param source Description of the source, e.g. the folder that is read.
+     */
+    SpeciesDataLoadReport(String source) {
+        this.source = source;
+        this.startTime = System.currentTimeMillis();
+    }
+
+    /**
+     * Adds a report on the given data entry, loaded from a single file.
+     *
+     * @param entry The loaded entry.
+     * @param loadTime The time spent loading the entry, in nanoseconds.
+     */
+    void addFile(SpeciesData entry, long loadTime) {
+        int numLinks = entry.isDataLinksLoaded() ? entry.getDataLinks().size() : 0; // Don't trigger loading lazy data links
+        files.add(new FileReport(entry.getVfsUri(), loadTime, numLinks, entry.getLoadError(), entry.getWarnings()));
+    }
+
+    /**
+     * Adds a report on a single data file that could not be loaded at all.
+     *
+     * @param uri The file URI.
+     * @param loadTime The time spent trying to load the file, in nanoseconds.
+     * @param failure The error.
+     */
+    void addFailedFile(String uri, long loadTime, Throwable failure) {
+        files.add(new FileReport(uri, loadTime, 0, failure, Collections.<String>emptyList()));
+    }
+
+    /**
+     * Sets the error that prevented the source itself from being read.
+     */
+    void setFailure(Throwable failure) { this.failure = failure; }
+
+    /**
+     * Sets the time spent loading all files, in nanoseconds.
+     */
+    void setLoadTime(long loadTime) { this.loadTime = loadTime; }
+
+    /**
+     * Sets the time spent building the collection, including loading, in
+     * nanoseconds.
+     */
+    void setBuildTime(long buildTime) { this.buildTime = buildTime; }
+
+    /**
+     * @return Description of the source, e.g. the folder that was read.
+     */
+    public String getSource() { return source; }
+
+    /**
+     * @return The time the load started, in milliseconds since the epoch.
+     */
+    public long getStartTime() { return startTime; }
+
+    /**
+     * @return The file reports, in load order.
+     */
+    public List<FileReport> getFiles() { return Collections.unmodifiableList(files); }
+
+    /**
+     * @return The reports on files that were not loaded completely, in load order.
+     */
+    public List<FileReport> getFailedFiles() {
+        List<FileReport> failed = new ArrayList<FileReport>();
+        Iterator<FileReport> iFiles = files.iterator();
+        while (iFiles.hasNext()) {
+            FileReport file = iFiles.next();
+            if (file.isFailed()) {
+                failed.add(file);
+            }
+        }
+        return failed;
+    }
+
+    /**
+     * @return The reports on files where data was ignored, in load order.
+     * @see FileReport#getWarnings()
+     */
+    public List<FileReport> getFilesWithWarnings() {
+        List<FileReport> withWarnings = new ArrayList<FileReport>();
+        Iterator<FileReport> iFiles = files.iterator();
+        while (iFiles.hasNext()) {
+            FileReport file = iFiles.next();
+            if (file.hasWarnings()) {
+                withWarnings.add(file);
+            }
+        }
+        return withWarnings;
+    }
+
+    /**
+     * Gets the reports on the slowest files.
+     *
+     * @param max The maximum number of reports to return.
+     * @return The reports on the slowest files, slowest first.
+     */
+    public List<FileReport> getSlowestFiles(int max) {
+        List<FileReport> slowest = new ArrayList<FileReport>(files);
+        Collections.sort(slowest, SLOWEST_FIRST);
+        return slowest.subList(0, Math.min(Math.max(max, 0), slowest.size()));
+    }
+
+    /**
+     * @return The number of files read.
+     */
+    public int getNumFiles() { return files.size(); }
+
+    /**
+     * @return The number of files that were not loaded completely.
+     */
+    public int getNumFailedFiles() { return getFailedFiles().size(); }
+
+    /**
+     * @return The total number of warnings, across all files.
+     */
+    public int getNumWarnings() {
+        int numWarnings = 0;
+        Iterator<FileReport> iFiles = files.iterator();
+        while (iFiles.hasNext()) {
+            numWarnings += iFiles.next().warnings.size();
+        }
+        return numWarnings;
+    }
+
+    /**
+     * @return The total number of data links parsed.
+     */
+    public int getNumLinks() {
+        int numLinks = 0;
+        Iterator<FileReport> iFiles = files.iterator();
+        while (iFiles.hasNext()) {
+            numLinks += iFiles.next().numLinks;
+        }
+        return numLinks;
+    }
+
+    /**
+     * @return The error that prevented the source itself from being read, or <code>null</code>.
+     */
+    public Throwable getFailure() { return failure; }
+
+    /**
+     * Gets a flag indicating whether or not the load was complete, that is,
+     * the source and all files were read without errors. (Warnings do not
+     * count.)
+     *
+     * @return <code>true</code> if the load was complete.
+     */
+    public boolean isComplete() { return failure == null && getNumFailedFiles() == 0; }
+
+    /**
+     * @return The time spent loading all files, in nanoseconds.
+     */
+    public long getLoadTimeNanos() { return loadTime; }
+
+    /**
+     * @return The time spent building the collection, including loading, in nanoseconds.
+     */
+    public long getBuildTimeNanos() { return buildTime; }
+
+    /**
+     * Gets a human-readable summary of this report, including all failures.
+     *
+     * @return A human-readable summary of this report.
+     */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder(256);
+        sb.append("Loaded ").append(source).append(": ")
+                .append(getNumFiles()).append(" files, ")
+                .append(getNumLinks()).append(" links, ")
+                .append(getNumFailedFiles()).append(" failed, ")
+                .append(getNumWarnings()).append(" warnings; load ")
+                .append(TimeUnit.NANOSECONDS.toMillis(loadTime)).append(" ms, build ")
+                .append(TimeUnit.NANOSECONDS.toMillis(buildTime)).append(" ms");
+        if (failure != null) {
+            sb.append("\nFAILED: ").append(failure);
+        }
+        Iterator<FileReport> iFiles = files.iterator();
+        while (iFiles.hasNext()) {
+            FileReport file = iFiles.next();
+            if (file.isFailed() || file.hasWarnings()) {
+                sb.append("\n  ").append(file);
+            }
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,293 @@
+package no.seapop.data;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import no.npolar.util.CmsAgent;
+import org.opencms.file.CmsObject;
+import org.opencms.file.CmsResource;
+import org.opencms.xml.content.CmsXmlContent;
+import org.opencms.xml.content.CmsXmlContentFactory;
+
+/**
+ * Species data in several locales, with the locale-independent parts shared.
+ * <p>
+ * Each data file is read (and unmarshalled) once. The core locale (the first
+ * of the requested locales) is read completely, into a core
+ * {@link SpeciesData} entry, holding everything that does not depend on the
+ * locale: habitat flags, locations, types, URLs and number of years. For
+ * every other locale, only a small overlay is kept: the species name and the
+ * data link comments.
+ * <p>
+ * Locale views are assembled from the cores and overlays on demand: the data
+ * link instances of a locale view are those of the core entry, except where
+ * the locale's comment differs. If a data file's habitat flags or data links
+ * differ between locales (in number, location, type, URL or number of years),
+ * the overlay is a full, separately read entry instead, so that every locale view is identical to what a
+ * single-locale load would produce.
+ * <p>
+ * Instances are read-only, and can be shared between threads. The
+ * collections returned by {@link #getCollection(java.util.Locale)} are
+ * shared too, and should be treated as read-only.
+ *
+ * @author Paul-Inge Flakstad, Norwegian Polar Institute <flakstad at npolar.no>
+ * @see OpenCmsSpeciesDataSource#loadLocales(java.util.List)
+ */
+public class SpeciesDataLocales {
+
+    /** The locales, core locale first. */
+    private final List<Locale> locales;
+    /** The entries, in load order. */
+    private final List<Entry> entries;
+    /** The number of overlays that are full entries (because the data links differ from the core). */
+    private final int numFullOverlays;
+    /** The assembled collections, by locale, created on demand. */
+    private final ConcurrentMap<Locale, SpeciesDataCollection> collections = new ConcurrentHashMap<Locale, SpeciesDataCollection>();
+
+    /**
+     * A single data file: the core entry, plus one overlay per non-core
+     * locale.
+     */
+    static class Entry {
+        /** The core entry, in the core locale. */
+        final SpeciesData core;
+        /** The overlays, by locale. */
+        final Map<Locale, Overlay> overlays = new HashMap<Locale, Overlay>(4);
+
+        Entry(SpeciesData core) {
+            this.core = core;
+        }
+    }
+
+    /**
+     * The locale-specific parts of a single data file, in a single locale.
+     */
+    static class Overlay {
+        /** The species name. */
+        final String name;
+        /** The comments, one per data link of the core entry, or <code>null</code> if there are no comments. */
+        final String[] comments;
+        /** The full entry, if the data links differ from the core entry, otherwise <code>null</code>. */
+        final SpeciesData full;
+
+        Overlay(String name, String[] comments) {
+            this.name = name;
+            this.comments = comments;
+            this.full = null;
+        }
+
+        Overlay(SpeciesData full) {
+            this.name = full.getName();
+            this.comments = null;
+            this.full = full;
+        }
+    }
+
+    /**
+     * Creates a new instance.
+     *
+     * @param locales The locales, core locale first.
+     * @param entries The entries, in load order.
+     */
+    private SpeciesDataLocales(List<Locale> locales, List<Entry> entries) {
+        this.locales = Collections.unmodifiableList(new ArrayList<Locale>(locales));
+        this.entries = entries;
+        int numFull = 0;
+        Iterator<Entry> iEntries = entries.iterator();
+        while (iEntries.hasNext()) {
+            Iterator<Overlay> iOverlays = iEntries.next().overlays.values().iterator();
+            while (iOverlays.hasNext()) {
+                if (iOverlays.next().full != null) {
+                    numFull++;
+                }
+            }
+        }
+        this.numFullOverlays = numFull;
+    }
+
+    /**
+     * Reads the given data files, in the given locales.
+     *
+     * @param dataFiles The data files.
+     * @param cmso Initialized CmsObject.
+     * @param locales The locales to read, core locale first.
+     * @param report The report to add a file report to, for each data file.
+     * @return The species data, in the given locales.
+     */
+    static SpeciesDataLocales load(List<CmsResource> dataFiles, CmsObject cmso, List<Locale> locales, SpeciesDataLoadReport report) {
+        Locale coreLocale = locales.get(0);
+        List<Entry> entries = new ArrayList<Entry>(dataFiles.size());
+        Iterator<CmsResource> iDataFiles = dataFiles.iterator();
+        while (iDataFiles.hasNext()) {
+            long start = System.nanoTime();
+            CmsResource dataFile = iDataFiles.next();
+            String uri = cmso.getSitePath(dataFile);
+            CmsXmlContent xml;
+            try {
+                xml = CmsXmlContentFactory.unmarshal(cmso, cmso.readFile(dataFile));
+            } catch (Exception e) {
+                report.addFailedFile(uri, System.nanoTime() - start, e);
+                continue; // Skip this file, go on with the next
+            }
+            Entry entry = new Entry(new SpeciesData(uri, xml, cmso, coreLocale));
+            for (int i = 1; i < locales.size(); i++) {
+                Locale locale = locales.get(i);
+                entry.overlays.put(locale, readOverlay(entry.core, xml, cmso, locale));
+            }
+            report.addFile(entry.core, System.nanoTime() - start);
+            entries.add(entry);
+        }
+        return new SpeciesDataLocales(locales, entries);
+    }
+
+    /**
+     * Reads the overlay for the given core entry, in the given locale.
+     * <p>
+     * The locale is resolved once, as for any entry: if the file does not
+     * have the given locale, the best matching locale is read instead (see
+     * {@link SpeciesData#resolveLocale(org.opencms.xml.content.CmsXmlContent, org.opencms.file.CmsObject, java.lang.String, java.util.Locale)}).
+     * <p>
+     * Only the name and the comments are kept. The habitat flags, and the
+     * location, type, URL and number of years of each data link, are read
+     * only to verify that they are the same as in the core entry. If not (or
+     * if the core entry was not loaded completely), a full entry is read
+     * instead.
+     */
+    private static Overlay readOverlay(SpeciesData core, CmsXmlContent xml, CmsObject cmso, Locale locale) {
+        if (core.getLoadError() == null) {
+            List<SpeciesDataLink> coreLinks = core.getDataLinks();
+            String[] comments = new String[coreLinks.size()];
+            boolean hasComments = false;
+            int i = 0;
+            try {
+                Locale resolvedLocale = SpeciesData.resolveLocale(xml, cmso, core.getVfsUri(), locale);
+                String name = SpeciesData.getStringValue(xml, SpeciesDataXmlPaths.SPECIES_NAME, resolvedLocale, cmso);
+                if (SpeciesData.readHabitat(xml, cmso, resolvedLocale) != core.getHabitat()) {
+                    i = -1; // Not the same habitat flags
+                }
+                int numLocations = xml.getIndexCount(SpeciesDataXmlPaths.DATA_LINKS, resolvedLocale);
+                for (int l = 0; l < numLocations && i >= 0; l++) {
+                    SpeciesDataXmlPaths.LocationPaths locationPaths = SpeciesDataXmlPaths.getLocation(l);
+                    int locationId = SpeciesDataLink.getLocationId(SpeciesData.getStringValue(xml, locationPaths.location, resolvedLocale, cmso));
+                    int numDataLinks = xml.getIndexCount(locationPaths.dataLink, resolvedLocale);
+                    for (int d = 0; d < numDataLinks && i >= 0; d++) {
+                        SpeciesDataXmlPaths.DataLinkPaths dataLinkPaths = locationPaths.getDataLink(d);
+                        SpeciesDataLinkType type = SpeciesDataLinkType.forName(SpeciesData.getStringValue(xml, dataLinkPaths.type, resolvedLocale, cmso));
+                        if (type == null) {
+                            continue; // Unknown type => ignored, as in the core entry
+                        }
+                        if (i >= coreLinks.size()
+                                || coreLinks.get(i).getLocationId() != locationId
+                                || coreLinks.get(i).getType() != type
+                                || !equal(coreLinks.get(i).getUrl(), SpeciesData.getStringValue(xml, dataLinkPaths.url, resolvedLocale, cmso))
+                                || !equal(coreLinks.get(i).getNumYears(), SpeciesData.getStringValue(xml, dataLinkPaths.numYears, resolvedLocale, cmso))) {
+                            i = -1; // Not the same data links
+                            break;
+                        }
+                        String comment = SpeciesData.getStringValue(xml, dataLinkPaths.comment, resolvedLocale, cmso);
+                        if (CmsAgent.elementExists(comment)) {
+                            comments[i] = comment;
+                            hasComments = true;
+                        }
+                        i++;
+                    }
+                }
+                if (i == coreLinks.size()) {
+                    return new Overlay(name, hasComments ? comments : null);
+                }
+            } catch (Exception e) {
+                // No matching locale, or a read error => read the full entry instead, which will record the error
+            }
+        }
+        return new Overlay(new SpeciesData(core.getVfsUri(), xml, cmso, locale));
+    }
+
+    /**
+     * @return <code>true</code> if both strings are <code>null</code>, or equal.
+     */
+    private static boolean equal(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    /**
+     * @return The locales, core locale first.
+     */
+    public List<Locale> getLocales() { return locales; }
+
+    /**
+     * @return The core locale.
+     */
+    public Locale getCoreLocale() { return locales.get(0); }
+
+    /**
+     * @return The number of data files.
+     */
+    public int size() { return entries.size(); }
+
+    /**
+     * Gets the number of overlays that are full entries, because the data
+     * links of a data file differ between locales. Ideally 0.
+     *
+     * @return The number of overlays that are full entries.
+     */
+    public int getNumFullOverlays() { return numFullOverlays; }
+
+    /**
+     * Assembles the entries for the given locale.
+     * <p>
+     * For the core locale, the core entries are returned. For any other
+     * locale, new entries are assembled from the core entries and the
+     * overlays.
+     *
+     * @param locale The locale.
+     * @return The entries for the given locale, in load order.
+     * @throws IllegalArgumentException If the given locale was not read.
+     */
+    public List<SpeciesData> getEntries(Locale locale) {
+        int localeIndex = locales.indexOf(locale);
+        if (localeIndex < 0) {
+            throw new IllegalArgumentException("Locale '" + locale + "' was not read, only " + locales + ".");
+        }
+        List<SpeciesData> localeEntries = new ArrayList<SpeciesData>(entries.size());
+        Iterator<Entry> iEntries = entries.iterator();
+        while (iEntries.hasNext()) {
+            Entry entry = iEntries.next();
+            if (localeIndex == 0) {
+                localeEntries.add(entry.core);
+            } else {
+                Overlay overlay = entry.overlays.get(locale);
+                localeEntries.add(overlay.full != null ? overlay.full : new SpeciesData(entry.core, overlay.name, overlay.comments));
+            }
+        }
+        return localeEntries;
+    }
+
+    /**
+     * Gets the collection for the given locale, assembling it on first
+     * request.
+     * <p>
+     * The collection is sorted by group, and is shared: it should be treated
+     * as read-only.
+     *
+     * @param locale The locale.
+     * @return The collection for the given locale.
+     * @throws IllegalArgumentException If the given locale was not read.
+     */
+    public SpeciesDataCollection getCollection(Locale locale) {
+        SpeciesDataCollection collection = collections.get(locale);
+        if (collection == null) {
+            collection = new SpeciesDataCollection(getEntries(locale), null).sort(SpeciesData.GROUP_NUMBER);
+            SpeciesDataCollection existing = collections.putIfAbsent(locale, collection);
+            if (existing != null) {
+                collection = existing;
+            }
+        }
+        return collection;
+    }
+}
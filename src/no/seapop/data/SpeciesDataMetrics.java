@@ -0,0 +1,147 @@
+package no.seapop.data;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Process-wide instrumentation of species data loading and rendering.
+ * <p>
+ * All metrics are registered as MBeans in the platform MBean server, under
+ * the {@link #DOMAIN} domain:
+ * <ul>
+ * <li><code>no.seapop.data:type=Load</code>: collections built, files loaded,
+ * links parsed, failures and timings, see {@link SpeciesDataLoadMetrics}</li>
+ * <li><code>no.seapop.data:type=Render,name=...</code>: calls, timings and
+ * output size, one per rendering method, see {@link SpeciesDataRenderMetrics}</li>
+ * <li><code>no.seapop.data:type=Cache</code>: the shared
+ * {@link SpeciesDataCollectionCache}, once created</li>
+ * </ul>
+ * If JMX is unavailable, metrics are still collected, and can be read via
+ * the static getters here.
+ * <p>
+ * The MBeans hold on to this library's classes, and so to the class loader
+ * that loaded them. When the module is stopped or redeployed, call
+ * {@link #unregisterAll()} (e.g. via {@link SpeciesDataCollectionCache#shutdown()}),
+ * so that the MBean server does not keep the old class loader alive.
+ *
+ * @author Paul-Inge Flakstad, Norwegian Polar Institute <flakstad at npolar.no>
+ */
+public final class SpeciesDataMetrics {
+
+    /** The JMX domain. */
+    public static final String DOMAIN = "no.seapop.data";
+
+    /** Load metrics. */
+    private static final SpeciesDataLoadMetrics LOAD = new SpeciesDataLoadMetrics();
+
+    /** Render metrics: {@link SpeciesDataCollection#toHtmlTableRows(no.npolar.util.CmsAgent, java.lang.String, java.util.List, java.util.List, java.util.List)}. */
+    static final SpeciesDataRenderMetrics RENDER_STRING = new SpeciesDataRenderMetrics("toHtmlTableRows");
+    /** Render metrics: {@link SpeciesDataCollection#toHtmlTableRowsBytes(no.npolar.util.CmsAgent, java.lang.String, java.util.List, java.util.List, java.util.List, boolean)}. */
+    static final SpeciesDataRenderMetrics RENDER_BYTES = new SpeciesDataRenderMetrics("toHtmlTableRowsBytes");
+    /** Render metrics: {@link SpeciesDataCollection#writeHtmlTableRows(java.io.OutputStream, boolean, no.npolar.util.CmsAgent, java.lang.String, java.util.List, java.util.List, java.util.List)}. */
+    static final SpeciesDataRenderMetrics RENDER_STREAM = new SpeciesDataRenderMetrics("writeHtmlTableRowsToStream");
+    /** Render metrics: {@link SpeciesDataCollection#writeHtmlTableRows(java.lang.Appendable, no.npolar.util.CmsAgent, java.lang.String, java.util.List, java.util.List, java.util.List)}. */
+    static final SpeciesDataRenderMetrics RENDER_APPENDABLE = new SpeciesDataRenderMetrics("writeHtmlTableRowsToAppendable");
+
+    /** All render metrics. */
+    private static final List<SpeciesDataRenderMetrics> RENDER = Collections.unmodifiableList(Arrays.asList(
+            new SpeciesDataRenderMetrics[] { RENDER_STRING, RENDER_BYTES, RENDER_STREAM, RENDER_APPENDABLE }));
+
+    /** The names of the MBeans registered by this class. */
+    private static final Set<ObjectName> REGISTERED = new LinkedHashSet<ObjectName>();
+
+    static {
+        register(LOAD, "type=Load");
+        for (int i = 0; i < RENDER.size(); i++) {
+            register(RENDER.get(i), "type=Render,name=" + RENDER.get(i).getName());
+        }
+    }
+
+    /**
+     * Prevents instantiation.
+     */
+    private SpeciesDataMetrics() {}
+
+    /**
+     * Gets the process-wide load metrics.
+     *
+     * @return The process-wide load metrics.
+     */
+    public static SpeciesDataLoadMetrics getLoadMetrics() { return LOAD; }
+
+    /**
+     * Gets the process-wide render metrics, one per rendering method.
+     *
+     * @return The process-wide render metrics.
+     */
+    public static List<SpeciesDataRenderMetrics> getRenderMetrics() { return RENDER; }
+
+    /**
+     * Registers the given MBean in the platform MBean server, under the
+     * {@link #DOMAIN} domain, replacing any MBean already registered with
+     * the same name (e.g. by a previously deployed copy of this library).
+     *
+     * @param mbean The MBean.
+     * @param keys The key properties, e.g. "type=Load".
+     * @return <code>true</code> if the MBean was registered.
+     */
+    static boolean register(Object mbean, String keys) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(DOMAIN + ":" + keys);
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(mbean, name);
+            synchronized (REGISTERED) {
+                REGISTERED.add(name);
+            }
+            return true;
+        } catch (Exception e) {
+            // JMX unavailable or not permitted => metrics are still collected, just not exposed
+            return false;
+        }
+    }
+
+    /**
+     * Unregisters all MBeans registered by this class, including the one for
+     * the shared {@link SpeciesDataCollectionCache}.
+     * <p>
+     * Metrics are still collected afterwards, and can be read via the static
+     * getters here, but are no longer exposed via JMX.
+     */
+    public static void unregisterAll() {
+        List<ObjectName> names;
+        synchronized (REGISTERED) {
+            names = new ArrayList<ObjectName>(REGISTERED);
+            REGISTERED.clear();
+        }
+        MBeanServer server;
+        try {
+            server = ManagementFactory.getPlatformMBeanServer();
+        } catch (Exception e) {
+            return; // JMX unavailable or not permitted => nothing was registered
+        }
+        ClassLoader classLoader = SpeciesDataMetrics.class.getClassLoader();
+        Iterator<ObjectName> iNames = names.iterator();
+        while (iNames.hasNext()) {
+            ObjectName name = iNames.next();
+            try {
+                // Leave MBeans registered by a newly deployed copy of this library alone
+                if (server.isRegistered(name) && server.getClassLoaderFor(name) == classLoader) {
+                    server.unregisterMBean(name);
+                }
+            } catch (Exception e) {
+                // Unregistered concurrently, or not permitted => ignore
+            }
+        }
+    }
+}
@@ -0,0 +1,412 @@
+package no.seapop.data;
+
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Lazy, read-only query over the species and data links in a
+ * {@link SpeciesDataCollection}.
+ * <p>
+ * A query is created by {@link SpeciesDataCollection#query()}, and narrowed
+ * by chaining filters, e.g.:
+ * <pre>
+ * collection.query().locations("Hornøya").types(SpeciesDataLinkType.POPULATION).minYears(10).getDataLinks()
+ * </pre>
+ * Each filter returns a new query; queries are immutable and may be shared
+ * and re-used. Filters are combined with AND. Nothing is copied or
+ * evaluated until the results are iterated, and iteration reads directly
+ * from the collection (and its index), without building intermediate lists.
+ * <p>
+ * Results reflect the state of the collection at the time of iteration. As
+ * with the collection itself, the results are undefined if the collection is
+ * modified while being iterated.
+ *
+ * @author Paul-Inge Flakstad, Norwegian Polar Institute <flakstad at npolar.no>
+ */
+public final class SpeciesDataQuery {
+
+    /** Group number: no group filter. */
+    private static final int ANY_GROUP = Integer.MIN_VALUE;
+
+    /** The collection to query. */
+    private final SpeciesDataCollection collection;
+    /** The species indexes to include, or <code>null</code> for all. */
+    private final BitSet species;
+    /** The location IDs to include, or <code>null</code> for all. */
+    private final int[] locationIds;
+    /** The type ordinals to include, or <code>null</code> for all. */
+    private final BitSet typeOrdinals;
+    /** The habitat flags every species must have, or 0 for any. */
+    private final int habitatMask;
+    /** The group number, or {@link #ANY_GROUP}. */
+    private final int groupNumber;
+    /** The minimum number of years, or 0 for any. */
+    private final int minYears;
+
+    /**
+     * Creates a new, unfiltered query over the given collection.
+     *
+     * @param collection The collection to query.
+     */
+    SpeciesDataQuery(SpeciesDataCollection collection) {
+        this(collection, null, null, null, 0, ANY_GROUP, 0);
+    }
+
+    private SpeciesDataQuery(SpeciesDataCollection collection, BitSet species, int[] locationIds, BitSet typeOrdinals, int habitatMask, int groupNumber, int minYears) {
+        this.collection = collection;
+        this.species = species;
+        this.locationIds = locationIds;
+        this.typeOrdinals = typeOrdinals;
+        this.habitatMask = habitatMask;
+        this.groupNumber = groupNumber;
+        this.minYears = minYears;
+    }
+
+    /**
+     * Narrows this query to the given species.
+     *
+     * @param speciesIndexes The species indexes (positions in {@link SpeciesDataCollection#get()}).
+     * @return A new query, narrowed to the given species.
+     */
+    public SpeciesDataQuery species(int ... speciesIndexes) {
+        BitSet set = new BitSet();
+        for (int i = 0; i < speciesIndexes.length; i++) {
+            if (speciesIndexes[i] >= 0) {
+                set.set(speciesIndexes[i]);
+            }
+        }
+        return species(set);
+    }
+
+    /**
+     * Narrows this query to the given species, e.g. as returned by
+     * {@link SpeciesDataCollection#getSpeciesByHabitat(int)}.
+     *
+     * @param speciesIndexes The species indexes (positions in {@link SpeciesDataCollection#get()}). Not modified.
+     * @return A new query, narrowed to the given species.
+     */
+    public SpeciesDataQuery species(BitSet speciesIndexes) {
+        BitSet set = (BitSet)speciesIndexes.clone();
+        if (species != null) {
+            set.and(species);
+        }
+        return new SpeciesDataQuery(collection, set, locationIds, typeOrdinals, habitatMask, groupNumber, minYears);
+    }
+
+    /**
+     * Narrows this query to the given locations. Data links on other
+     * locations, and data links without a location, are excluded.
+     *
+     * @param locations The locations.
+     * @return A new query, narrowed to the given locations.
+     */
+    public SpeciesDataQuery locations(String ... locations) {
+        int[] ids = new int[locations.length];
+        int numIds = 0;
+        for (int i = 0; i < locations.length; i++) {
+            int locationId = SpeciesDataLink.getLocationId(locations[i]);
+            if (locationId >= 0 && (locationIds == null || contains(locationIds, locationId)) && !contains(ids, numIds, locationId)) {
+                ids[numIds++] = locationId;
+            }
+        }
+        int[] newLocationIds = new int[numIds];
+        System.arraycopy(ids, 0, newLocationIds, 0, numIds);
+        return new SpeciesDataQuery(collection, species, newLocationIds, typeOrdinals, habitatMask, groupNumber, minYears);
+    }
+
+    /**
+     * Narrows this query to the given data types.
+     *
+     * @param typeNames The type names, e.g. "Population".
+     * @return A new query, narrowed to the given data types.
+     */
+    public SpeciesDataQuery types(String ... typeNames) {
+        BitSet set = new BitSet(SpeciesDataLinkType.count());
+        for (int i = 0; i < typeNames.length; i++) {
+            int ordinal = SpeciesDataLinkType.ordinalOf(typeNames[i]);
+            if (ordinal >= 0) {
+                set.set(ordinal);
+            }
+        }
+        if (typeOrdinals != null) {
+            set.and(typeOrdinals);
+        }
+        return new SpeciesDataQuery(collection, species, locationIds, set, habitatMask, groupNumber, minYears);
+    }
+
+    /**
+     * Narrows this query to species that have all the given habitat flags.
+     *
+     * @param habitatMask The habitat flags, as a bitmask of {@link SpeciesData} <code>HABITAT_*</code> values.
+     * @return A new query, narrowed to species that have all the given habitat flags.
+     */
+    public SpeciesDataQuery habitat(int habitatMask) {
+        return new SpeciesDataQuery(collection, species, locationIds, typeOrdinals, this.habitatMask | habitatMask, groupNumber, minYears);
+    }
+
+    /**
+     * Narrows this query to species in the given group.
+     *
+     * @param groupNumber The group number.
+     * @return A new query, narrowed to species in the given group.
+     * @see SpeciesData#getGroupNumber()
+     */
+    public SpeciesDataQuery group(int groupNumber) {
+        if (this.groupNumber != ANY_GROUP && this.groupNumber != groupNumber) {
+            return species(new BitSet()); // Can't be in two groups => nothing
+        }
+        return new SpeciesDataQuery(collection, species, locationIds, typeOrdinals, habitatMask, groupNumber, minYears);
+    }
+
+    /**
+     * Narrows this query to data links that cover at least the given number
+     * of years. Data links with an unknown number of years are excluded.
+     *
+     * @param minYears The minimum number of years.
+     * @return A new query, narrowed to data links that cover at least the given number of years.
+     */
+    public SpeciesDataQuery minYears(int minYears) {
+        return new SpeciesDataQuery(collection, species, locationIds, typeOrdinals, habitatMask, groupNumber, Math.max(this.minYears, minYears));
+    }
+
+    /**
+     * Gets the matching species, in collection order.
+     * <p>
+     * If this query has any data link filter (location, type or number of
+     * years), only species with at least one matching data link are
+     * included.
+     *
+     * @return The matching species.
+     */
+    public Iterable<SpeciesData> getSpecies() {
+        return new Iterable<SpeciesData>() {
+            @Override
+            public Iterator<SpeciesData> iterator() {
+                return new SpeciesIterator(collection.get(), collection.getIndex());
+            }
+        };
+    }
+
+    /**
+     * Gets the matching data links, species by species in collection order.
+     * <p>
+     * If this query is narrowed to locations, each species' links are ordered
+     * by location (in the order given), otherwise they are in their original
+     * order.
+     *
+     * @return The matching data links.
+     */
+    public Iterable<SpeciesDataLink> getDataLinks() {
+        return new Iterable<SpeciesDataLink>() {
+            @Override
+            public Iterator<SpeciesDataLink> iterator() {
+                return new LinkIterator(collection.get(), collection.getIndex(), 0, Integer.MAX_VALUE);
+            }
+        };
+    }
+
+    /**
+     * Counts the matching data links.
+     *
+     * @return The number of matching data links.
+     */
+    public int count() {
+        int count = 0;
+        Iterator<SpeciesDataLink> i = getDataLinks().iterator();
+        while (i.hasNext()) {
+            i.next();
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Gets a flag indicating whether or not this query has no matching data
+     * links.
+     *
+     * @return <code>true</code> if there are no matching data links.
+     */
+    public boolean isEmpty() {
+        return !getDataLinks().iterator().hasNext();
+    }
+
+    /**
+     * @return <code>true</code> if this query has any data link filter.
+     */
+    private boolean hasLinkFilter() {
+        return locationIds != null || typeOrdinals != null || minYears > 0;
+    }
+
+    /**
+     * Gets the next matching species index, starting at the given index.
+     *
+     * @return The next matching species index, or -1 if there are none.
+     */
+    private int nextSpecies(List<SpeciesData> data, int from) {
+        int speciesIndex = from;
+        while (true) {
+            speciesIndex = species == null ? speciesIndex : species.nextSetBit(speciesIndex);
+            if (speciesIndex < 0 || speciesIndex >= data.size()) {
+                return -1;
+            }
+            SpeciesData entry = data.get(speciesIndex);
+            if ((entry.getHabitat() & habitatMask) == habitatMask
+                    && (groupNumber == ANY_GROUP || entry.getGroupNumber() == groupNumber)) {
+                return speciesIndex;
+            }
+            speciesIndex++;
+        }
+    }
+
+    /**
+     * Gets a flag indicating whether or not the given data link passes this
+     * query's type and number of years filters.
+     */
+    private boolean matches(SpeciesDataLink link) {
+        return (typeOrdinals == null || typeOrdinals.get(link.getType().getOrdinal()))
+                && (minYears <= 0 || link.getNumYearsValue() >= minYears);
+    }
+
+    private static boolean contains(int[] a, int value) {
+        return contains(a, a.length, value);
+    }
+
+    private static boolean contains(int[] a, int length, int value) {
+        for (int i = 0; i < length; i++) {
+            if (a[i] == value) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Base class for iterators that compute their next element ahead of time.
+     */
+    private static abstract class LookAheadIterator<T> implements Iterator<T> {
+        private T next = null;
+
+        /**
+         * @return The next element, or <code>null</code> if there are no more elements.
+         */
+        protected abstract T computeNext();
+
+        @Override
+        public boolean hasNext() {
+            if (next == null) {
+                next = computeNext();
+            }
+            return next != null;
+        }
+
+        @Override
+        public T next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            T current = next;
+            next = null;
+            return current;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException("Query results are read-only.");
+        }
+    }
+
+    /**
+     * Iterates the matching species.
+     */
+    private class SpeciesIterator extends LookAheadIterator<SpeciesData> {
+        private final List<SpeciesData> data;
+        private final SpeciesDataIndex index;
+        private int speciesIndex = -1;
+
+        SpeciesIterator(List<SpeciesData> data, SpeciesDataIndex index) {
+            this.data = data;
+            this.index = index;
+        }
+
+        @Override
+        protected SpeciesData computeNext() {
+            while ((speciesIndex = nextSpecies(data, speciesIndex + 1)) >= 0) {
+                if (!hasLinkFilter() || new LinkIterator(data, index, speciesIndex, speciesIndex + 1).hasNext()) {
+                    return data.get(speciesIndex);
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Iterates the matching data links, for the matching species within a
+     * range of species indexes.
+     */
+    private class LinkIterator extends LookAheadIterator<SpeciesDataLink> {
+        private final List<SpeciesData> data;
+        private final SpeciesDataIndex index;
+        /** The end of the species range (exclusive). */
+        private final int end;
+        /** The single type ordinal to read from each cell, or -1 to read all types. */
+        private final int typeOrdinal;
+        private int speciesIndex;
+        private int locationPos = 0;
+        private List<SpeciesDataLink> links = Collections.emptyList();
+        private int linkPos = 0;
+
+        LinkIterator(List<SpeciesData> data, SpeciesDataIndex index, int start, int end) {
+            this.data = data;
+            this.index = index;
+            this.end = end;
+            this.speciesIndex = start - 1;
+            this.typeOrdinal = typeOrdinals != null && typeOrdinals.cardinality() == 1 ? typeOrdinals.nextSetBit(0) : -1;
+            this.locationPos = locationIds == null ? 0 : locationIds.length;
+        }
+
+        @Override
+        protected SpeciesDataLink computeNext() {
+            while (true) {
+                while (linkPos < links.size()) {
+                    SpeciesDataLink link = links.get(linkPos++);
+                    if (matches(link)) {
+                        return link;
+                    }
+                }
+                if (!nextLinks()) {
+                    return null;
+                }
+            }
+        }
+
+        /**
+         * Moves on to the next list of candidate data links: the next cell
+         * of the current species, or the next species.
+         *
+         * @return <code>false</code> if there are no more candidates.
+         */
+        private boolean nextLinks() {
+            linkPos = 0;
+            if (locationIds != null && locationPos < locationIds.length) {
+                SpeciesDataIndex.Cell cell = index.getCell(locationIds[locationPos++], speciesIndex);
+                links = typeOrdinal < 0 ? cell.getLinks() : cell.getLinks(typeOrdinal);
+                return true;
+            }
+            speciesIndex = nextSpecies(data, speciesIndex + 1);
+            if (speciesIndex < 0 || speciesIndex >= end) {
+                links = Collections.emptyList();
+                return false;
+            }
+            if (locationIds == null) {
+                links = data.get(speciesIndex).getDataLinks();
+            } else {
+                links = Collections.emptyList();
+                locationPos = 0;
+            }
+            return true;
+        }
+    }
+}
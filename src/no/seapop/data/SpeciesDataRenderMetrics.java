@@ -0,0 +1,123 @@
+package no.seapop.data;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Process-wide metrics for a single rendering method of
+ * {@link SpeciesDataCollection}: number of calls, time spent and output size.
+ * <p>
+ * Exposed via JMX, see {@link SpeciesDataMetrics}. Updated on every call, so
+ * all counters are lock-free.
+ *
+ * @author Paul-Inge Flakstad, Norwegian Polar Institute <flakstad at npolar.no>
+ */
+public class SpeciesDataRenderMetrics implements SpeciesDataRenderMetricsMBean {
+
+    /** The rendering method these metrics are for. */
+    private final String name;
+
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong totalTime = new AtomicLong();
+    private final AtomicLong maxTime = new AtomicLong();
+    private final AtomicLong totalOutputSize = new AtomicLong();
+
+    /**
+     * Appendable wrapper that counts the characters appended.
+     */
+    static class CountingAppendable implements Appendable {
+        private final Appendable out;
+        private long count = 0;
+
+        CountingAppendable(Appendable out) {
+            this.out = out;
+        }
+
+        @Override
+        public Appendable append(CharSequence csq) throws IOException {
+            out.append(csq);
+            count += csq == null ? 4 : csq.length(); // "null"
+            return this;
+        }
+
+        @Override
+        public Appendable append(CharSequence csq, int start, int end) throws IOException {
+            out.append(csq, start, end);
+            count += end - start;
+            return this;
+        }
+
+        @Override
+        public Appendable append(char c) throws IOException {
+            out.append(c);
+            count++;
+            return this;
+        }
+
+        /**
+         * @return The number of characters appended.
+         */
+        long getCount() { return count; }
+    }
+
+    /**
+     * Creates new, empty metrics for the given rendering method.
+     *
+     * @param name The rendering method, e.g. "toHtmlTableRows".
+     */
+    SpeciesDataRenderMetrics(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Adds a single call to these metrics.
+     *
+     * @param time The time spent, in nanoseconds.
+     * @param outputSize The output size, in characters or bytes.
+     */
+    void record(long time, long outputSize) {
+        count.incrementAndGet();
+        totalTime.addAndGet(time);
+        totalOutputSize.addAndGet(outputSize);
+        long max;
+        while (time > (max = maxTime.get()) && !maxTime.compareAndSet(max, time)) {
+            // Retry
+        }
+    }
+
+    @Override
+    public String getName() { return name; }
+
+    @Override
+    public long getCount() { return count.get(); }
+
+    @Override
+    public long getTotalTime() { return TimeUnit.NANOSECONDS.toMillis(totalTime.get()); }
+
+    @Override
+    public long getAverageTimeMicros() {
+        long n = count.get();
+        return n == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(totalTime.get() / n);
+    }
+
+    @Override
+    public long getMaxTimeMicros() { return TimeUnit.NANOSECONDS.toMicros(maxTime.get()); }
+
+    @Override
+    public long getTotalOutputSize() { return totalOutputSize.get(); }
+
+    @Override
+    public long getAverageOutputSize() {
+        long n = count.get();
+        return n == 0 ? 0 : totalOutputSize.get() / n;
+    }
+
+    @Override
+    public void reset() {
+        count.set(0);
+        totalTime.set(0);
+        maxTime.set(0);
+        totalOutputSize.set(0);
+    }
+}
@@ -0,0 +1,33 @@
+package no.seapop.data;
+
+/**
+ * JMX management interface for {@link SpeciesDataRenderMetrics}.
+ *
+ * @author Paul-Inge Flakstad, Norwegian Polar Institute <flakstad at npolar.no>
+ */
+public interface SpeciesDataRenderMetricsMBean {
+
+    /** @return The rendering method these metrics are for. */
+    public String getName();
+
+    /** @return The number of calls. */
+    public long getCount();
+
+    /** @return The total time spent, in milliseconds. */
+    public long getTotalTime();
+
+    /** @return The average time spent per call, in microseconds. */
+    public long getAverageTimeMicros();
+
+    /** @return The highest time spent on a single call, in microseconds. */
+    public long getMaxTimeMicros();
+
+    /** @return The total output size, in characters or bytes (depending on the method). */
+    public long getTotalOutputSize();
+
+    /** @return The average output size per call, in characters or bytes (depending on the method). */
+    public long getAverageOutputSize();
+
+    /** Resets all counters. */
+    public void reset();
+}
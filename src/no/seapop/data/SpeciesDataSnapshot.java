@@ -0,0 +1,403 @@
+package no.seapop.data;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+import no.npolar.util.CmsAgent;
+import org.opencms.file.CmsObject;
+import org.opencms.file.CmsResource;
+
+/**
+ * Binary snapshot of a {@link SpeciesDataCollection}, for restoring a
+ * collection quickly (e.g. after a restart) instead of reading every species
+ * file again.
+ * <p>
+ * A snapshot holds the species (in collection order, with habitat flags and
+ * data links), the locations (in collection order), the locale they were
+ * read in, and the last modified date of every species file they were read
+ * from. The latter is used to detect stale snapshots. The index, counts etc. are rebuilt when a snapshot is restored.
+ * <p>
+ * Format (big-endian): magic number, format version, payload, and finally a
+ * CRC32 checksum of everything before it. Strings are written as their
+ * length in bytes (-1 for <code>null</code>) followed by the UTF-8 bytes.
+ * Data link types are written by name (once, in a table referenced by each
+ * data link), so snapshots do not depend on the order of the type registry.
+ * Snapshots are read via a memory-mapped buffer.
+ *
+ * @author Paul-Inge Flakstad, Norwegian Polar Institute <flakstad at npolar.no>
+ */
+public class SpeciesDataSnapshot {
+
+    /** The magic number: "SPDS". */
+    public static final int MAGIC = 0x53504453;
+    /** The current format version. Snapshots in other versions are rejected. */
+    public static final int FORMAT_VERSION = 2;
+
+    /** The charset used for strings. */
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /** The locale the species data was read in. */
+    private final Locale locale;
+    /** The time this snapshot was created. */
+    private final long created;
+    /** The species file site paths, with their last modified date. */
+    private final Map<String, Long> sourceDates;
+    /** The restored collection. */
+    private final SpeciesDataCollection collection;
+
+    /**
+     * Creates a new snapshot instance, as read from a file.
+     */
+    private SpeciesDataSnapshot(Locale locale, long created, Map<String, Long> sourceDates, SpeciesDataCollection collection) {
+        this.locale = locale;
+        this.created = created;
+        this.sourceDates = Collections.unmodifiableMap(sourceDates);
+        this.collection = collection;
+    }
+
+    /**
+     * Restores a collection from the given snapshot file, provided that the
+     * snapshot is fresh. If not, the collection is created by reading the
+     * species files (as usual), and a new snapshot is written.
+     * <p>
+     * The snapshot is considered fresh if it was read in the current locale,
+     * and the current set of species files (and their last modified dates)
+     * exactly matches the set the snapshot was created from.
+     * <p>
+     * Failing to read or write the snapshot file is not an error; the
+     * collection is then simply created by reading the species files. No
+     * snapshot is written if any species file (or the folder) could not be
+     * read, as the snapshot would otherwise preserve the incomplete collection
+     * until one of the species files is modified.
+     *
+     * @param snapshotFile The snapshot file. Need not exist.
+     * @param folder The folder to read <code>seapop_species_data</code> data files from.
+     * @param cms Initialized CmsAgent.
+     * @param excluded Resource(s) to ignore. Can be <code>null</code>.
+     * @return The collection, either restored from the snapshot or freshly created.
+     * @see SpeciesDataCollection#SpeciesDataCollection(java.lang.String, no.npolar.util.CmsAgent, java.util.List)
+     */
+    public static SpeciesDataCollection load(File snapshotFile, String folder, CmsAgent cms, List<CmsResource> excluded) {
+        Locale currentLocale = cms.getRequestContext().getLocale();
+        Map<String, Long> currentSourceDates = null;
+        try {
+            currentSourceDates = getSourceDates(OpenCmsSpeciesDataSource.readDataFiles(folder, cms.getCmsObject(), excluded), cms.getCmsObject());
+            if (snapshotFile.isFile()) {
+                SpeciesDataSnapshot snapshot = read(snapshotFile);
+                if (snapshot.isFresh(currentLocale, currentSourceDates)) {
+                    return snapshot.getCollection();
+                }
+            }
+        } catch (Exception e) {
+            // Missing, corrupt or outdated snapshot => read the species files instead
+        }
+
+        SpeciesDataCollection collection = new SpeciesDataCollection(folder, cms, excluded);
+        if (currentSourceDates != null && isComplete(collection)) {
+            try {
+                write(snapshotFile, collection, currentLocale, currentSourceDates);
+            } catch (Exception e) {
+                // Not critical, we'll try again next time
+            }
+        }
+        return collection;
+    }
+
+    /**
+     * Gets a flag indicating whether or not the given (freshly read)
+     * collection is complete, that is, the folder and all species files were
+     * read without errors.
+     */
+    private static boolean isComplete(SpeciesDataCollection collection) {
+        SpeciesDataLoadReport report = collection.getLoadReport();
+        return report != null && report.isComplete();
+    }
+
+    /**
+     * Gets the last modified date of each of the given resources.
+     *
+     * @param resources The resources.
+     * @param cmso Initialized CmsObject.
+     * @return The site path of each of the given resources, with its last modified date.
+     */
+    public static Map<String, Long> getSourceDates(List<CmsResource> resources, CmsObject cmso) {
+        Map<String, Long> dates = new HashMap<String, Long>(resources.size() * 2);
+        Iterator<CmsResource> iResources = resources.iterator();
+        while (iResources.hasNext()) {
+            CmsResource resource = iResources.next();
+            dates.put(cmso.getSitePath(resource), Long.valueOf(resource.getDateLastModified()));
+        }
+        return dates;
+    }
+
+    /**
+     * Writes a snapshot of the given collection to the given file.
+     * <p>
+     * The snapshot is written to a temporary file first, which then replaces
+     * the given file, so readers never see a partially written snapshot.
+     *
+     * @param file The file to write to.
+     * @param collection The collection.
+     * @param locale The locale the collection was read in.
+     * @param sourceDates The site path of each species file the collection was read from, with its last modified date.
+     * @throws IOException If writing fails.
+     */
+    public static void write(File file, SpeciesDataCollection collection, Locale locale, Map<String, Long> sourceDates) throws IOException {
+        File dir = file.getAbsoluteFile().getParentFile();
+        if (dir != null && !dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Unable to create directory " + dir + ".");
+        }
+        File tmp = File.createTempFile(file.getName(), ".tmp", dir);
+        try {
+            CRC32 crc = new CRC32();
+            FileOutputStream fileOut = new FileOutputStream(tmp);
+            try {
+                DataOutputStream out = new DataOutputStream(new CheckedOutputStream(new BufferedOutputStream(fileOut, 65536), crc));
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT_VERSION);
+                writeString(out, locale == null ? null : locale.toString());
+                out.writeLong(System.currentTimeMillis());
+
+                out.writeInt(sourceDates.size());
+                Iterator<Map.Entry<String, Long>> iSourceDates = sourceDates.entrySet().iterator();
+                while (iSourceDates.hasNext()) {
+                    Map.Entry<String, Long> entry = iSourceDates.next();
+                    writeString(out, entry.getKey());
+                    out.writeLong(entry.getValue().longValue());
+                }
+
+                List<String> locations = collection.getLocations();
+                out.writeInt(locations.size());
+                Iterator<String> iLocations = locations.iterator();
+                while (iLocations.hasNext()) {
+                    writeString(out, iLocations.next());
+                }
+
+                List<SpeciesDataLinkType> types = SpeciesDataLinkType.values();
+                out.writeInt(types.size());
+                Iterator<SpeciesDataLinkType> iTypes = types.iterator();
+                while (iTypes.hasNext()) {
+                    writeString(out, iTypes.next().getName()); // Table index = ordinal
+                }
+
+                List<SpeciesData> entries = collection.get();
+                out.writeInt(entries.size());
+                Iterator<SpeciesData> iEntries = entries.iterator();
+                while (iEntries.hasNext()) {
+                    SpeciesData entry = iEntries.next();
+                    writeString(out, entry.getVfsUri());
+                    writeString(out, entry.getName());
+                    out.writeByte(entry.getHabitat()); // The SpeciesData.HABITAT_* bits
+                    List<SpeciesDataLink> dataLinks = entry.getDataLinks();
+                    out.writeInt(dataLinks.size());
+                    Iterator<SpeciesDataLink> iDataLinks = dataLinks.iterator();
+                    while (iDataLinks.hasNext()) {
+                        SpeciesDataLink dataLink = iDataLinks.next();
+                        writeString(out, dataLink.getLocation());
+                        out.writeByte(dataLink.getType().getOrdinal()); // Index in the type table
+                        writeString(out, dataLink.getUrl());
+                        writeString(out, dataLink.getNumYears());
+                        writeString(out, dataLink.getComment());
+                    }
+                }
+                out.flush();
+                // The checksum itself is written outside the checked stream
+                DataOutputStream checksumOut = new DataOutputStream(fileOut);
+                checksumOut.writeLong(crc.getValue());
+                checksumOut.flush();
+            } finally {
+                fileOut.close();
+            }
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            if (tmp.exists() && !tmp.delete()) {
+                tmp.deleteOnExit();
+            }
+        }
+    }
+
+    /**
+     * Reads the snapshot in the given file.
+     *
+     * @param file The file to read.
+     * @return The snapshot.
+     * @throws IOException If reading fails, or the file is not a valid snapshot (wrong magic number, unsupported format version or checksum mismatch).
+     */
+    public static SpeciesDataSnapshot read(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            long length = channel.size();
+            if (length < 16 || length > Integer.MAX_VALUE) {
+                throw new IOException("Invalid snapshot file size " + length + ".");
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+
+            // Verify the checksum first
+            int payloadLength = (int)length - 8;
+            CRC32 crc = new CRC32();
+            byte[] chunk = new byte[8192];
+            buffer.position(0);
+            while (buffer.position() < payloadLength) {
+                int n = Math.min(chunk.length, payloadLength - buffer.position());
+                buffer.get(chunk, 0, n);
+                crc.update(chunk, 0, n);
+            }
+            if (buffer.getLong(payloadLength) != crc.getValue()) {
+                throw new IOException("Snapshot checksum mismatch.");
+            }
+
+            buffer.position(0);
+            if (buffer.getInt() != MAGIC) {
+                throw new IOException("Not a snapshot file.");
+            }
+            int formatVersion = buffer.getInt();
+            if (formatVersion != FORMAT_VERSION) {
+                throw new IOException("Unsupported snapshot format version " + formatVersion + ".");
+            }
+            String localeString = readString(buffer);
+            long created = buffer.getLong();
+
+            int numSourceDates = buffer.getInt();
+            Map<String, Long> sourceDates = new HashMap<String, Long>(numSourceDates * 2);
+            for (int i = 0; i < numSourceDates; i++) {
+                String sitePath = readString(buffer);
+                sourceDates.put(sitePath, Long.valueOf(buffer.getLong()));
+            }
+
+            int numLocations = buffer.getInt();
+            List<String> locations = new ArrayList<String>(numLocations);
+            for (int i = 0; i < numLocations; i++) {
+                locations.add(readString(buffer));
+            }
+
+            int numTypes = buffer.getInt();
+            String[] typeNames = new String[numTypes];
+            for (int i = 0; i < numTypes; i++) {
+                typeNames[i] = readString(buffer);
+            }
+
+            int numEntries = buffer.getInt();
+            List<SpeciesData> entries = new ArrayList<SpeciesData>(numEntries);
+            for (int i = 0; i < numEntries; i++) {
+                String uri = readString(buffer);
+                String name = readString(buffer);
+                SpeciesData entry = new SpeciesData(uri, name, buffer.get());
+                int numDataLinks = buffer.getInt();
+                for (int j = 0; j < numDataLinks; j++) {
+                    String location = readString(buffer);
+                    String type = typeNames[buffer.get()]; // Unknown (e.g. removed) types are ignored by addDataLink
+                    String url = readString(buffer);
+                    String numYears = readString(buffer);
+                    String comment = readString(buffer);
+                    entry.addDataLink(location, type, url, numYears, comment);
+                }
+                entries.add(entry);
+            }
+
+            return new SpeciesDataSnapshot(
+                    localeString == null ? null : toLocale(localeString),
+                    created,
+                    sourceDates,
+                    new SpeciesDataCollection(entries, locations)
+            );
+        } catch (RuntimeException e) {
+            // E.g. BufferUnderflowException or IndexOutOfBoundsException: the file is corrupt
+            throw new IOException("Invalid snapshot file.", e);
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Gets a flag indicating whether or not this snapshot is fresh, that is,
+     * it was read in the given locale, from exactly the given species files,
+     * which have not been modified since.
+     *
+     * @param currentLocale The current locale.
+     * @param currentSourceDates The site path of each current species file, with its last modified date.
+     * @return <code>true</code> if this snapshot is fresh, <code>false</code> if it is stale.
+     * @see #getSourceDates(java.util.List, org.opencms.file.CmsObject)
+     */
+    public boolean isFresh(Locale currentLocale, Map<String, Long> currentSourceDates) {
+        boolean sameLocale = locale == null ? currentLocale == null : locale.equals(currentLocale);
+        return sameLocale && sourceDates.equals(currentSourceDates);
+    }
+
+    /**
+     * @return The restored collection.
+     */
+    public SpeciesDataCollection getCollection() { return collection; }
+
+    /**
+     * @return The locale the species data was read in.
+     */
+    public Locale getLocale() { return locale; }
+
+    /**
+     * @return The time this snapshot was created.
+     */
+    public long getCreated() { return created; }
+
+    /**
+     * @return The site path of each species file this snapshot was created from, with its last modified date.
+     */
+    public Map<String, Long> getSourceDates() { return sourceDates; }
+
+    /**
+     * Writes the given (nullable) string.
+     */
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        if (s == null) {
+            out.writeInt(-1);
+        } else {
+            byte[] bytes = s.getBytes(UTF8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    /**
+     * Reads a (nullable) string.
+     */
+    private static String readString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, UTF8);
+    }
+
+    /**
+     * Converts the given string, as created by {@link Locale#toString()}, to a locale.
+     */
+    private static Locale toLocale(String localeString) {
+        String[] parts = localeString.split("_", 3);
+        if (parts.length == 1) {
+            return new Locale(parts[0]);
+        } else if (parts.length == 2) {
+            return new Locale(parts[0], parts[1]);
+        }
+        return new Locale(parts[0], parts[1], parts[2]);
+    }
+}
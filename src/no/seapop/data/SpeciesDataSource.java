@@ -0,0 +1,35 @@
+package no.seapop.data;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * A source of species data entries, e.g. the <code>seapop_species_data</code> 
+ * files in an OpenCms folder, or exported copies of those files on disk.
+ * 
+ * @author Paul-Inge Flakstad, Norwegian Polar Institute <flakstad at npolar.no>
+ * @see OpenCmsSpeciesDataSource
+ * @see XmlFileSpeciesDataSource
+ * @see SpeciesDataCollection#SpeciesDataCollection(no.seapop.data.SpeciesDataSource) 
+ */
+public interface SpeciesDataSource {
+    
+    /**
+     * Loads all data entries from this source.
+     * <p>
+     * Individual entries that cannot be loaded are skipped (or loaded 
+     * partially), so that a single bad file does not prevent loading the rest.
+     * 
+     * @return All data entries from this source, in no particular order.
+     * @throws IOException If the source itself cannot be read.
+     */
+    public List<SpeciesData> load() throws IOException;
+    
+    /**
+     * Gets the report on the most recent load from this source: per-file 
+     * load times, data links parsed and failures.
+     * 
+     * @return The report on the most recent load, or <code>null</code> if nothing has been loaded yet.
+     */
+    public SpeciesDataLoadReport getLoadReport();
+}
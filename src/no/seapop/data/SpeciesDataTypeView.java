@@ -0,0 +1,163 @@
+package no.seapop.data;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Materialized view of a single data type in a list of {@link SpeciesData}
+ * entries: the cells of the single-type table, the de-duplicated comment
+ * footnotes, and the per-location totals.
+ * <p>
+ * Footnotes are numbered in order of first appearance, when the table is
+ * read row by row (locations in the given order), cell by cell (species in
+ * list order).
+ * <p>
+ * The view is a read-only snapshot of the list it was built from. If the list
+ * is modified or re-ordered, a new view must be built.
+ *
+ * @author Paul-Inge Flakstad, Norwegian Polar Institute <flakstad at npolar.no>
+ */
+class SpeciesDataTypeView {
+
+    /** Footnote ID: no footnote. */
+    static final int NO_FOOTNOTE = -1;
+
+    /** The data type. */
+    private final SpeciesDataLinkType type;
+    /** The cells, by location ID, then species index. Locations without links of this type are <code>null</code>, as are empty cells. */
+    private final Cell[][] cells;
+    /** The number of data links of this type, by location ID. */
+    private final int[] totals;
+    /** The footnotes (comments), by footnote ID. */
+    private final String[] footnotes;
+
+    /**
+     * A single table cell: the data links of this view's type, for one species
+     * on one location.
+     */
+    static class Cell {
+        /** The URLs. */
+        final String[] urls;
+        /** The number of years texts. */
+        final String[] numYears;
+        /** The footnote IDs, or {@link #NO_FOOTNOTE}. */
+        final int[] footnoteIds;
+
+        private Cell(int size) {
+            urls = new String[size];
+            numYears = new String[size];
+            footnoteIds = new int[size];
+        }
+
+        /**
+         * @return The number of data links in this cell.
+         */
+        int size() { return urls.length; }
+    }
+
+    /**
+     * Builds a new view.
+     *
+     * @param type The data type.
+     * @param locations The locations, in order.
+     * @param numSpecies The number of species.
+     * @param index The index to read data links from.
+     */
+    SpeciesDataTypeView(SpeciesDataLinkType type, List<String> locations, int numSpecies, SpeciesDataIndex index) {
+        this.type = type;
+        int typeOrdinal = type.getOrdinal();
+        int numLocationIds = SpeciesDataLink.getNumLocationIds();
+        cells = new Cell[numLocationIds][];
+        totals = new int[numLocationIds];
+        Map<String, Integer> footnoteIds = new HashMap<String, Integer>();
+
+        Iterator<String> iLocations = locations.iterator();
+        while (iLocations.hasNext()) {
+            int locationId = SpeciesDataLink.getLocationId(iLocations.next());
+            if (locationId < 0 || locationId >= numLocationIds || cells[locationId] != null) {
+                continue;
+            }
+            Cell[] locationCells = null;
+            for (int speciesIndex = 0; speciesIndex < numSpecies; speciesIndex++) {
+                List<SpeciesDataLink> links = index.getCell(locationId, speciesIndex).getLinks(typeOrdinal);
+                if (links.isEmpty()) {
+                    continue;
+                }
+                Cell cell = new Cell(links.size());
+                for (int i = 0; i < links.size(); i++) {
+                    SpeciesDataLink link = links.get(i);
+                    cell.urls[i] = link.getUrl();
+                    cell.numYears[i] = link.getNumYears();
+                    cell.footnoteIds[i] = NO_FOOTNOTE;
+                    String comment = link.getComment();
+                    if (comment != null && !comment.isEmpty()) {
+                        Integer footnoteId = footnoteIds.get(comment);
+                        if (footnoteId == null) {
+                            footnoteId = Integer.valueOf(footnoteIds.size());
+                            footnoteIds.put(comment, footnoteId);
+                        }
+                        cell.footnoteIds[i] = footnoteId.intValue();
+                    }
+                }
+                if (locationCells == null) {
+                    locationCells = new Cell[numSpecies];
+                }
+                locationCells[speciesIndex] = cell;
+                totals[locationId] += links.size();
+            }
+            cells[locationId] = locationCells;
+        }
+
+        footnotes = new String[footnoteIds.size()];
+        Iterator<Map.Entry<String, Integer>> iFootnoteIds = footnoteIds.entrySet().iterator();
+        while (iFootnoteIds.hasNext()) {
+            Map.Entry<String, Integer> entry = iFootnoteIds.next();
+            footnotes[entry.getValue().intValue()] = entry.getKey();
+        }
+    }
+
+    /**
+     * @return The data type.
+     */
+    SpeciesDataLinkType getType() { return type; }
+
+    /**
+     * Gets the cell for the given location and species.
+     *
+     * @param locationId The location ID.
+     * @param speciesIndex The species index.
+     * @return The cell for the given location and species, or <code>null</code> if it is empty.
+     */
+    Cell getCell(int locationId, int speciesIndex) {
+        if (locationId < 0 || locationId >= cells.length || cells[locationId] == null) {
+            return null;
+        }
+        return cells[locationId][speciesIndex];
+    }
+
+    /**
+     * Gets the number of data links of this view's type on the given location.
+     *
+     * @param locationId The location ID.
+     * @return The number of data links of this view's type on the given location.
+     */
+    int getTotal(int locationId) {
+        return locationId < 0 || locationId >= totals.length ? 0 : totals[locationId];
+    }
+
+    /**
+     * @return The number of footnotes.
+     */
+    int getNumFootnotes() { return footnotes.length; }
+
+    /**
+     * Gets the footnote with the given ID. Footnote IDs are zero-based: the
+     * footnote number is the ID + 1.
+     *
+     * @param footnoteId The footnote ID.
+     * @return The footnote with the given ID.
+     */
+    String getFootnote(int footnoteId) { return footnotes[footnoteId]; }
+}
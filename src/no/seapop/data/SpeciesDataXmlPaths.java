@@ -0,0 +1,125 @@
+package no.seapop.data;
+
+/**
+ * Precomputed element paths in <code>seapop_species_data</code> files.
+ * <p>
+ * Reading a data file element by element needs one path per element, e.g.
+ * <code>DataLinks[2]/DataLink[3]/URL</code>. Instead of building these paths
+ * for every element of every file, they are built once, the first time a
+ * given position is read, and then shared by all subsequent reads.
+ * <p>
+ * The tables grow on demand (copy-on-write), and can be used by any number of
+ * threads without locking: at worst, concurrent reads of a new position each
+ * build identical paths, and one set is kept.
+ *
+ * @author Paul-Inge Flakstad, Norwegian Polar Institute <flakstad at npolar.no>
+ */
+final class SpeciesDataXmlPaths {
+
+    /** Path: the species name. */
+    static final String SPECIES_NAME = "SpeciesName";
+    /** Path: the "pelagic" habitat flag. */
+    static final String PELAGIC = "Pelagic";
+    /** Path: the "coastal bound" habitat flag. */
+    static final String COASTAL_BOUND = "CoastalBound";
+    /** Path: the "surface bound" habitat flag. */
+    static final String SURFACE_BOUND = "SurfaceBound";
+    /** Path: the "diving" habitat flag. */
+    static final String DIVING = "Diving";
+    /** Path: the "ice bound" habitat flag. */
+    static final String ICE_BOUND = "IceBound";
+    /** Path: the (repeated) location elements, each holding the data links for one location. */
+    static final String DATA_LINKS = "DataLinks";
+
+    /** The paths for each location element, by index. */
+    private static volatile LocationPaths[] locations = new LocationPaths[0];
+
+    /**
+     * The paths for a single location element.
+     */
+    static final class LocationPaths {
+        /** Path: the location. */
+        final String location;
+        /** Path: the (repeated) data link elements. */
+        final String dataLink;
+        /** The paths for each data link element, by index. */
+        private volatile DataLinkPaths[] dataLinks = new DataLinkPaths[0];
+
+        private LocationPaths(int index) {
+            String prefix = DATA_LINKS + "[" + (index + 1) + "]/";
+            location = prefix + "Location";
+            dataLink = prefix + "DataLink";
+        }
+
+        /**
+         * Gets the paths for the data link element at the given index.
+         *
+         * @param index The index, 0-based.
+         * @return The paths for the data link element at the given index.
+         */
+        DataLinkPaths getDataLink(int index) {
+            DataLinkPaths[] current = dataLinks;
+            if (index >= current.length) {
+                current = grow(current, index + 1);
+                dataLinks = current;
+            }
+            return current[index];
+        }
+
+        private DataLinkPaths[] grow(DataLinkPaths[] current, int minLength) {
+            DataLinkPaths[] grown = new DataLinkPaths[Math.max(minLength, current.length * 2)];
+            System.arraycopy(current, 0, grown, 0, current.length);
+            for (int i = current.length; i < grown.length; i++) {
+                grown[i] = new DataLinkPaths(dataLink, i);
+            }
+            return grown;
+        }
+    }
+
+    /**
+     * The paths for a single data link element.
+     */
+    static final class DataLinkPaths {
+        /** Path: the type. */
+        final String type;
+        /** Path: the URL. */
+        final String url;
+        /** Path: the number of years. */
+        final String numYears;
+        /** Path: the comment. */
+        final String comment;
+
+        private DataLinkPaths(String dataLink, int index) {
+            String prefix = dataLink + "[" + (index + 1) + "]/";
+            type = prefix + "Type";
+            url = prefix + "URL";
+            numYears = prefix + "NumOfYears";
+            comment = prefix + "Comment";
+        }
+    }
+
+    /**
+     * Prevents instantiation.
+     */
+    private SpeciesDataXmlPaths() {}
+
+    /**
+     * Gets the paths for the location element at the given index.
+     *
+     * @param index The index, 0-based.
+     * @return The paths for the location element at the given index.
+     */
+    static LocationPaths getLocation(int index) {
+        LocationPaths[] current = locations;
+        if (index >= current.length) {
+            LocationPaths[] grown = new LocationPaths[Math.max(index + 1, current.length * 2)];
+            System.arraycopy(current, 0, grown, 0, current.length);
+            for (int i = current.length; i < grown.length; i++) {
+                grown[i] = new LocationPaths(i);
+            }
+            current = grown;
+            locations = current;
+        }
+        return current[index];
+    }
+}
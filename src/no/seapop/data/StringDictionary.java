@@ -0,0 +1,146 @@
+package no.seapop.data;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Dictionary of strings, mapping each distinct string to a dense integer ID
+ * (0, 1, 2, ...) in insertion order, and back.
+ * <p>
+ * Lookups in either direction are constant-time and do not allocate. Adding
+ * is synchronized; lookups are not, and are safe to do concurrently with
+ * adding.
+ *
+ * @author Paul-Inge Flakstad, Norwegian Polar Institute <flakstad at npolar.no>
+ */
+class StringDictionary {
+
+    /** String to ID. */
+    private final Map<String, Integer> ids;
+    /** ID to string. */
+    private volatile String[] strings;
+    /** The number of strings. Written after the strings array, so reading it first makes the strings visible. */
+    private volatile int size = 0;
+
+    /**
+     * Creates a new, empty dictionary.
+     */
+    StringDictionary() {
+        this(16);
+    }
+
+    /**
+     * Creates a new, empty dictionary with the given initial capacity.
+     *
+     * @param initialCapacity The initial capacity.
+     */
+    StringDictionary(int initialCapacity) {
+        ids = new ConcurrentHashMap<String, Integer>(initialCapacity * 2);
+        strings = new String[Math.max(initialCapacity, 1)];
+    }
+
+    /**
+     * Adds the given string, unless it already exists in this dictionary.
+     *
+     * @param s The string to add. Must not be <code>null</code>.
+     * @return The ID of the given string.
+     */
+    synchronized int add(String s) {
+        Integer id = ids.get(s);
+        if (id != null) {
+            return id.intValue();
+        }
+        int newId = size;
+        String[] tmp = strings;
+        if (newId == tmp.length) {
+            tmp = Arrays.copyOf(tmp, tmp.length * 2);
+        }
+        tmp[newId] = s;
+        strings = tmp;
+        size = newId + 1;
+        ids.put(s, Integer.valueOf(newId));
+        return newId;
+    }
+
+    /**
+     * Gets the ID of the given string.
+     *
+     * @param s The string.
+     * @return The ID of the given string, or -1 if it is not in this dictionary (or is <code>null</code>).
+     */
+    int getId(String s) {
+        if (s == null) {
+            return -1;
+        }
+        Integer id = ids.get(s);
+        return id == null ? -1 : id.intValue();
+    }
+
+    /**
+     * Gets the string with the given ID.
+     *
+     * @param id The ID.
+     * @return The string with the given ID.
+     * @throws IndexOutOfBoundsException If there is no string with the given ID.
+     */
+    String get(int id) {
+        if (id < 0 || id >= size) {
+            throw new IndexOutOfBoundsException("No string with ID " + id + ".");
+        }
+        return strings[id];
+    }
+
+    /**
+     * Gets a flag indicating whether or not the given string is in this dictionary.
+     *
+     * @param s The string.
+     * @return <code>true</code> if the given string is in this dictionary.
+     */
+    boolean contains(String s) {
+        return s != null && ids.containsKey(s);
+    }
+
+    /**
+     * Gets the number of strings in this dictionary, which is also the next ID.
+     *
+     * @return The number of strings in this dictionary.
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Gets a read-only view of the strings in this dictionary, in ID (=
+     * insertion) order.
+     * <p>
+     * The view reflects strings added later.
+     *
+     * @return A read-only view of the strings in this dictionary.
+     */
+    List<String> asList() {
+        return new AbstractList<String>() {
+            @Override
+            public String get(int index) {
+                return StringDictionary.this.get(index);
+            }
+
+            @Override
+            public int size() {
+                return StringDictionary.this.size();
+            }
+
+            @Override
+            public int indexOf(Object o) {
+                return o instanceof String ? getId((String)o) : -1;
+            }
+
+            @Override
+            public boolean contains(Object o) {
+                return indexOf(o) >= 0;
+            }
+        };
+    }
+}
@@ -0,0 +1,345 @@
+package no.seapop.data;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileFilter;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Species data source that parses exported <code>seapop_species_data</code>
+ * XML files directly from a directory on disk, without OpenCms.
+ * <p>
+ * Each file is parsed in a single, streaming (StAX) pass. Only the content for
+ * the requested locale is read; other locales are skipped. Values are read
+ * exactly as stored, so for files that have content in the requested locale,
+ * the resulting entries are identical to those read via
+ * {@link OpenCmsSpeciesDataSource}, given the same files and locale.
+ * <p>
+ * Files without content in the requested locale are handled differently:
+ * OpenCms falls back to the best matching locale among its configured default
+ * locales, which are not known here. This source instead falls back to the
+ * first locale in the file with the same language (e.g. "no_NO" for "no"),
+ * and then to the first locale in the file (which requires a second pass).
+ * Where the configured default locales would pick another locale, the entries
+ * will differ.
+ * <p>
+ * Typical uses are bulk imports and offline rebuilds (e.g. of snapshots, see
+ * {@link SpeciesDataSnapshot}).
+ *
+ * @author Paul-Inge Flakstad, Norwegian Polar Institute <flakstad at npolar.no>
+ */
+public class XmlFileSpeciesDataSource implements SpeciesDataSource {
+    /** The directory to read data files from. */
+    private File directory = null;
+    /** The VFS folder corresponding to the directory, with a trailing slash. */
+    private String vfsFolder = null;
+    /** The locale to read. */
+    private Locale locale = null;
+    /** The StAX factory (configured once, thread-safe for creating readers). */
+    private final XMLInputFactory xmlInputFactory;
+    /** The report on the most recent load. */
+    private volatile SpeciesDataLoadReport loadReport = null;
+
+    /** Accepts XML files. */
+    private static final FileFilter XML_FILES = new FileFilter() {
+        @Override
+        public boolean accept(File file) {
+            return file.isFile() && file.getName().toLowerCase().endsWith(".xml");
+        }
+    };
+
+    /**
+     * Creates a new source for the given directory.
+     *
+     * @param directory The directory to read <code>seapop_species_data</code> XML files from.
+     * @param vfsFolder The VFS folder the files were exported from, used to create the VFS URI of each entry, e.g. "/seapop/species-data/".
+     * @param locale The locale to read. If <code>null</code>, the first locale in each file is read.
+     */
+    public XmlFileSpeciesDataSource(File directory, String vfsFolder, Locale locale) {
+        this.directory = directory;
+        this.vfsFolder = vfsFolder.endsWith("/") ? vfsFolder : vfsFolder.concat("/");
+        this.locale = locale;
+        xmlInputFactory = XMLInputFactory.newInstance();
+        xmlInputFactory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.TRUE);
+        xmlInputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+        xmlInputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+    }
+
+    /**
+     * Loads all data entries from the XML files in the directory, in file name
+     * order.
+     * <p>
+     * Files that cannot be parsed, or have no content at all, are skipped and
+     * recorded as failed in the load report.
+     *
+     * @see SpeciesDataSource#load()
+     */
+    @Override
+    public List<SpeciesData> load() throws IOException {
+        SpeciesDataLoadReport report = new SpeciesDataLoadReport(directory.getPath());
+        loadReport = report;
+        long start = System.nanoTime();
+        try {
+            File[] files = directory.listFiles(XML_FILES);
+            if (files == null) {
+                IOException e = new IOException("Unable to list files in '" + directory + "'.");
+                report.setFailure(e);
+                throw e;
+            }
+            Arrays.sort(files);
+
+            List<SpeciesData> entries = new ArrayList<SpeciesData>(files.length);
+            for (int i = 0; i < files.length; i++) {
+                long fileStart = System.nanoTime();
+                try {
+                    SpeciesData entry = read(files[i]);
+                    if (entry != null) {
+                        entries.add(entry);
+                        report.addFile(entry, System.nanoTime() - fileStart);
+                    } else {
+                        // No locale element => skip
+                        report.addFailedFile(vfsFolder.concat(files[i].getName()), System.nanoTime() - fileStart,
+                                new IOException("No content for locale '" + locale + "' (or any other locale) in '" + files[i] + "'."));
+                    }
+                } catch (XMLStreamException e) {
+                    // Malformed file => skip
+                    report.addFailedFile(vfsFolder.concat(files[i].getName()), System.nanoTime() - fileStart, e);
+                } catch (IOException e) {
+                    // Unreadable file => skip
+                    report.addFailedFile(vfsFolder.concat(files[i].getName()), System.nanoTime() - fileStart, e);
+                }
+            }
+            return entries;
+        } finally {
+            report.setLoadTime(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * @see SpeciesDataSource#getLoadReport()
+     */
+    @Override
+    public SpeciesDataLoadReport getLoadReport() { return loadReport; }
+
+    /**
+     * Reads a single data file, in the requested locale or, if the file has no
+     * content in that locale, the closest locale available (see class docs).
+     *
+     * @param file The data file.
+     * @return The data entry, or <code>null</code> if the file has no content in any locale.
+     * @throws IOException If reading the file fails.
+     * @throws XMLStreamException If the file is not well-formed XML.
+     */
+    SpeciesData read(File file) throws IOException, XMLStreamException {
+        if (locale == null) {
+            return read(file, null, null);
+        }
+        SpeciesData entry = read(file, locale.toString(), locale.getLanguage());
+        if (entry == null) {
+            // Neither the locale nor its language => read the first locale, if any
+            entry = read(file, null, null);
+        }
+        return entry;
+    }
+
+    /**
+     * Reads a single data file, in a single pass.
+     * <p>
+     * The content for the given locale is read if it exists, otherwise the
+     * content for the first locale with the given language. If both are
+     * <code>null</code>, the first locale is read.
+     *
+     * @param file The data file.
+     * @param localeName The name of the locale to read, e.g. "no_NO", or <code>null</code>.
+     * @param language The language to fall back to, e.g. "no", or <code>null</code>.
+     * @return The data entry, or <code>null</code> if the file has no content in the locale or language.
+     */
+    private SpeciesData read(File file, String localeName, String language) throws IOException, XMLStreamException {
+        InputStream in = new BufferedInputStream(new FileInputStream(file), 16384);
+        try {
+            XMLStreamReader reader = xmlInputFactory.createXMLStreamReader(in);
+            try {
+                SpeciesData entry = null;
+                boolean isExact = false;
+                reader.nextTag(); // The root element, e.g. <SeapopSpeciesDatas>
+                while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+                    // One element per locale, e.g. <SeapopSpeciesData language="no">
+                    String elementLocale = reader.getAttributeValue(null, "language");
+                    if (localeName == null) {
+                        if (entry == null) {
+                            entry = readEntry(reader, vfsFolder.concat(file.getName()));
+                            isExact = true;
+                        } else {
+                            skip(reader);
+                        }
+                    } else if (!isExact && localeName.equals(elementLocale)) {
+                        entry = readEntry(reader, vfsFolder.concat(file.getName()));
+                        isExact = true;
+                    } else if (entry == null && elementLocale != null && language.equals(getLanguage(elementLocale))) {
+                        entry = readEntry(reader, vfsFolder.concat(file.getName()));
+                    } else {
+                        skip(reader);
+                    }
+                }
+                return entry;
+            } finally {
+                reader.close();
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Gets the language part of the given locale name, e.g. "no" for "no_NO".
+     */
+    private static String getLanguage(String localeName) {
+        int i = localeName.indexOf('_');
+        return i < 0 ? localeName : localeName.substring(0, i);
+    }
+
+    /**
+     * Reads a data entry from the current (locale) element, up to and
+     * including its end tag.
+     */
+    private static SpeciesData readEntry(XMLStreamReader reader, String uri) throws XMLStreamException {
+        String name = "";
+        boolean isPelagic = false;
+        boolean isCoastalBound = false;
+        boolean isSurfaceBound = false;
+        boolean isDiving = false;
+        boolean isIceBound = false;
+        // Data links, as [location, type, url, numYears, comment] - added after the entry is created
+        List<String[]> dataLinks = new ArrayList<String[]>();
+
+        while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+            String element = reader.getLocalName();
+            if ("SpeciesName".equals(element)) {
+                name = readText(reader);
+            } else if ("Pelagic".equals(element)) {
+                isPelagic = Boolean.valueOf(readText(reader)).booleanValue();
+            } else if ("CoastalBound".equals(element)) {
+                isCoastalBound = Boolean.valueOf(readText(reader)).booleanValue();
+            } else if ("SurfaceBound".equals(element)) {
+                isSurfaceBound = Boolean.valueOf(readText(reader)).booleanValue();
+            } else if ("Diving".equals(element)) {
+                isDiving = Boolean.valueOf(readText(reader)).booleanValue();
+            } else if ("IceBound".equals(element)) {
+                isIceBound = Boolean.valueOf(readText(reader)).booleanValue();
+            } else if ("DataLinks".equals(element)) {
+                readLocation(reader, dataLinks);
+            } else {
+                skip(reader);
+            }
+        }
+
+        SpeciesData entry = new SpeciesData(uri, name, isPelagic, isCoastalBound, isSurfaceBound, isDiving, isIceBound);
+        Iterator<String[]> iDataLinks = dataLinks.iterator();
+        while (iDataLinks.hasNext()) {
+            String[] dataLink = iDataLinks.next();
+            entry.addDataLink(dataLink[0], dataLink[1], dataLink[2], dataLink[3], isNotEmpty(dataLink[4]) ? dataLink[4] : null);
+        }
+        return entry;
+    }
+
+    /**
+     * Reads the current <code>DataLinks</code> element (a location and its
+     * data links), up to and including its end tag.
+     */
+    private static void readLocation(XMLStreamReader reader, List<String[]> dataLinks) throws XMLStreamException {
+        String location = "";
+        List<String[]> locationDataLinks = new ArrayList<String[]>();
+        while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+            String element = reader.getLocalName();
+            if ("Location".equals(element)) {
+                location = readText(reader);
+            } else if ("DataLink".equals(element)) {
+                String[] dataLink = new String[] { null, "", "", "", "" };
+                while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+                    String dataLinkElement = reader.getLocalName();
+                    if ("Type".equals(dataLinkElement)) {
+                        dataLink[1] = readText(reader);
+                    } else if ("URL".equals(dataLinkElement)) {
+                        dataLink[2] = readText(reader);
+                    } else if ("NumOfYears".equals(dataLinkElement)) {
+                        dataLink[3] = readText(reader);
+                    } else if ("Comment".equals(dataLinkElement)) {
+                        dataLink[4] = readText(reader);
+                    } else {
+                        skip(reader);
+                    }
+                }
+                locationDataLinks.add(dataLink);
+            } else {
+                skip(reader);
+            }
+        }
+        // The location element may (in theory) come after the data links
+        Iterator<String[]> iLocationDataLinks = locationDataLinks.iterator();
+        while (iLocationDataLinks.hasNext()) {
+            String[] dataLink = iLocationDataLinks.next();
+            dataLink[0] = location;
+            dataLinks.add(dataLink);
+        }
+    }
+
+    /**
+     * Reads the text of the current element, up to and including its end tag.
+     * <p>
+     * For link values (e.g. <code>&lt;URL&gt;&lt;link&gt;&lt;target&gt;...</code>),
+     * the link target is returned.
+     */
+    private static String readText(XMLStreamReader reader) throws XMLStreamException {
+        StringBuilder text = new StringBuilder();
+        String target = null;
+        int depth = 1;
+        while (depth > 0) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                if ("target".equals(reader.getLocalName())) {
+                    target = reader.getElementText(); // Consumes the end tag
+                } else {
+                    depth++;
+                }
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+            } else if (depth == 1 && (event == XMLStreamConstants.CHARACTERS || event == XMLStreamConstants.CDATA)) {
+                text.append(reader.getText());
+            }
+        }
+        return target != null ? target : text.toString();
+    }
+
+    /**
+     * Checks whether the given value is non-null and not blank.
+     */
+    private static boolean isNotEmpty(String value) {
+        return value != null && !value.trim().isEmpty();
+    }
+
+    /**
+     * Skips the current element, up to and including its end tag.
+     */
+    private static void skip(XMLStreamReader reader) throws XMLStreamException {
+        int depth = 1;
+        while (depth > 0) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                depth++;
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+            }
+        }
+    }
+}